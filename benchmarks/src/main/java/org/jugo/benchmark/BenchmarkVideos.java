@@ -0,0 +1,59 @@
+package org.jugo.benchmark;
+
+import org.jugo.utils.FfMpegBinaryResolver;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * 基准使用的视频：仓库自带的测试视频，以及用 ffmpeg lavfi 生成的合成视频
+ */
+final class BenchmarkVideos {
+    static final String VIDEO_PROPERTY = "gifparser.bench.video";
+
+    private BenchmarkVideos() {
+    }
+
+    /**
+     * 默认为 ../src/test/resources/testVideoFile.mp4（在 benchmarks 目录下运行时）
+     */
+    static Path testVideo() {
+        Path path = Paths.get(System.getProperty(VIDEO_PROPERTY, "../src/test/resources/testVideoFile.mp4"));
+        if (!Files.isRegularFile(path)) {
+            throw new IllegalStateException("Test video not found: " + path.toAbsolutePath() + ", set -D" + VIDEO_PROPERTY);
+        }
+        return path;
+    }
+
+    /**
+     * 生成 testsrc2 合成视频
+     *
+     * @param size    如 1280x720
+     * @param seconds 时长
+     */
+    static Path synthetic(Path dir, String size, double frameRate, int seconds) throws IOException, InterruptedException {
+        Path output = dir.resolve("synthetic-" + size + "-" + frameRate + ".mp4");
+        Process process = new ProcessBuilder(Arrays.asList(FfMpegBinaryResolver.ffmpegPath(), "-y", "-nostdin", "-v", "error",
+                "-f", "lavfi", "-i", "testsrc2=size=" + size + ":rate=" + frameRate, "-t", Integer.toString(seconds),
+                "-pix_fmt", "yuv420p", output.toString()))
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        if (process.waitFor() != 0) {
+            throw new IOException("Can not generate synthetic clip " + output);
+        }
+        return output;
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (java.util.stream.Stream<Path> walk = Files.walk(dir)) {
+            walk.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+}
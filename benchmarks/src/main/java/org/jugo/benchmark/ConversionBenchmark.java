@@ -0,0 +1,82 @@
+package org.jugo.benchmark;
+
+import org.jugo.model.PaletteOptions;
+import org.jugo.utils.FfMpegUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 完整转换在不同分辨率和帧率下的耗时，输入为测试视频或合成视频
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ConversionBenchmark {
+    @Param({"testVideo", "synthetic"})
+    public String source;
+
+    @Param({"320x180", "640x360", "1280x720"})
+    public String resolution;
+
+    @Param({"10", "24"})
+    public double frameRate;
+
+    private Path workDir;
+    private Path input;
+    private Path output;
+    private int width;
+    private int height;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        workDir = Files.createTempDirectory("gif-bench");
+        input = "synthetic".equals(source) ? BenchmarkVideos.synthetic(workDir, "1280x720", 30, 5) : BenchmarkVideos.testVideo();
+        output = workDir.resolve("out.gif");
+        String[] size = resolution.split("x");
+        width = Integer.parseInt(size[0]);
+        height = Integer.parseInt(size[1]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkVideos.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public long plainGif() throws IOException {
+        FfMpegUtils.convertToGif(input.toString(), output.toString(), width, height, frameRate);
+        return Files.size(output);
+    }
+
+    @Benchmark
+    public long paletteGif() throws IOException {
+        FfMpegUtils.convertToGif(input.toString(), output.toString(), width, height, frameRate, new PaletteOptions());
+        return Files.size(output);
+    }
+
+    @Benchmark
+    public long javaEncoder() throws IOException {
+        FfMpegUtils.convertToGifInJava(input.toString(), output.toString(), width, height, frameRate, null,
+                Runtime.getRuntime().availableProcessors());
+        return Files.size(output);
+    }
+}
@@ -0,0 +1,63 @@
+package org.jugo.benchmark;
+
+import org.jugo.gif.Ditherer;
+import org.jugo.gif.MedianCutQuantizer;
+import org.jugo.gif.PaletteLookup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单帧抖动映射，threads=1 为串行基线，0 表示使用全部核心
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DitherBenchmark {
+    @Param({"1920x1080"})
+    public String resolution;
+
+    @Param({"BAYER", "FLOYD_STEINBERG", "SIERRA", "SIERRA_LITE"})
+    public Ditherer.Mode mode;
+
+    @Param({"1", "0"})
+    public int threads;
+
+    private int width;
+    private int height;
+    private int[] rgb;
+    private byte[] indices;
+    private PaletteLookup lookup;
+
+    @Setup
+    public void setUp() {
+        String[] size = resolution.split("x");
+        width = Integer.parseInt(size[0]);
+        height = Integer.parseInt(size[1]);
+        rgb = FrameBenchmark.syntheticFrame(width, height);
+        indices = new byte[width * height];
+        lookup = new PaletteLookup(MedianCutQuantizer.buildPalette(rgb, width * height, 256));
+        if (threads == 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    @Benchmark
+    public byte[] dither() {
+        Ditherer.map(mode, lookup, rgb, width, height, indices, threads);
+        return indices;
+    }
+}
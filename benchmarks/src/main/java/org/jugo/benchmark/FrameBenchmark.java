@@ -0,0 +1,97 @@
+package org.jugo.benchmark;
+
+import org.jugo.gif.ByteSink;
+import org.jugo.gif.LzwEncoder;
+import org.jugo.gif.MedianCutQuantizer;
+import org.jugo.gif.PaletteLookup;
+import org.jugo.gif.UniformQuantizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Java 编码管线中的单帧热点：调色板生成、颜色映射和 LZW 压缩，不依赖 ffmpeg
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrameBenchmark {
+    @Param({"640x360", "1920x1080"})
+    public String resolution;
+
+    private int pixelCount;
+    private int[] rgb;
+    private byte[] indices;
+    private PaletteLookup lookup;
+    private final UniformQuantizer uniformQuantizer = new UniformQuantizer();
+    private final LzwEncoder lzwEncoder = new LzwEncoder();
+    private ByteSink sink;
+
+    @Setup
+    public void setUp() {
+        String[] size = resolution.split("x");
+        int width = Integer.parseInt(size[0]);
+        int height = Integer.parseInt(size[1]);
+        pixelCount = width * height;
+        rgb = syntheticFrame(width, height);
+        indices = new byte[pixelCount];
+        lookup = new PaletteLookup(MedianCutQuantizer.buildPalette(rgb, pixelCount, 256));
+        lookup.map(rgb, pixelCount, indices);
+        sink = new ByteSink(pixelCount);
+    }
+
+    /**
+     * 渐变加噪声，接近真实画面的颜色分布，避免纯色块让 LZW 的结果过于乐观
+     */
+    static int[] syntheticFrame(int width, int height) {
+        Random random = new Random(42);
+        int[] frame = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = Math.min(255, x * 255 / width + random.nextInt(16));
+                int g = Math.min(255, y * 255 / height + random.nextInt(16));
+                int b = Math.min(255, (x + y) * 255 / (width + height) + random.nextInt(16));
+                frame[y * width + x] = r << 16 | g << 8 | b;
+            }
+        }
+        return frame;
+    }
+
+    @Benchmark
+    public int[] medianCutPalette() {
+        return MedianCutQuantizer.buildPalette(rgb, pixelCount, 256);
+    }
+
+    @Benchmark
+    public byte[] paletteLookupMap() {
+        lookup.map(rgb, pixelCount, indices);
+        return indices;
+    }
+
+    @Benchmark
+    public byte[] uniformQuantize() {
+        uniformQuantizer.quantize(rgb, pixelCount, indices);
+        return indices;
+    }
+
+    @Benchmark
+    public int lzwEncode() {
+        sink.reset();
+        lzwEncoder.encode(indices, pixelCount, 8, sink);
+        return sink.size();
+    }
+}
@@ -0,0 +1,102 @@
+package org.jugo.benchmark;
+
+import org.jugo.model.VideoInfo;
+import org.jugo.utils.FfMpegUtils;
+import org.jugo.utils.Mp4MetadataReader;
+import org.jugo.utils.VideoInfoCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 视频参数读取：
+ * <ul>
+ *     <li>readVideoInfo：缓存命中，只有路径规范化和文件属性读取</li>
+ *     <li>readVideoInfoCold：每次调用前换一个空的内存缓存，包含未命中时的 MP4 解析</li>
+ *     <li>readVideoInfoFromStore：每次调用前换一个新实例，从磁盘记录文件加载后命中，对应进程重启后的第一次读取</li>
+ *     <li>mp4MetadataReader：直接解析 MP4，不经过缓存</li>
+ * </ul>
+ * 冷路径的缓存在 {@code @Setup(Level.Invocation)} 中创建，不计入测量时间
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProbeBenchmark {
+    private Path video;
+
+    @Setup
+    public void setUp() {
+        video = BenchmarkVideos.testVideo();
+    }
+
+    @State(Scope.Thread)
+    public static class ColdCache {
+        VideoInfoCache cache;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            cache = new VideoInfoCache(4096, false, null);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class StoredCache {
+        private Path storeFile;
+        VideoInfoCache cache;
+
+        @Setup(Level.Trial)
+        public void fill(ProbeBenchmark benchmark) throws IOException {
+            storeFile = Files.createTempFile("probe-benchmark", ".bin");
+            Files.delete(storeFile);
+            new VideoInfoCache(4096, false, storeFile).get(benchmark.video, Mp4MetadataReader::read);
+        }
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            cache = new VideoInfoCache(4096, false, storeFile);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(storeFile);
+            Files.deleteIfExists(storeFile.resolveSibling(storeFile.getFileName() + ".lock"));
+        }
+    }
+
+    @Benchmark
+    public VideoInfo readVideoInfo() throws IOException {
+        return FfMpegUtils.readVideoInfo(video.toString());
+    }
+
+    @Benchmark
+    public VideoInfo readVideoInfoCold(ColdCache state) throws IOException {
+        return state.cache.get(video, Mp4MetadataReader::read);
+    }
+
+    @Benchmark
+    public VideoInfo readVideoInfoFromStore(StoredCache state) throws IOException {
+        return state.cache.get(video, Mp4MetadataReader::read);
+    }
+
+    @Benchmark
+    public VideoInfo mp4MetadataReader() throws IOException {
+        return Mp4MetadataReader.read(video);
+    }
+}
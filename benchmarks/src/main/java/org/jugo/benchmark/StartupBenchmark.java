@@ -0,0 +1,46 @@
+package org.jugo.benchmark;
+
+import org.jugo.utils.FfMpegBinaryResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ffmpeg 定位（每个 fork 是新 JVM，测到的是冷启动时首次解析的代价）和子进程启动开销
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StartupBenchmark {
+    @Benchmark
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(10)
+    public String resolveFfmpegCold() {
+        return FfMpegBinaryResolver.ffmpegPath();
+    }
+
+    @Benchmark
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 20)
+    @Fork(1)
+    public int spawnFfmpegVersion() throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(FfMpegBinaryResolver.ffmpegPath(), "-version")
+                .redirectErrorStream(true)
+                .start();
+        try (InputStream in = process.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) >= 0) {
+                // 丢弃版本信息
+            }
+        }
+        return process.waitFor();
+    }
+}
@@ -0,0 +1,215 @@
+package org.jugo.app;
+
+import org.jugo.batch.BatchConverter;
+import org.jugo.model.BatchResult;
+import org.jugo.model.PaletteOptions;
+import org.jugo.utils.CacheDirs;
+import org.jugo.utils.ConversionCache;
+import org.jugo.utils.FfMpegUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 批量转换命令行入口
+ * <pre>
+ * java -cp gifparser.jar org.jugo.app.BatchConverterCli [options] &lt;file|dir&gt;...
+ *   -o &lt;dir&gt;     输出目录（默认与视频同目录）。输出为 name.gif，多个视频会重名时改为 name.mp4.gif
+ *   -j &lt;n&gt;       并行任务数（默认CPU核数）
+ *   -w &lt;px&gt;      宽度，需与 -h 同时指定
+ *   -h &lt;px&gt;      高度
+ *   -r &lt;fps&gt;     帧率
+ *   -p &lt;mode&gt;    调色板模式 full|diff|single（默认不使用调色板滤镜）
+ *   -ss &lt;time&gt;   起始时间，秒或 [hh:]mm:ss[.xxx]，从之前最近的关键帧开始解码
+ *   -to &lt;time&gt;   结束时间，不能与 -b 同时使用
+ *   -b &lt;size&gt;    输出大小上限，可带 K/M 后缀，按上限自动降低分辨率和帧率（-w/-h/-r 作为上限）
+ *   -n &lt;n&gt;       每个视频切成 n 段并发转换后按字节拼接，适合长视频（使用调色板模式，未指定 -p 时为 full），
+ *                不能与 -ss/-to、-b 同时使用
+ *   -d           丢弃近似重复的帧，时长并入前一帧（使用调色板模式，未指定 -p 时为 full）
+ *   -s &lt;file&gt;    结果汇总CSV（默认 &lt;输出目录&gt;/summary.csv）
+ *   -c &lt;MB&gt;      开启转换结果缓存（~/.gifparser/gifs），参数为缓存大小上限
+ *   -f           强制重新转换已是最新的输出
+ * </pre>
+ */
+public class BatchConverterCli {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchConverterCli.class);
+
+    public static void main(String[] args) {
+        try {
+            System.exit(run(args));
+        } catch (IllegalArgumentException iae) {
+            System.err.println(iae.getMessage());
+            printUsage();
+            System.exit(2);
+        }
+    }
+
+    static int run(String[] args) {
+        Path outputDir = null;
+        Path summaryFile = null;
+        int parallelism = BatchConverter.defaultParallelism();
+        Integer width = null;
+        Integer height = null;
+        Double frameRate = null;
+        boolean force = false;
+        boolean dropDuplicates = false;
+        PaletteOptions paletteOptions = null;
+        long cacheMegabytes = 0;
+        long maxBytes = 0;
+        long startMicros = 0;
+        long endMicros = 0;
+        int segments = 0;
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-o":
+                    outputDir = Paths.get(value(args, ++i, arg));
+                    break;
+                case "-j":
+                    parallelism = Integer.parseInt(value(args, ++i, arg));
+                    break;
+                case "-w":
+                    width = Integer.parseInt(value(args, ++i, arg));
+                    break;
+                case "-h":
+                    height = Integer.parseInt(value(args, ++i, arg));
+                    break;
+                case "-r":
+                    frameRate = Double.parseDouble(value(args, ++i, arg));
+                    break;
+                case "-s":
+                    summaryFile = Paths.get(value(args, ++i, arg));
+                    break;
+                case "-p":
+                    paletteOptions = new PaletteOptions().setStatsMode(
+                            PaletteOptions.StatsMode.valueOf(value(args, ++i, arg).toUpperCase(Locale.ROOT)));
+                    break;
+                case "-c":
+                    cacheMegabytes = Long.parseLong(value(args, ++i, arg));
+                    break;
+                case "-b":
+                    maxBytes = parseSize(value(args, ++i, arg));
+                    break;
+                case "-ss":
+                    startMicros = parseTime(value(args, ++i, arg));
+                    break;
+                case "-to":
+                    endMicros = parseTime(value(args, ++i, arg));
+                    break;
+                case "-n":
+                    segments = Integer.parseInt(value(args, ++i, arg));
+                    break;
+                case "-d":
+                    dropDuplicates = true;
+                    break;
+                case "-f":
+                    force = true;
+                    break;
+                default:
+                    if (arg.startsWith("-")) {
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                    inputs.add(Paths.get(arg));
+            }
+        }
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("No input file or directory given");
+        }
+        if ((width == null) != (height == null)) {
+            throw new IllegalArgumentException("-w and -h must be given together");
+        }
+        if (maxBytes > 0 && (startMicros > 0 || endMicros > 0)) {
+            throw new IllegalArgumentException("-b can not be combined with -ss/-to");
+        }
+        if (segments > 1 && (maxBytes > 0 || startMicros > 0 || endMicros > 0)) {
+            throw new IllegalArgumentException("-n can not be combined with -b or -ss/-to");
+        }
+        if (dropDuplicates) {
+            paletteOptions = (paletteOptions == null ? new PaletteOptions() : paletteOptions).setDropDuplicateFrames(true);
+        }
+        BatchConverter converter = new BatchConverter(parallelism, width, height, frameRate).setForce(force)
+                .setPaletteOptions(paletteOptions).setMaxBytes(maxBytes).setTimeRange(startMicros, endMicros).setSegments(segments);
+        List<BatchResult> results = new ArrayList<>();
+        List<Path> files = new ArrayList<>();
+        try {
+            if (cacheMegabytes > 0) {
+                FfMpegUtils.setConversionCache(new ConversionCache(CacheDirs.resolve("gifs"), cacheMegabytes * 1024 * 1024));
+            }
+            for (Path input : inputs) {
+                if (Files.isDirectory(input)) {
+                    results.addAll(converter.convertDirectory(input, outputDir));
+                } else {
+                    files.add(input);
+                }
+            }
+            results.addAll(converter.convertFiles(files, outputDir));
+            if (summaryFile == null) {
+                summaryFile = (outputDir == null ? Paths.get(".") : outputDir).resolve("summary.csv");
+            }
+            BatchConverter.writeSummary(results, summaryFile);
+        } catch (IOException ioe) {
+            LOGGER.error("Batch conversion failed: {}", ioe.getMessage());
+            return 1;
+        }
+        int failed = 0;
+        int skipped = 0;
+        for (BatchResult result : results) {
+            if (result.getStatus() == BatchResult.Status.FAILED) {
+                failed++;
+            } else if (result.getStatus() == BatchResult.Status.SKIPPED) {
+                skipped++;
+            }
+        }
+        LOGGER.info("Batch finished: {} converted, {} skipped, {} failed, summary: {}",
+                results.size() - failed - skipped, skipped, failed, summaryFile.toAbsolutePath());
+        return failed == 0 ? 0 : 1;
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    // 字节数，支持 K/M 后缀（1024 进制）
+    private static long parseSize(String value) {
+        String upper = value.trim().toUpperCase(Locale.ROOT);
+        long unit = 1;
+        if (upper.endsWith("K")) {
+            unit = 1024;
+        } else if (upper.endsWith("M")) {
+            unit = 1024 * 1024;
+        }
+        String digits = unit == 1 ? upper : upper.substring(0, upper.length() - 1);
+        long size = (long) (Double.parseDouble(digits) * unit);
+        if (size <= 0) {
+            throw new IllegalArgumentException("Invalid size: " + value);
+        }
+        return size;
+    }
+
+    // 时间点转微秒：秒数，或 mm:ss、hh:mm:ss，秒可以带小数
+    private static long parseTime(String value) {
+        double seconds = 0;
+        for (String part : value.trim().split(":", -1)) {
+            seconds = seconds * 60 + Double.parseDouble(part);
+        }
+        if (seconds < 0) {
+            throw new IllegalArgumentException("Invalid time: " + value);
+        }
+        return Math.round(seconds * 1_000_000);
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: BatchConverterCli [-o outDir] [-j jobs] [-w width -h height] [-r fps] [-p full|diff|single] [-ss start] [-to end] [-b maxSize] [-n segments] [-d] [-c cacheMB] [-s summary.csv] [-f] <file|dir>...");
+    }
+}
@@ -0,0 +1,82 @@
+package org.jugo.app;
+
+import org.jugo.service.ConversionServer;
+import org.jugo.service.ConversionService;
+import org.jugo.utils.CacheDirs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 常驻的本机转换服务入口，接口见 {@link ConversionServer}
+ * <pre>
+ * java -cp gifparser.jar org.jugo.app.ConversionDaemon [options]
+ *   -p &lt;port&gt;    监听端口（默认 7311，只绑定 127.0.0.1）
+ *   -j &lt;n&gt;       同时执行的转换数（默认CPU核数的一半）
+ *   -q &lt;n&gt;       排队上限，超过时返回 503（默认 64）
+ *   -o &lt;dir&gt;     /jobs 输出文件所在目录，output 参数是相对它的路径（默认 ~/.gifparser/output）
+ * </pre>
+ * 访问令牌每次启动重新生成，写在 ~/.gifparser/server.token
+ */
+public class ConversionDaemon {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConversionDaemon.class);
+
+    public static void main(String[] args) throws InterruptedException {
+        int port = ConversionServer.DEFAULT_PORT;
+        int workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        int queueCapacity = ConversionService.DEFAULT_QUEUE_CAPACITY;
+        Path outputDir = CacheDirs.root().resolve("output");
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-p":
+                        port = Integer.parseInt(value(args, ++i, "-p"));
+                        break;
+                    case "-j":
+                        workers = Integer.parseInt(value(args, ++i, "-j"));
+                        break;
+                    case "-q":
+                        queueCapacity = Integer.parseInt(value(args, ++i, "-q"));
+                        break;
+                    case "-o":
+                        outputDir = Paths.get(value(args, ++i, "-o"));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException iae) {
+            System.err.println(iae.getMessage());
+            System.err.println("Usage: ConversionDaemon [-p port] [-j workers] [-q queueCapacity] [-o outputDir]");
+            System.exit(2);
+        }
+        ConversionService service = new ConversionService(workers, queueCapacity);
+        ConversionServer server;
+        try {
+            server = new ConversionServer(service, port, outputDir);
+        } catch (IOException ioe) {
+            LOGGER.error("Can not start conversion server on port {}: {}", port, ioe.getMessage());
+            System.exit(1);
+            return;
+        }
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            service.close();
+            stopped.countDown();
+        }, "conversion-daemon-shutdown"));
+        server.start();
+        stopped.await();
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+}
@@ -15,7 +15,13 @@ import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import org.apache.commons.lang3.StringUtils;
+import org.jugo.model.ConversionRequest;
 import org.jugo.model.VideoInfo;
+import org.jugo.preview.Filmstrip;
+import org.jugo.preview.ThumbnailCache;
+import org.jugo.preview.VideoPreview;
+import org.jugo.service.ConversionJob;
+import org.jugo.service.ConversionService;
 import org.jugo.utils.ExceptionUtils;
 import org.jugo.utils.FfMpegUtils;
 import org.slf4j.Logger;
@@ -23,7 +29,12 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 public class GifConverterApp extends Application {
     private static final Logger LOGGER = LoggerFactory.getLogger(GifConverterApp.class);
@@ -32,8 +43,12 @@ public class GifConverterApp extends Application {
     private Double frameRate;
     private Integer width;
     private Integer height;
+    private long durationMicros;
     private File lastInputSelectDirectory;
     private File lastOutputSelectDirectory;
+    private final VideoPreview preview = new VideoPreview(355, 200);
+    // 缩略图缓存上限 32MB，重新选择同一个视频时不再解码
+    private final Filmstrip filmstrip = new Filmstrip(new ThumbnailCache(32L * 1024 * 1024), 10, 510, 40);
 
     public static void main(String[] args) {
         launch(args);
@@ -70,13 +85,24 @@ public class GifConverterApp extends Application {
         // 开始按钮
         Button startButton = new Button("Convert");
         startButton.setDisable(true);
+        // 预览按钮，按当前的宽高和帧率重新预览
+        Button previewButton = new Button("Preview");
+        previewButton.setDisable(true);
+        // 胶片条下方显示选中的时间段
+        Label rangeLabel = new Label("Range: whole video");
+        rangeLabel.setStyle("-fx-font-size: 11px;");
         // 2、创建布局
         HBox logoAndVersion = drawLogoAndVersion();
+        // 预览出现后占据logo的位置
+        logoAndVersion.visibleProperty().bind(preview.getView().imageProperty().isNull());
+        StackPane header = new StackPane(logoAndVersion, preview.getView());
+        VBox filmstripLayout = new VBox(4, filmstrip.getView(), rangeLabel);
         HBox videoSelectionLayout = new HBox(10, selectVideoLabel, videoPathField, selectVideoButton);
         HBox frameRateLayout = new HBox(10, frameRateLabel, frameRateField);
         HBox outputPathLayout = new HBox(10, outputPathLabel, outputPathField, outputPathButton);
         HBox dimensionLayout = new HBox(10, widthLabel, widthField, heightLabel, heightField);
-        VBox mainLayout = new VBox(20, logoAndVersion, videoSelectionLayout, outputPathLayout, frameRateLayout, dimensionLayout, startButton);
+        HBox actionLayout = new HBox(10, previewButton, startButton);
+        VBox mainLayout = new VBox(20, header, filmstripLayout, videoSelectionLayout, outputPathLayout, frameRateLayout, dimensionLayout, actionLayout);
         // 遮罩层
         StackPane maskLayer = new StackPane();
         maskLayer.setStyle("-fx-background-color: rgba(0, 0, 0, 0.5)");  // 半透明背景
@@ -89,6 +115,14 @@ public class GifConverterApp extends Application {
         StackPane rootLayout = new StackPane();  // 创建一个新的StackPane作为最外层布局
         rootLayout.getChildren().addAll(mainLayout, maskLayer);  // 添加mainLayout和maskLayer
         // 3、行为业务监听设置
+        // 胶片条上拖动时在预览区显示对应的缩略图，拖出的时间段作为转换范围
+        filmstrip.setOnScrub(image -> {
+            preview.stop();
+            preview.getView().setImage(image);
+        });
+        filmstrip.setOnRangeChanged(() -> rangeLabel.setText(filmstrip.hasRange()
+                ? "Range: " + formatTime(filmstrip.getStartMicros()) + " - " + formatTime(filmstrip.getEndMicros())
+                : "Range: whole video"));
         // 选择视频文件
         mainLayout.setOnMouseClicked(event -> {
             mainLayout.requestFocus();
@@ -109,62 +143,56 @@ public class GifConverterApp extends Application {
                         mainLayout.setDisable(true);
                     });
                     lastInputSelectDirectory = new File(selectedFile.getParent());
-                    // 检查文件大小是否超过8MB
-                    long fileSizeInBytes = selectedFile.length();
-                    long maxSizeInBytes = 8 * 1024 * 1024;
-                    if (fileSizeInBytes > maxSizeInBytes) {  // 如果文件过大，显示警告信息
+                    inputFilePath = selectedFile.getAbsolutePath();
+                    videoPathField.setText(inputFilePath);
+                    VideoInfo videoInfo = null;
+                    try {
+                        videoInfo = FfMpegUtils.readVideoInfo(inputFilePath);
+                    } catch (IOException ioe) {
                         Platform.runLater(() -> {
+                            LOGGER.warn("Can not read Video Info: {}", ExceptionUtils.toString(ioe));
                             maskLayer.setVisible(false);
                             mainLayout.setDisable(false);
                             Alert alert = new Alert(Alert.AlertType.WARNING);
                             alert.setTitle("Warn");
-                            alert.setHeaderText("Video file is too large！");
-                            alert.setContentText("Video file size should less than 32MB!");
+                            alert.setHeaderText("Can not read Video Info");
+                            alert.setContentText(ExceptionUtils.toString(ioe));
                             alert.showAndWait();
                         });
-                    } else {
-                        inputFilePath = selectedFile.getAbsolutePath();
-                        videoPathField.setText(inputFilePath);
-                        VideoInfo videoInfo = null;
-                        try {
-                            videoInfo = FfMpegUtils.readVideoInfo(inputFilePath);
-                        } catch (IOException ioe) {
-                            Platform.runLater(() -> {
-                                LOGGER.warn("Can not read Video Info: {}", ExceptionUtils.toString(ioe));
-                                maskLayer.setVisible(false);
-                                mainLayout.setDisable(false);
-                                Alert alert = new Alert(Alert.AlertType.WARNING);
-                                alert.setTitle("Warn");
-                                alert.setHeaderText("Can not read Video Info");
-                                alert.setContentText(ExceptionUtils.toString(ioe));
-                                alert.showAndWait();
-                            });
-                        } catch (RuntimeException re) {
-                            maskLayer.setVisible(false);
-                            mainLayout.setDisable(false);
-                            Platform.runLater(() -> {
-                                Alert alert = new Alert(Alert.AlertType.ERROR);
-                                alert.setTitle("ERROR");
-                                alert.setHeaderText("Error Occur! The window will close");
-                                alert.setContentText(re.getMessage());
-                                alert.showAndWait();
-                                Platform.exit();
-                            });
-                        }
+                    } catch (RuntimeException re) {
+                        maskLayer.setVisible(false);
+                        mainLayout.setDisable(false);
                         Platform.runLater(() -> {
-                            outputPathButton.setDisable(false);
-                            outputPathField.setDisable(false);
-                            maskLayer.setVisible(false);
-                            mainLayout.setDisable(false);
+                            Alert alert = new Alert(Alert.AlertType.ERROR);
+                            alert.setTitle("ERROR");
+                            alert.setHeaderText("Error Occur! The window will close");
+                            alert.setContentText(re.getMessage());
+                            alert.showAndWait();
+                            Platform.exit();
+                        });
+                    }
+                    Platform.runLater(() -> {
+                        outputPathButton.setDisable(false);
+                        outputPathField.setDisable(false);
+                        maskLayer.setVisible(false);
+                        mainLayout.setDisable(false);
+                    });
+                    if (videoInfo != null) {
+                        frameRateField.setText(Double.toString(videoInfo.getFrameRate()));
+                        widthField.setText(Integer.toString(videoInfo.getWidth()));
+                        heightField.setText(Integer.toString(videoInfo.getHeight()));
+                        // 选好文件立即开始低分辨率预览
+                        VideoInfo info = videoInfo;
+                        Platform.runLater(() -> {
+                            // durationMicros 只在 FX 线程读写
+                            durationMicros = info.getDurationMicros();
+                            previewButton.setDisable(false);
+                            preview.show(inputFilePath, info.getDurationMicros(), info.getWidth(), info.getHeight(), info.getFrameRate());
+                            filmstrip.load(inputFilePath, info.getDurationMicros(), info.getWidth(), info.getHeight());
                         });
-                        if (videoInfo != null) {
-                            frameRateField.setText(Double.toString(videoInfo.getFrameRate()));
-                            widthField.setText(Integer.toString(videoInfo.getWidth()));
-                            heightField.setText(Integer.toString(videoInfo.getHeight()));
-                        }
-                        if (isInputOutPutPathFilled()) {
-                            startButton.setDisable(false);
-                        }
+                    }
+                    if (isInputOutPutPathFilled()) {
+                        startButton.setDisable(false);
                     }
                 }
             }).start();
@@ -198,54 +226,107 @@ public class GifConverterApp extends Application {
                 }
             }
         });
+        // 预览按钮事件
+        previewButton.setOnAction(e -> {
+            try {
+                int previewWidth = Integer.parseInt(widthField.getText());
+                int previewHeight = Integer.parseInt(heightField.getText());
+                Double previewFrameRate = frameRateField.getText().isEmpty() ? null : Double.parseDouble(frameRateField.getText());
+                preview.show(inputFilePath, durationMicros, previewWidth, previewHeight, previewFrameRate);
+            } catch (NumberFormatException nfe) {
+                Alert alert = new Alert(Alert.AlertType.WARNING);
+                alert.setTitle("Warn");
+                alert.setHeaderText("Invalid width, height or frame rate");
+                alert.setContentText(nfe.getMessage());
+                alert.showAndWait();
+            }
+        });
         // 开始按钮事件
         startButton.setOnAction(e -> {
             // 显示遮罩层和进度指示器
             maskLayer.setVisible(true);
             mainLayout.setDisable(true);  // 禁用主布局下的其他控件
             //
-            new Thread(() -> {
+            // 转换进入共用的调度队列，与其他转换一起限制并发的 ffmpeg 进程数
+            try {
                 frameRate = frameRateField.getText().isEmpty() ? null : Double.parseDouble(frameRateField.getText());
                 width = widthField.getText().isEmpty() ? null : Integer.parseInt(widthField.getText());
                 height = heightField.getText().isEmpty() ? null : Integer.parseInt(heightField.getText());
                 outputFilePath = outputPathField.getText();
-                try {
-                    FfMpegUtils.convertToGif(inputFilePath, outputFilePath, width, height, frameRate); // todo 要校验入参
+                ConversionRequest request = new ConversionRequest(Paths.get(inputFilePath), Paths.get(outputFilePath)) // todo 要校验入参
+                        .setWidth(width)
+                        .setHeight(height)
+                        .setFrameRate(frameRate)
+                        .setPriority(ConversionRequest.PRIORITY_HIGH);
+                long outputMicros = durationMicros;
+                if (filmstrip.hasRange()) {
+                    request.setTimeRange(filmstrip.getStartMicros(), filmstrip.getEndMicros());
+                    outputMicros = filmstrip.getEndMicros() - filmstrip.getStartMicros();
+                }
+                long totalMicros = outputMicros;
+                // 已知时长时按已输出的视频时间显示进度
+                ConversionJob job = ConversionService.shared().submit(request, metrics -> {
+                    if (totalMicros > 0) {
+                        double progress = Math.min(1.0, (double) metrics.getOutTimeMicros() / totalMicros);
+                        Platform.runLater(() -> progressIndicator.setProgress(progress));
+                    }
+                });
+                job.getFuture().whenComplete((ignored, failure) -> Platform.runLater(() -> {
                     // 任务完成后，隐藏遮罩和进度指示器，并恢复界面
-                    Platform.runLater(() -> {
-                        // 启用主布局下的其他控件
-                        maskLayer.setVisible(false);
-                        mainLayout.setDisable(false);
+                    progressIndicator.setProgress(ProgressIndicator.INDETERMINATE_PROGRESS);
+                    maskLayer.setVisible(false);
+                    mainLayout.setDisable(false);
+                    if (failure == null) {
                         // 显示成功信息
                         Alert successAlert = new Alert(Alert.AlertType.INFORMATION);
                         successAlert.setTitle("Info");
                         successAlert.setHeaderText(null);
                         successAlert.setContentText("Succeed!");
                         successAlert.showAndWait();
-                    });
-                } catch (IOException ioe) {
-                    Platform.runLater(() -> {
-                        // 启用主布局下的其他控件
-                        maskLayer.setVisible(false);
-                        mainLayout.setDisable(false);
-                        // 显示失败信息
+                    } else if (isConversionFailure(failure)) {
+                        // 显示失败信息，输入、取消、排队等问题不退出程序
+                        Throwable cause = unwrap(failure);
+                        LOGGER.warn("Conversion failed: {}", cause.toString());
                         Alert errAlert = new Alert(Alert.AlertType.ERROR);
                         errAlert.setTitle("Warn");
-                        errAlert.setHeaderText("Failed");
-                        errAlert.setContentText(ExceptionUtils.toString(ioe));
+                        errAlert.setHeaderText(cause instanceof CancellationException ? "Cancelled" : "Failed");
+                        errAlert.setContentText(cause instanceof IOException
+                                ? ExceptionUtils.toString(cause) : String.valueOf(cause.getMessage()));
                         errAlert.showAndWait();
-                    });
-                } catch (RuntimeException re) {
-                    Platform.runLater(() -> {
+                    } else {
                         Alert alert = new Alert(Alert.AlertType.ERROR);
                         alert.setTitle("ERROR");
                         alert.setHeaderText("Error Occur");
-                        alert.setContentText(ExceptionUtils.toString(re));
+                        alert.setContentText(ExceptionUtils.toString(failure));
                         alert.showAndWait();
                         Platform.exit();
-                    });
-                }
-            }).start();
+                    }
+                }));
+            } catch (RejectedExecutionException ree) {
+                maskLayer.setVisible(false);
+                mainLayout.setDisable(false);
+                Alert alert = new Alert(Alert.AlertType.WARNING);
+                alert.setTitle("Warn");
+                alert.setHeaderText("Too many conversions in progress");
+                alert.setContentText("Please try again later.");
+                alert.showAndWait();
+            } catch (IllegalArgumentException iae) {
+                // 参数格式不对（含 NumberFormatException）或参数组合不支持
+                maskLayer.setVisible(false);
+                mainLayout.setDisable(false);
+                Alert alert = new Alert(Alert.AlertType.WARNING);
+                alert.setTitle("Warn");
+                alert.setHeaderText("Invalid conversion settings");
+                alert.setContentText(iae.getMessage());
+                alert.showAndWait();
+            } catch (RuntimeException re) {
+                Alert alert = new Alert(Alert.AlertType.ERROR);
+                alert.setTitle("ERROR");
+                alert.setHeaderText("Error Occur");
+                alert.setContentText(ExceptionUtils.toString(re));
+                alert.showAndWait();
+                Platform.exit();
+            }
         });
         // 4、ui行为监听和外观设置
         mainLayout.setStyle("-fx-padding: 20; -fx-background-color: #f3f3f3;");
@@ -257,22 +338,52 @@ public class GifConverterApp extends Application {
         configTextField(widthField);
         configTextField(heightField);
         configButtonType2(startButton);
+        configButtonType1(previewButton);
         // 5、Alignments and spacing
         videoSelectionLayout.setAlignment(Pos.CENTER_LEFT);
         frameRateLayout.setAlignment(Pos.CENTER_LEFT);
         dimensionLayout.setAlignment(Pos.CENTER_LEFT);
         outputPathLayout.setAlignment(Pos.CENTER_LEFT);
+        actionLayout.setAlignment(Pos.CENTER);
         mainLayout.setAlignment(Pos.TOP_CENTER);
         // 6、场景和舞台 Scene and Stage
-        Scene scene = new Scene(rootLayout, 550, 500);
+        Scene scene = new Scene(rootLayout, 550, 580);
         primaryStage.setTitle("Gif Converter");
         primaryStage.setScene(scene);
         primaryStage.setResizable(false);  // 禁止调整窗口大小
         primaryStage.getIcons().add(new Image(GifConverterApp.class.getClassLoader().getResourceAsStream("circle_icon.png")));
+        primaryStage.setOnHidden(e -> {
+            preview.stop();
+            filmstrip.cancel();
+        });
         primaryStage.show();
         mainLayout.requestFocus();
     }
 
+    // mm:ss.s
+    private static String formatTime(long micros) {
+        long tenths = micros / 100_000;
+        return String.format(Locale.ROOT, "%02d:%02d.%d", tenths / 600, tenths / 10 % 60, tenths % 10);
+    }
+
+    /**
+     * 转换本身的失败：I/O 错误、取消、参数不支持、ffmpeg 不可用、队列已满。其余视为程序错误
+     */
+    private static boolean isConversionFailure(Throwable failure) {
+        Throwable cause = unwrap(failure);
+        return cause instanceof IOException
+                || cause instanceof UncheckedIOException
+                || cause instanceof CancellationException
+                || cause instanceof IllegalArgumentException
+                || cause instanceof IllegalStateException
+                || cause instanceof RejectedExecutionException
+                || cause.getCause() instanceof IOException;
+    }
+
+    private static Throwable unwrap(Throwable failure) {
+        return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+    }
+
     // 画log和version
     private static HBox drawLogoAndVersion() {
         ImageView imageView = new ImageView(new Image(GifConverterApp.class.getClassLoader().getResourceAsStream("circle_icon.png")));
@@ -0,0 +1,175 @@
+package org.jugo.app;
+
+import org.jugo.gif.GifAnalyzer;
+import org.jugo.gif.GifOptimizer;
+import org.jugo.model.GifAnalysis;
+import org.jugo.model.GifFrameStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 已生成 GIF 的分析和优化命令行入口
+ * <pre>
+ * java -cp gifparser.jar org.jugo.app.GifToolCli analyze [-j n] [-v] &lt;file|dir&gt;...
+ * java -cp gifparser.jar org.jugo.app.GifToolCli optimize [-j n] [-l tolerance] [-o dir] &lt;file|dir&gt;...
+ *   -j &lt;n&gt;          每个文件的并行线程数（默认CPU核数）
+ *   -v              analyze 时输出每一帧
+ *   -l &lt;tolerance&gt;  有损压缩，RGB 各通道允许的最大误差（默认 0，无损）
+ *   -o &lt;dir&gt;        输出目录；不指定时原地替换，结果不比原文件小则保留原文件
+ * </pre>
+ */
+public class GifToolCli {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GifToolCli.class);
+
+    public static void main(String[] args) {
+        try {
+            System.exit(run(args));
+        } catch (IllegalArgumentException iae) {
+            System.err.println(iae.getMessage());
+            printUsage();
+            System.exit(2);
+        }
+    }
+
+    static int run(String[] args) {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("No command given");
+        }
+        String command = args[0];
+        if (!"analyze".equals(command) && !"optimize".equals(command)) {
+            throw new IllegalArgumentException("Unknown command: " + command);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        int tolerance = 0;
+        boolean verbose = false;
+        Path outputDir = null;
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-j":
+                    threads = Integer.parseInt(value(args, ++i, arg));
+                    break;
+                case "-l":
+                    tolerance = Integer.parseInt(value(args, ++i, arg));
+                    break;
+                case "-o":
+                    outputDir = Paths.get(value(args, ++i, arg));
+                    break;
+                case "-v":
+                    verbose = true;
+                    break;
+                default:
+                    if (arg.startsWith("-")) {
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                    inputs.add(Paths.get(arg));
+            }
+        }
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("No input file or directory given");
+        }
+        int failed = 0;
+        try {
+            List<Path> files = collectGifs(inputs);
+            if ("analyze".equals(command)) {
+                GifAnalyzer analyzer = new GifAnalyzer(threads);
+                for (Path file : files) {
+                    try {
+                        print(file, analyzer.analyze(file), verbose);
+                    } catch (IOException ioe) {
+                        LOGGER.error("Failed to analyze {}: {}", file, ioe.getMessage());
+                        failed++;
+                    }
+                }
+            } else {
+                GifOptimizer optimizer = new GifOptimizer(threads).setLossyTolerance(tolerance);
+                if (outputDir != null) {
+                    Files.createDirectories(outputDir);
+                }
+                for (Path file : files) {
+                    try {
+                        optimize(optimizer, file, outputDir);
+                    } catch (IOException ioe) {
+                        LOGGER.error("Failed to optimize {}: {}", file, ioe.getMessage());
+                        failed++;
+                    }
+                }
+            }
+        } catch (IOException ioe) {
+            LOGGER.error("Failed to list inputs: {}", ioe.getMessage());
+            return 1;
+        }
+        return failed == 0 ? 0 : 1;
+    }
+
+    private static void optimize(GifOptimizer optimizer, Path file, Path outputDir) throws IOException {
+        if (outputDir != null) {
+            optimizer.optimize(file, outputDir.resolve(file.getFileName()));
+            return;
+        }
+        // 原地替换：先写到同目录的临时文件，变小了才覆盖
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), ".optimize-", ".gif");
+        try {
+            long size = optimizer.optimize(file, temp);
+            if (size < Files.size(file)) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                LOGGER.info("Kept {}: optimized output is not smaller", file);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void print(Path file, GifAnalysis analysis, boolean verbose) {
+        System.out.println(String.format(Locale.ROOT, "%s: %dx%d, %d frames, %.2fs, %d bytes (%d in image data), global table %d/%d colors used",
+                file, analysis.getWidth(), analysis.getHeight(), analysis.getFrames().size(), analysis.getTotalDelayCs() / 100.0,
+                analysis.getFileBytes(), analysis.getCompressedBytes(), analysis.getGlobalColorsUsed(), analysis.getGlobalTableSize()));
+        for (GifFrameStats frame : verbose ? analysis.getFrames() : analysis.getOutliers()) {
+            System.out.println(String.format(Locale.ROOT, "  %s#%d %dx%d+%d+%d delay=%d disposal=%d table=%s%d/%d bytes=%d ratio=%.2f bpp=%.2f%s",
+                    frame.isOutlier() ? "!" : " ", frame.getIndex(), frame.getWidth(), frame.getHeight(), frame.getLeft(),
+                    frame.getTop(), frame.getDelayCs(), frame.getDisposal(), frame.hasLocalTable() ? "local " : "",
+                    frame.getColorsUsed(), frame.getTableSize(), frame.getCompressedBytes(), frame.getCompressionRatio(),
+                    frame.getBitsPerPixel(), frame.isTruncated() ? " truncated" : ""));
+        }
+    }
+
+    private static List<Path> collectGifs(List<Path> inputs) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path input : inputs) {
+            if (Files.isDirectory(input)) {
+                try (Stream<Path> stream = Files.list(input)) {
+                    files.addAll(stream.filter(p -> p.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".gif"))
+                            .sorted().collect(Collectors.toList()));
+                }
+            } else {
+                files.add(input);
+            }
+        }
+        return files;
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: GifToolCli analyze [-j threads] [-v] <file|dir>...");
+        System.err.println("       GifToolCli optimize [-j threads] [-l tolerance] [-o outDir] <file|dir>...");
+    }
+}
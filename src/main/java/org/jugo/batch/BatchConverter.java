@@ -0,0 +1,349 @@
+package org.jugo.batch;
+
+import org.jugo.metrics.ConversionMetrics;
+import org.jugo.model.BatchResult;
+import org.jugo.model.PaletteOptions;
+import org.jugo.utils.FfMpegUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 无界面的批量转换：在固定大小的线程池上并行调用 {@link FfMpegUtils#convertToGif}
+ */
+public class BatchConverter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchConverter.class);
+    // 与界面上的文件选择过滤保持一致
+    public static final Set<String> VIDEO_EXTENSIONS = new HashSet<>(Arrays.asList("mp4", "avi", "flv", "mkv", "mov"));
+    private static final String PART_SUFFIX = ".part";
+
+    private final int parallelism;
+    private final Integer width;
+    private final Integer height;
+    private final Double frameRate;
+    private boolean force;
+    private PaletteOptions paletteOptions;
+    private long maxBytes;
+    private long startMicros;
+    private long endMicros;
+    private int segments;
+
+    public BatchConverter(int parallelism, Integer width, Integer height, Double frameRate) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+    }
+
+    public BatchConverter(Integer width, Integer height, Double frameRate) {
+        this(defaultParallelism(), width, height, frameRate);
+    }
+
+    public static int defaultParallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * 为true时忽略已存在的输出，全部重新转换
+     */
+    public BatchConverter setForce(boolean force) {
+        this.force = force;
+        return this;
+    }
+
+    /**
+     * 设置后使用单次解码的调色板模式转换，null 为普通模式
+     */
+    public BatchConverter setPaletteOptions(PaletteOptions paletteOptions) {
+        this.paletteOptions = paletteOptions;
+        return this;
+    }
+
+    /**
+     * 设置输出大小上限（字节），大于 0 时按上限选择分辨率和帧率，见 {@link FfMpegUtils#convertToGifWithinSize}
+     */
+    public BatchConverter setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * 只转换每个视频的 [startMicros, endMicros) 这一段，endMicros 小于等于 0 时到结尾，
+     * 见 {@link FfMpegUtils#convertToGifRange}。不能与 {@link #setMaxBytes} 同时使用，否则转换时抛出 IllegalArgumentException
+     */
+    public BatchConverter setTimeRange(long startMicros, long endMicros) {
+        if (startMicros < 0 || (endMicros > 0 && endMicros <= startMicros)) {
+            throw new IllegalArgumentException("Invalid time range: " + startMicros + " - " + endMicros);
+        }
+        this.startMicros = startMicros;
+        this.endMicros = endMicros;
+        return this;
+    }
+
+    /**
+     * 大于 1 时每个视频切成这么多段并发转换再拼接，见 {@link FfMpegUtils#convertToGifSegmented}。
+     * 不能与 {@link #setTimeRange}、{@link #setMaxBytes} 同时使用，否则转换时抛出 IllegalArgumentException
+     */
+    public BatchConverter setSegments(int segments) {
+        if (segments < 0) {
+            throw new IllegalArgumentException("segments must not be negative: " + segments);
+        }
+        this.segments = segments;
+        return this;
+    }
+
+    /**
+     * 转换目录树下所有视频，输出在outputDir下保持相同的相对路径
+     *
+     * @param inputDir  输入目录
+     * @param outputDir 输出目录，为null时输出到视频所在目录
+     * @return 每个文件的转换结果，顺序与遍历顺序一致
+     */
+    public List<BatchResult> convertDirectory(Path inputDir, Path outputDir) throws IOException {
+        checkOptions();
+        List<Path> inputs;
+        try (Stream<Path> walk = Files.walk(inputDir)) {
+            inputs = walk.filter(Files::isRegularFile).filter(BatchConverter::isVideoFile).sorted().collect(Collectors.toList());
+        }
+        List<Path> targetDirs = new ArrayList<>(inputs.size());
+        for (Path input : inputs) {
+            targetDirs.add(outputDir == null ? input.getParent() : outputDir.resolve(inputDir.relativize(input)).getParent());
+        }
+        return run(planTasks(inputs, targetDirs));
+    }
+
+    /**
+     * 转换给定的视频列表，输出文件名见 {@link #planTasks}
+     *
+     * @param inputs    输入文件
+     * @param outputDir 输出目录，为null时输出到视频所在目录
+     * @return 每个文件的转换结果，顺序与inputs一致
+     */
+    public List<BatchResult> convertFiles(List<Path> inputs, Path outputDir) {
+        checkOptions();
+        List<Path> targetDirs = new ArrayList<>(inputs.size());
+        for (Path input : inputs) {
+            targetDirs.add(outputDir == null ? input.toAbsolutePath().getParent() : outputDir);
+        }
+        return run(planTasks(inputs, targetDirs));
+    }
+
+    /**
+     * 时间段、分段和大小上限只能选一种，在开始转换前检查，不依赖设置顺序
+     */
+    private void checkOptions() {
+        boolean timeRange = startMicros > 0 || endMicros > 0;
+        if (timeRange && maxBytes > 0) {
+            throw new IllegalArgumentException("Time range can not be combined with a size limit");
+        }
+        if (segments > 1 && (timeRange || maxBytes > 0)) {
+            throw new IllegalArgumentException("Segmented conversion can not be combined with a time range or a size limit");
+        }
+    }
+
+    /**
+     * 确定每个输入的输出文件：默认去掉扩展名（clip.mp4 -> clip.gif）。
+     * 多个输入会得到同一个 GIF 时（clip.mp4 和 clip.mov，或不同目录的同名视频输出到同一目录），这些输入都保留扩展名（clip.mp4.gif）；
+     * 这样仍然重名的（同一个文件传了两次等）只转换第一个，其余直接失败，不会并发写同一个输出和 .part 文件。
+     * 按不区分大小写比较，照顾不区分大小写的文件系统
+     *
+     * @param targetDirs 与 inputs 一一对应的输出目录
+     */
+    static List<Task> planTasks(List<Path> inputs, List<Path> targetDirs) {
+        Map<String, Integer> plainNames = new HashMap<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            plainNames.merge(outputKey(targetDirs.get(i).resolve(gifFileName(inputs.get(i)))), 1, Integer::sum);
+        }
+        List<Task> tasks = new ArrayList<>(inputs.size());
+        Map<String, Path> claimed = new HashMap<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            Path input = inputs.get(i);
+            Path output = targetDirs.get(i).resolve(gifFileName(input));
+            if (plainNames.get(outputKey(output)) > 1) {
+                output = targetDirs.get(i).resolve(input.getFileName() + ".gif");
+            }
+            Path first = claimed.putIfAbsent(outputKey(output), input);
+            tasks.add(new Task(input, output, first == null ? null : "Output collides with " + first));
+        }
+        return tasks;
+    }
+
+    private static String outputKey(Path output) {
+        return output.toAbsolutePath().normalize().toString().toLowerCase(Locale.ROOT);
+    }
+
+    private List<BatchResult> run(List<Task> tasks) {
+        if (tasks.isEmpty()) {
+            return Collections.emptyList();
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()), new WorkerThreadFactory());
+        try {
+            List<Future<BatchResult>> futures = new ArrayList<>(tasks.size());
+            for (Task task : tasks) {
+                long queuedAt = System.nanoTime();
+                futures.add(task.conflict != null
+                        ? CompletableFuture.completedFuture(new BatchResult(task.input, task.output, BatchResult.Status.FAILED, 0, task.conflict))
+                        : pool.submit(() -> convertOne(task.input, task.output, queuedAt)));
+            }
+            List<BatchResult> results = new ArrayList<>(tasks.size());
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException ee) {
+                    results.add(new BatchResult(tasks.get(i).input, tasks.get(i).output, BatchResult.Status.FAILED, 0, String.valueOf(ee.getCause())));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("batch conversion interrupted", ie);
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private BatchResult convertOne(Path input, Path output, long queuedAt) {
+        long start = System.nanoTime();
+        try {
+            if (!force && isUpToDate(input, output)) {
+                return new BatchResult(input, output, BatchResult.Status.SKIPPED, 0, "up to date");
+            }
+            Files.createDirectories(output.getParent());
+            // 先写临时文件再改名，中途失败不会留下"看起来最新"的半成品
+            Path part = output.resolveSibling(output.getFileName() + PART_SUFFIX);
+            try {
+                ConversionMetrics.runWithContext(queuedAt, null, () -> {
+                    if (startMicros > 0 || endMicros > 0) {
+                        FfMpegUtils.convertToGifRange(input.toString(), part.toString(), startMicros, endMicros, width, height,
+                                frameRate, paletteOptions);
+                    } else if (segments > 1) {
+                        FfMpegUtils.convertToGifSegmented(input.toString(), part.toString(), width, height, frameRate,
+                                paletteOptions, segments);
+                    } else if (maxBytes > 0) {
+                        FfMpegUtils.convertToGifWithinSize(input.toString(), part.toString(), maxBytes, width, height, frameRate,
+                                paletteOptions);
+                    } else if (paletteOptions == null) {
+                        FfMpegUtils.convertToGif(input.toString(), part.toString(), width, height, frameRate);
+                    } else {
+                        FfMpegUtils.convertToGif(input.toString(), part.toString(), width, height, frameRate, paletteOptions);
+                    }
+                });
+                moveReplacing(part, output);
+            } finally {
+                Files.deleteIfExists(part);
+            }
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            LOGGER.info("Converted {} -> {} in {} ms", input, output, elapsed);
+            return new BatchResult(input, output, BatchResult.Status.CONVERTED, elapsed, "");
+        } catch (IOException | RuntimeException e) {
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            LOGGER.warn("Failed to convert {}: {}", input, e.getMessage());
+            return new BatchResult(input, output, BatchResult.Status.FAILED, elapsed, String.valueOf(e.getMessage()));
+        }
+    }
+
+    // 输出存在且不早于输入时视为最新
+    private static boolean isUpToDate(Path input, Path output) throws IOException {
+        return Files.isRegularFile(output) && Files.size(output) > 0
+                && Files.getLastModifiedTime(output).compareTo(Files.getLastModifiedTime(input)) >= 0;
+    }
+
+    private static void moveReplacing(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static boolean isVideoFile(Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && VIDEO_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private static String gifFileName(Path input) {
+        return input.getFileName().toString().replaceFirst("[.][^.]+$", "") + ".gif";
+    }
+
+    /**
+     * 将结果写成CSV：status,input,output,elapsedMs,message
+     */
+    public static void writeSummary(List<BatchResult> results, Path summaryFile) throws IOException {
+        Path parent = summaryFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(summaryFile, StandardCharsets.UTF_8)) {
+            writer.write("status,input,output,elapsedMs,message");
+            writer.newLine();
+            for (BatchResult result : results) {
+                writer.write(result.getStatus() + "," + csv(result.getInputPath().toString()) + ","
+                        + csv(result.getOutputPath().toString()) + "," + result.getElapsedMillis() + "," + csv(result.getMessage()));
+                writer.newLine();
+            }
+        }
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    static final class Task {
+        final Path input;
+        final Path output;
+        // 不为 null 时不转换，直接以此为失败原因
+        final String conflict;
+
+        Task(Path input, Path output, String conflict) {
+            this.input = input;
+            this.output = output;
+            this.conflict = conflict;
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger index = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "batch-convert-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.jugo.gif;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * 可复用的字节缓冲，reset 后保留已分配的数组，避免每帧重新分配
+ */
+public class ByteSink {
+    private byte[] data;
+    private int size;
+
+    public ByteSink(int initialCapacity) {
+        data = new byte[Math.max(16, initialCapacity)];
+    }
+
+    public void reset() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] array() {
+        return data;
+    }
+
+    public void write(int b) {
+        if (size == data.length) {
+            grow(size + 1);
+        }
+        data[size++] = (byte) b;
+    }
+
+    public void write(byte[] bytes, int offset, int length) {
+        if (size + length > data.length) {
+            grow(size + length);
+        }
+        System.arraycopy(bytes, offset, data, size, length);
+        size += length;
+    }
+
+    public void writeShortLE(int value) {
+        write(value & 0xff);
+        write((value >> 8) & 0xff);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(data, 0, size);
+    }
+
+    private void grow(int minCapacity) {
+        data = Arrays.copyOf(data, Math.max(minCapacity, data.length << 1));
+    }
+}
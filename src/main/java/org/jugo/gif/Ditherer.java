@@ -0,0 +1,301 @@
+package org.jugo.gif;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 抖动映射：在 {@link PaletteLookup} 最近色查找的基础上加抖动。
+ * <ul>
+ *     <li>BAYER：8x8 有序抖动，每个像素只依赖自身坐标，按 8 行一条带 fork-join 并行</li>
+ *     <li>误差扩散（Floyd–Steinberg、Sierra、Sierra Lite）：行之间按波前并行。
+ *     行按顺序分给工作线程，每个像素在计算前从已处理的邻居"拉取"量化误差，
+ *     只写自己所在行的误差，不会有两个线程写同一格；当前行等上一行领先足够的列数后才前进</li>
+ * </ul>
+ * 误差存在按行循环复用的 int 数组里（每行 宽×3），和行进度一起按调用线程缓存，帧之间不重新分配
+ */
+public final class Ditherer {
+    public enum Mode {
+        NONE(null, 0),
+        BAYER(null, 0),
+        // 每项为 {dx, dy, 权重}，表示误差从 (x, y) 扩散到 (x + dx, y + dy)
+        FLOYD_STEINBERG(new int[][]{{1, 0, 7}, {-1, 1, 3}, {0, 1, 5}, {1, 1, 1}}, 4),
+        SIERRA(new int[][]{{1, 0, 5}, {2, 0, 3},
+                {-2, 1, 2}, {-1, 1, 4}, {0, 1, 5}, {1, 1, 4}, {2, 1, 2},
+                {-1, 2, 2}, {0, 2, 3}, {1, 2, 2}}, 5),
+        SIERRA_LITE(new int[][]{{1, 0, 2}, {-1, 1, 1}, {0, 1, 1}}, 2);
+
+        private final int[][] kernel;
+        private final int shift; // 权重之和为 1 << shift
+
+        Mode(int[][] kernel, int shift) {
+            this.kernel = kernel;
+            this.shift = shift;
+        }
+    }
+
+    // 少于这些像素时串行处理，线程协调的开销超过收益
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+    // 行进度每处理这么多列发布一次
+    private static final int PROGRESS_STEP = 32;
+    private static final int BAYER_SPREAD = 32;
+    private static final int[] BAYER_OFFSET = new int[64];
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    static {
+        // 由 2x2 递推出 8x8 阈值矩阵，映射到 [-SPREAD/2, SPREAD/2)
+        int[] matrix = {0};
+        for (int size = 1; size < 8; size *= 2) {
+            int[] next = new int[size * size * 4];
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    int v = matrix[y * size + x] * 4;
+                    next[y * size * 2 + x] = v;
+                    next[y * size * 2 + x + size] = v + 2;
+                    next[(y + size) * size * 2 + x] = v + 3;
+                    next[(y + size) * size * 2 + x + size] = v + 1;
+                }
+            }
+            matrix = next;
+        }
+        for (int i = 0; i < 64; i++) {
+            BAYER_OFFSET[i] = (matrix[i] * 2 - 63) * BAYER_SPREAD / 128;
+        }
+    }
+
+    private Ditherer() {
+    }
+
+    /**
+     * 把 width x height 的像素映射为 lookup 调色板的索引
+     *
+     * @param threads 最多使用的线程数，误差扩散时即同时处理的行数
+     */
+    public static void map(Mode mode, PaletteLookup lookup, int[] rgb, int width, int height, byte[] indices, int threads) {
+        int pixelCount = width * height;
+        boolean parallel = threads > 1 && pixelCount >= PARALLEL_THRESHOLD;
+        switch (mode) {
+            case NONE:
+                lookup.map(rgb, pixelCount, indices);
+                break;
+            case BAYER:
+                if (parallel) {
+                    ForkJoinPool.commonPool().invoke(new BayerTask(lookup, rgb, width, indices, 0, height));
+                } else {
+                    bayerRows(lookup, rgb, width, indices, 0, height);
+                }
+                break;
+            default:
+                diffuse(mode, lookup, rgb, width, height, indices, parallel ? Math.min(threads, height) : 1);
+        }
+    }
+
+    private static void bayerRows(PaletteLookup lookup, int[] rgb, int width, byte[] indices, int fromRow, int toRow) {
+        for (int y = fromRow; y < toRow; y++) {
+            int rowOffset = (y & 7) << 3;
+            for (int x = 0, i = y * width; x < width; x++, i++) {
+                int c = rgb[i];
+                int d = BAYER_OFFSET[rowOffset | (x & 7)];
+                int r = clamp((c >> 16 & 0xff) + d);
+                int g = clamp((c >> 8 & 0xff) + d);
+                int b = clamp((c & 0xff) + d);
+                indices[i] = (byte) lookup.indexOf(r << 16 | g << 8 | b);
+            }
+        }
+    }
+
+    private static void diffuse(Mode mode, PaletteLookup lookup, int[] rgb, int width, int height, byte[] indices, int workers) {
+        int maxDy = 0;
+        for (int[] entry : mode.kernel) {
+            maxDy = Math.max(maxDy, entry[1]);
+        }
+        // 行按顺序完成（最后一列要等上一行全部完成），未完成的行最多 workers 个且连续，
+        // 所以 workers + maxDy 行的循环缓冲足够，开始一行时它要覆盖的那行已没有读者
+        int ringRows = workers + maxDy;
+        Buffers buffers = BUFFERS.get();
+        int[] errors = buffers.errors(ringRows * width * 3);
+        AtomicIntegerArray progress = buffers.progress(height);
+        Wavefront wavefront = new Wavefront(mode, lookup, rgb, width, height, indices, errors, ringRows, progress);
+        if (workers == 1) {
+            wavefront.run();
+            return;
+        }
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[workers - 1];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = ForkJoinPool.commonPool().submit(wavefront);
+        }
+        // 调用线程也参与，领取行的顺序保证了等待的前一行一定已被某个运行中的线程领取
+        wavefront.run();
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+
+    private static int clamp(int v) {
+        return v < 0 ? 0 : (v > 255 ? 255 : v);
+    }
+
+    private static final class Wavefront implements Runnable {
+        private final PaletteLookup lookup;
+        private final int[] palette;
+        private final int[] rgb;
+        private final int width;
+        private final int height;
+        private final byte[] indices;
+        private final int[] errors;
+        private final int ringRows;
+        private final AtomicIntegerArray progress;
+        private final AtomicInteger nextRow = new AtomicInteger();
+        private final int[] kernelDx;
+        private final int[] kernelDy;
+        private final int[] kernelWeight;
+        private final int shift;
+        private final int lag; // 上一行需要领先的列数
+
+        Wavefront(Mode mode, PaletteLookup lookup, int[] rgb, int width, int height, byte[] indices,
+                  int[] errors, int ringRows, AtomicIntegerArray progress) {
+            this.lookup = lookup;
+            this.palette = lookup.getPalette();
+            this.rgb = rgb;
+            this.width = width;
+            this.height = height;
+            this.indices = indices;
+            this.errors = errors;
+            this.ringRows = ringRows;
+            this.progress = progress;
+            int n = mode.kernel.length;
+            this.kernelDx = new int[n];
+            this.kernelDy = new int[n];
+            this.kernelWeight = new int[n];
+            int maxBackReach = 0;
+            for (int k = 0; k < n; k++) {
+                kernelDx[k] = mode.kernel[k][0];
+                kernelDy[k] = mode.kernel[k][1];
+                kernelWeight[k] = mode.kernel[k][2];
+                if (kernelDy[k] > 0) {
+                    maxBackReach = Math.max(maxBackReach, -kernelDx[k]);
+                }
+            }
+            this.shift = mode.shift;
+            this.lag = maxBackReach + 1;
+        }
+
+        @Override
+        public void run() {
+            int[] sourceBase = new int[kernelDx.length];
+            int y;
+            while ((y = nextRow.getAndIncrement()) < height) {
+                processRow(y, sourceBase);
+            }
+        }
+
+        private void processRow(int y, int[] sourceBase) {
+            // 每个核项的来源行在循环缓冲中的起点，-1 表示来源行在图像之外
+            for (int k = 0; k < kernelDy.length; k++) {
+                int sy = y - kernelDy[k];
+                sourceBase[k] = sy < 0 ? -1 : (sy % ringRows) * width * 3;
+            }
+            int rowBase = (y % ringRows) * width * 3;
+            int known = y > 0 ? progress.get(y - 1) : width;
+            int published = 0;
+            for (int x = 0; x < width; x++) {
+                int needed = Math.min(width, x + lag);
+                while (known < needed) {
+                    Thread.yield();
+                    known = progress.get(y - 1);
+                }
+                // 拉取已处理邻居的误差：(x, y) 从 (x - dx, y - dy) 收到对应权重的误差
+                int er = 0;
+                int eg = 0;
+                int eb = 0;
+                for (int k = 0; k < kernelDx.length; k++) {
+                    int sx = x - kernelDx[k];
+                    if (sourceBase[k] < 0 || sx < 0 || sx >= width) {
+                        continue;
+                    }
+                    int e = sourceBase[k] + sx * 3;
+                    int w = kernelWeight[k];
+                    er += errors[e] * w;
+                    eg += errors[e + 1] * w;
+                    eb += errors[e + 2] * w;
+                }
+                int i = y * width + x;
+                int c = rgb[i];
+                int r = clamp((c >> 16 & 0xff) + (er >> shift));
+                int g = clamp((c >> 8 & 0xff) + (eg >> shift));
+                int b = clamp((c & 0xff) + (eb >> shift));
+                int index = lookup.indexOf(r << 16 | g << 8 | b);
+                indices[i] = (byte) index;
+                int p = palette[index];
+                int e = rowBase + x * 3;
+                errors[e] = r - (p >> 16 & 0xff);
+                errors[e + 1] = g - (p >> 8 & 0xff);
+                errors[e + 2] = b - (p & 0xff);
+                if (x - published >= PROGRESS_STEP) {
+                    progress.set(y, x + 1);
+                    published = x;
+                }
+            }
+            progress.set(y, width);
+        }
+    }
+
+    private static final class BayerTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final PaletteLookup lookup;
+        private final int[] rgb;
+        private final int width;
+        private final byte[] indices;
+        private final int fromRow;
+        private final int toRow;
+
+        BayerTask(PaletteLookup lookup, int[] rgb, int width, byte[] indices, int fromRow, int toRow) {
+            this.lookup = lookup;
+            this.rgb = rgb;
+            this.width = width;
+            this.indices = indices;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = toRow - fromRow;
+            if (rows * width <= PARALLEL_THRESHOLD || rows <= 8) {
+                bayerRows(lookup, rgb, width, indices, fromRow, toRow);
+                return;
+            }
+            // 按 8 行对齐切分，每条带正好覆盖整数个阈值矩阵
+            int mid = fromRow + (rows / 16) * 8;
+            invokeAll(new BayerTask(lookup, rgb, width, indices, fromRow, mid),
+                    new BayerTask(lookup, rgb, width, indices, mid, toRow));
+        }
+    }
+
+    // 每个调用线程一份，帧之间复用
+    private static final class Buffers {
+        private int[] errors = new int[0];
+        private AtomicIntegerArray progress = new AtomicIntegerArray(0);
+
+        int[] errors(int length) {
+            if (errors.length < length) {
+                errors = new int[length];
+            }
+            return errors;
+        }
+
+        AtomicIntegerArray progress(int rows) {
+            if (progress.length() < rows) {
+                progress = new AtomicIntegerArray(rows);
+            } else {
+                for (int i = 0; i < rows; i++) {
+                    progress.set(i, 0);
+                }
+            }
+            return progress;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.jugo.gif;
+
+import java.util.Arrays;
+
+/**
+ * 近似重复帧检测：把帧缩成 8x8 像素一格的亮度均值网格，与上一个保留帧的网格比较，
+ * 所有格子的差都不超过阈值时视为重复。与上一个保留帧而不是上一帧比较，缓慢的渐变不会被一直丢弃。
+ * 按格子取最大差而不是全图平均，画面局部的小幅运动（如鼠标、字幕）不会被平均掉
+ */
+public class DuplicateFrameFilter {
+    public static final double DEFAULT_THRESHOLD = 2.0;
+    private static final int CELL_SIZE = 8;
+
+    private final int width;
+    private final int height;
+    private final int columns;
+    private final int rows;
+    private final int threshold;
+    private int[] current;
+    private int[] kept;
+    private boolean hasKept;
+
+    /**
+     * @param threshold 允许的格子亮度均值差（0~255），0 表示只丢弃网格完全相同的帧
+     */
+    public DuplicateFrameFilter(int width, int height, double threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold must not be negative: " + threshold);
+        }
+        this.width = width;
+        this.height = height;
+        this.columns = (width + CELL_SIZE - 1) / CELL_SIZE;
+        this.rows = (height + CELL_SIZE - 1) / CELL_SIZE;
+        // 网格里存的是亮度和，阈值按格子像素数换算，比较时不需要除法；右侧和底部不满一格的格子因此略偏宽松
+        this.threshold = (int) Math.floor(threshold * CELL_SIZE * CELL_SIZE);
+        this.current = new int[columns * rows];
+        this.kept = new int[columns * rows];
+    }
+
+    /**
+     * 判断 rgb 是否与上一个保留帧近似相同，不相同时记为新的保留帧
+     */
+    public boolean isDuplicate(int[] rgb) {
+        Arrays.fill(current, 0);
+        for (int y = 0; y < height; y++) {
+            int row = y / CELL_SIZE * columns;
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int c = rgb[offset + x];
+                // BT.601 近似：(2R + 5G + B) / 8
+                current[row + x / CELL_SIZE] += ((c >> 15 & 0x1fe) + (c >> 8 & 0xff) * 5 + (c & 0xff)) >> 3;
+            }
+        }
+        if (hasKept && maxCellDifference() <= threshold) {
+            return true;
+        }
+        int[] swap = kept;
+        kept = current;
+        current = swap;
+        hasKept = true;
+        return false;
+    }
+
+    private int maxCellDifference() {
+        int max = 0;
+        for (int i = 0; i < current.length; i++) {
+            int diff = Math.abs(current[i] - kept[i]);
+            if (diff > max) {
+                max = diff;
+            }
+        }
+        return max;
+    }
+}
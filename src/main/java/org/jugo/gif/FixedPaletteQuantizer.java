@@ -0,0 +1,52 @@
+package org.jugo.gif;
+
+/**
+ * 所有帧共用一个全局调色板，最近色缓存在帧之间共享，越往后命中率越高
+ */
+public class FixedPaletteQuantizer implements FrameQuantizer {
+    private final PaletteLookup lookup;
+    private final Ditherer.Mode dither;
+    private final int threads;
+
+    public FixedPaletteQuantizer(int[] palette) {
+        this(palette, Ditherer.Mode.NONE, 1);
+    }
+
+    /**
+     * @param dither  抖动方式
+     * @param threads 单帧抖动最多使用的线程数
+     */
+    public FixedPaletteQuantizer(int[] palette, Ditherer.Mode dither, int threads) {
+        this.lookup = new PaletteLookup(palette);
+        this.dither = dither;
+        this.threads = threads;
+    }
+
+    /**
+     * 用一帧样本生成全局调色板
+     */
+    public static FixedPaletteQuantizer fromSample(int[] rgb, int pixelCount, int maxColors) {
+        return fromSample(rgb, pixelCount, maxColors, Ditherer.Mode.NONE, 1);
+    }
+
+    public static FixedPaletteQuantizer fromSample(int[] rgb, int pixelCount, int maxColors, Ditherer.Mode dither, int threads) {
+        return new FixedPaletteQuantizer(MedianCutQuantizer.buildPalette(rgb, pixelCount, maxColors), dither, threads);
+    }
+
+    @Override
+    public int[] getGlobalPalette() {
+        return lookup.getPalette();
+    }
+
+    @Override
+    public int[] quantize(int[] rgb, int pixelCount, byte[] indices) {
+        lookup.map(rgb, pixelCount, indices);
+        return lookup.getPalette();
+    }
+
+    @Override
+    public int[] quantize(int[] rgb, int width, int height, byte[] indices) {
+        Ditherer.map(dither, lookup, rgb, width, height, indices, threads);
+        return lookup.getPalette();
+    }
+}
@@ -0,0 +1,92 @@
+package org.jugo.gif;
+
+/**
+ * 相邻两帧的差异计算。像素按 15 位颜色（RGB 5-5-5）比较，与 {@link PaletteLookup} 的缓存粒度一致：
+ * 同一格内的变化会映射到相同的调色板索引，视为未变化。格子是等价类，连续的微小变化不会累积漂移出一个格子
+ */
+public final class FrameDiff {
+    private static final int KEY_MASK = 0xf8f8f8;
+
+    private FrameDiff() {
+    }
+
+    public static boolean same(int a, int b) {
+        return ((a ^ b) & KEY_MASK) == 0;
+    }
+
+    /**
+     * 计算变化像素的包围盒：先从上下两端逐行收缩，再在剩余行里从左右两端收缩
+     *
+     * @param bounds 输出 {left, top, width, height}
+     * @return 两帧没有差异时返回 false，bounds 不变
+     */
+    public static boolean dirtyBounds(int[] previous, int[] current, int width, int height, int[] bounds) {
+        int top = 0;
+        while (top < height && rowEquals(previous, current, top * width, width)) {
+            top++;
+        }
+        if (top == height) {
+            return false;
+        }
+        int bottom = height - 1;
+        while (bottom > top && rowEquals(previous, current, bottom * width, width)) {
+            bottom--;
+        }
+        int left = width;
+        int right = -1;
+        for (int y = top; y <= bottom; y++) {
+            int row = y * width;
+            int x = 0;
+            while (x < left && same(previous[row + x], current[row + x])) {
+                x++;
+            }
+            left = Math.min(left, x);
+            x = width - 1;
+            while (x > right && same(previous[row + x], current[row + x])) {
+                x--;
+            }
+            right = Math.max(right, x);
+        }
+        bounds[0] = left;
+        bounds[1] = top;
+        bounds[2] = right - left + 1;
+        bounds[3] = bottom - top + 1;
+        return true;
+    }
+
+    /**
+     * 把 source 中 bounds 指定的矩形复制成连续的 region
+     */
+    public static void extract(int[] source, int width, int[] bounds, int[] region) {
+        int regionWidth = bounds[2];
+        for (int y = 0; y < bounds[3]; y++) {
+            System.arraycopy(source, (bounds[1] + y) * width + bounds[0], region, y * regionWidth, regionWidth);
+        }
+    }
+
+    /**
+     * 矩形内与上一帧相同的像素改为透明色，画面上继续显示上一帧的内容
+     */
+    public static void maskUnchanged(int[] previous, int[] current, int width, int[] bounds, byte[] indices, int transparentIndex) {
+        int regionWidth = bounds[2];
+        byte transparent = (byte) transparentIndex;
+        for (int y = 0; y < bounds[3]; y++) {
+            int source = (bounds[1] + y) * width + bounds[0];
+            int target = y * regionWidth;
+            for (int x = 0; x < regionWidth; x++) {
+                if (same(previous[source + x], current[source + x])) {
+                    indices[target + x] = transparent;
+                }
+            }
+        }
+    }
+
+    private static boolean rowEquals(int[] previous, int[] current, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            if (!same(previous[i], current[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
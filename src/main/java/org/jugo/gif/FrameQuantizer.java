@@ -0,0 +1,30 @@
+package org.jugo.gif;
+
+/**
+ * 把一帧 RGB 像素映射为调色板索引，实现需要线程安全，编码线程池会并发调用
+ */
+public interface FrameQuantizer {
+    /**
+     * @return 全局颜色表，为 null 表示每帧使用自己的局部颜色表
+     */
+    int[] getGlobalPalette();
+
+    /**
+     * @param rgb        0xRRGGBB 像素
+     * @param pixelCount 像素个数
+     * @param indices    输出的调色板索引
+     * @return 本帧使用的颜色表；与全局颜色表为同一数组时不写局部颜色表
+     */
+    int[] quantize(int[] rgb, int pixelCount, byte[] indices);
+
+    /**
+     * 按二维区域量化，抖动需要知道像素的行列位置；默认忽略几何信息按一维处理
+     *
+     * @param rgb    按行连续存放的 width x height 像素
+     * @param width  区域宽度
+     * @param height 区域高度
+     */
+    default int[] quantize(int[] rgb, int width, int height, byte[] indices) {
+        return quantize(rgb, width * height, indices);
+    }
+}
@@ -0,0 +1,22 @@
+package org.jugo.gif;
+
+/**
+ * 把帧率换算成 GIF 的 1/100 秒帧延时，累积取整，长时间播放不会漂移
+ */
+public class FrameTiming {
+    private final double frameRate;
+    private long frameIndex;
+
+    public FrameTiming(double frameRate) {
+        if (frameRate <= 0) {
+            throw new IllegalArgumentException("frameRate must be positive: " + frameRate);
+        }
+        this.frameRate = frameRate;
+    }
+
+    public int nextDelay() {
+        long start = Math.round(frameIndex * 100 / frameRate);
+        long end = Math.round(++frameIndex * 100 / frameRate);
+        return (int) Math.max(1, end - start);
+    }
+}
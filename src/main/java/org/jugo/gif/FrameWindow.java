@@ -0,0 +1,77 @@
+package org.jugo.gif;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按帧并行处理、按提交顺序取结果的有界窗口：在途任务达到上限时先等最早的一个完成并交给 consumer，
+ * 读取、计算和写出可以流水进行，内存占用只与窗口大小有关。submit/finish 只能由同一个线程调用
+ */
+final class FrameWindow<T> implements Closeable {
+    interface ResultConsumer<T> {
+        void accept(T result) throws IOException;
+    }
+
+    private static final AtomicInteger POOL_INDEX = new AtomicInteger();
+
+    private final ExecutorService pool;
+    private final ResultConsumer<T> consumer;
+    private final Deque<Future<T>> inFlight = new ArrayDeque<>();
+    private final int capacity;
+
+    FrameWindow(String name, int threads, ResultConsumer<T> consumer) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        int poolIndex = POOL_INDEX.incrementAndGet();
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, name + "-" + poolIndex + "-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.consumer = consumer;
+        // 每个线程一帧在处理、一帧在排队
+        this.capacity = threads * 2;
+    }
+
+    void submit(Callable<T> task) throws IOException {
+        if (inFlight.size() == capacity) {
+            consumeNext();
+        }
+        inFlight.addLast(pool.submit(task));
+    }
+
+    void finish() throws IOException {
+        while (!inFlight.isEmpty()) {
+            consumeNext();
+        }
+    }
+
+    private void consumeNext() throws IOException {
+        T result;
+        try {
+            result = inFlight.removeFirst().get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing frames", ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+        }
+        consumer.accept(result);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
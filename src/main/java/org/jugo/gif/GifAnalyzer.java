@@ -0,0 +1,116 @@
+package org.jugo.gif;
+
+import org.jugo.model.GifAnalysis;
+import org.jugo.model.GifFrameStats;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 逐块读取 GIF 并统计每帧的压缩比、颜色表使用情况和大小离群帧。
+ * 只做 LZW 解码得到索引，不转换颜色、不合成画面；各帧的解码在线程池里并行，结果按帧顺序汇总
+ */
+public class GifAnalyzer {
+    private final int threads;
+    private final ThreadLocal<LzwDecoder> decoders = ThreadLocal.withInitial(LzwDecoder::new);
+    private final ThreadLocal<byte[][]> pixelBuffers = ThreadLocal.withInitial(() -> new byte[1][0]);
+
+    public GifAnalyzer(int threads) {
+        this.threads = threads;
+    }
+
+    public GifAnalysis analyze(Path path) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), 1 << 16)) {
+            GifReader reader = new GifReader(in);
+            GifReader.Header header = reader.readHeader();
+            int[] globalPalette = header.getGlobalPalette();
+            List<GifFrameStats> frames = new ArrayList<>();
+            long[] globalUsage = new long[4];
+            try (FrameWindow<Result> window = new FrameWindow<>("gif-analyzer", threads, result -> {
+                frames.add(result.stats);
+                if (!result.stats.hasLocalTable()) {
+                    orInto(globalUsage, result.usage);
+                }
+            })) {
+                GifReader.Frame frame;
+                while ((frame = reader.nextFrame()) != null) {
+                    GifReader.Frame current = frame;
+                    window.submit(() -> analyzeFrame(current, globalPalette));
+                }
+                window.finish();
+            }
+            int globalSize = globalPalette == null ? 0 : globalPalette.length;
+            return new GifAnalysis(header.getWidth(), header.getHeight(), Files.size(path), globalSize,
+                    countBelow(globalUsage, globalSize), frames);
+        }
+    }
+
+    private Result analyzeFrame(GifReader.Frame frame, int[] globalPalette) {
+        int pixelCount = frame.getWidth() * frame.getHeight();
+        byte[] pixels = pixelBuffer(pixelBuffers, pixelCount);
+        int decoded = decoders.get().decode(frame.getData(), frame.getMinCodeSize(), pixels, pixelCount);
+        long[] usage = usage(pixels, decoded);
+        int[] localPalette = frame.getLocalPalette();
+        int tableSize = localPalette != null ? localPalette.length : (globalPalette != null ? globalPalette.length : 0);
+        GifFrameStats stats = new GifFrameStats(frame.getIndex(), frame.getLeft(), frame.getTop(), frame.getWidth(),
+                frame.getHeight(), frame.getDelayCs(), frame.getDisposal(), frame.getTransparentIndex(), localPalette != null,
+                tableSize, countBelow(usage, 256), frame.getMinCodeSize(), frame.getData().length, decoded);
+        return new Result(stats, usage);
+    }
+
+    /**
+     * 出现过的索引，256 位的位图
+     */
+    static long[] usage(byte[] pixels, int count) {
+        long[] usage = new long[4];
+        for (int i = 0; i < count; i++) {
+            int index = pixels[i] & 0xff;
+            usage[index >> 6] |= 1L << index;
+        }
+        return usage;
+    }
+
+    static boolean isUsed(long[] usage, int index) {
+        return (usage[index >> 6] & 1L << index) != 0;
+    }
+
+    static void orInto(long[] target, long[] usage) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] |= usage[i];
+        }
+    }
+
+    private static int countBelow(long[] usage, int limit) {
+        int count = 0;
+        for (int index = 0; index < limit; index++) {
+            if (isUsed(usage, index)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // 每个线程复用一块索引缓冲，只在遇到更大的帧时扩容
+    static byte[] pixelBuffer(ThreadLocal<byte[][]> buffers, int pixelCount) {
+        byte[][] holder = buffers.get();
+        if (holder[0].length < pixelCount) {
+            holder[0] = new byte[pixelCount];
+        }
+        return holder[0];
+    }
+
+    private static class Result {
+        final GifFrameStats stats;
+        final long[] usage;
+
+        Result(GifFrameStats stats, long[] usage) {
+            this.stats = stats;
+            this.usage = usage;
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package org.jugo.gif;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 不改变画面的 GIF 重写（可选有损）：
+ * <ul>
+ *     <li>颜色表只保留实际用到的颜色，重复颜色合并，颜色表和 LZW 码长随之变小</li>
+ *     <li>用 {@link LzwEncoder} 重新压缩；颜色表没有变化且重新压缩反而更大的帧保留原数据</li>
+ *     <li>lossyTolerance 大于 0 时用 {@link LzwEncoder#encodeLossy} 有损压缩，像素各通道的误差不超过该值</li>
+ *     <li>去掉注释扩展，其他扩展（循环次数等）原样保留</li>
+ * </ul>
+ * 输入读两遍：有全局颜色表时第一遍只解码统计全局颜色的使用情况，第二遍重写。
+ * 两遍都按帧在线程池里并行，内存占用只与并行窗口有关
+ */
+public class GifOptimizer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GifOptimizer.class);
+    private static final int COMMENT_LABEL = 0xfe;
+    // 每种颜色最多尝试的近似色个数
+    private static final int MAX_SUBSTITUTES = 16;
+
+    private final int threads;
+    private int lossyTolerance;
+    private final ThreadLocal<LzwDecoder> decoders = ThreadLocal.withInitial(LzwDecoder::new);
+    private final ThreadLocal<LzwEncoder> encoders = ThreadLocal.withInitial(LzwEncoder::new);
+    private final ThreadLocal<byte[][]> pixelBuffers = ThreadLocal.withInitial(() -> new byte[1][0]);
+
+    public GifOptimizer(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * @param lossyTolerance 有损压缩时 RGB 各通道允许的最大误差（0~255），0 为无损
+     */
+    public GifOptimizer setLossyTolerance(int lossyTolerance) {
+        if (lossyTolerance < 0 || lossyTolerance > 255) {
+            throw new IllegalArgumentException("lossyTolerance must be in [0, 255]: " + lossyTolerance);
+        }
+        this.lossyTolerance = lossyTolerance;
+        return this;
+    }
+
+    /**
+     * @return 输出文件大小
+     */
+    public long optimize(Path input, Path output) throws IOException {
+        Remap globalRemap = null;
+        int[] globalPalette;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(input), 1 << 16)) {
+            globalPalette = new GifReader(in).readHeader().getGlobalPalette();
+        }
+        if (globalPalette != null) {
+            globalRemap = buildGlobalRemap(input, globalPalette);
+        }
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(input), 1 << 16);
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(output), 1 << 16)) {
+            rewrite(new GifReader(in), new GifWriter(out), globalRemap);
+        }
+        long before = Files.size(input);
+        long after = Files.size(output);
+        LOGGER.info("Optimized {}: {} -> {} bytes ({}%)", input, before, after, before == 0 ? 0 : after * 100 / before);
+        return after;
+    }
+
+    // 第一遍：统计使用全局颜色表的帧用到的索引，以及哪些索引在某一帧里作为透明色
+    private Remap buildGlobalRemap(Path input, int[] globalPalette) throws IOException {
+        long[] used = new long[4];
+        boolean[] transparent = new boolean[256];
+        int backgroundIndex;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(input), 1 << 16);
+             FrameWindow<long[]> window = new FrameWindow<>("gif-optimizer-scan", threads,
+                     usage -> GifAnalyzer.orInto(used, usage))) {
+            GifReader reader = new GifReader(in);
+            backgroundIndex = reader.readHeader().getBackgroundIndex();
+            GifReader.Frame frame;
+            while ((frame = reader.nextFrame()) != null) {
+                if (frame.getLocalPalette() != null) {
+                    continue;
+                }
+                if (frame.getTransparentIndex() >= 0) {
+                    transparent[frame.getTransparentIndex()] = true;
+                }
+                GifReader.Frame current = frame;
+                window.submit(() -> {
+                    int pixelCount = current.getWidth() * current.getHeight();
+                    byte[] pixels = GifAnalyzer.pixelBuffer(pixelBuffers, pixelCount);
+                    int decoded = decoders.get().decode(current.getData(), current.getMinCodeSize(), pixels, pixelCount);
+                    long[] usage = GifAnalyzer.usage(pixels, decoded);
+                    if (decoded < pixelCount) {
+                        // 截断帧重写时用这个索引补齐，必须留在新颜色表里
+                        int padding = paddingIndex(current);
+                        usage[padding >> 6] |= 1L << padding;
+                    }
+                    return usage;
+                });
+            }
+            window.finish();
+        }
+        // 背景色保留，部分解码器在处置方式为恢复背景时会用到
+        used[backgroundIndex >> 6] |= 1L << backgroundIndex;
+        return Remap.build(globalPalette, used, transparent);
+    }
+
+    private void rewrite(GifReader reader, GifWriter writer, Remap globalRemap) throws IOException {
+        GifReader.Header header = reader.readHeader();
+        int backgroundIndex = globalRemap == null ? 0 : Math.max(0, globalRemap.map[header.getBackgroundIndex()]);
+        writer.writeLogicalScreen(header.getWidth(), header.getHeight(), globalRemap == null ? null : globalRemap.palette,
+                backgroundIndex, header.getRaw()[12] & 0xff);
+        int[][] globalSubstitutes = globalRemap != null && lossyTolerance > 0 ? substitutes(globalRemap, -1) : null;
+        try (FrameWindow<Output> window = new FrameWindow<>("gif-optimizer", threads, result -> write(writer, result))) {
+            GifReader.Frame frame;
+            while ((frame = reader.nextFrame()) != null) {
+                GifReader.Frame current = frame;
+                window.submit(() -> optimizeFrame(current, globalRemap, globalSubstitutes));
+            }
+            window.finish();
+        }
+        writeExtensions(writer, reader.getTrailingExtensions());
+        writer.writeTrailer();
+    }
+
+    private Output optimizeFrame(GifReader.Frame frame, Remap globalRemap, int[][] globalSubstitutes) {
+        int pixelCount = frame.getWidth() * frame.getHeight();
+        byte[] pixels = GifAnalyzer.pixelBuffer(pixelBuffers, pixelCount);
+        int decoded = decoders.get().decode(frame.getData(), frame.getMinCodeSize(), pixels, pixelCount);
+        int transparentIndex = frame.getTransparentIndex();
+        if (decoded < pixelCount) {
+            // 码流提前结束，缺的像素按透明处理，没有透明色时用 0
+            LOGGER.debug("Frame {} has {} of {} pixels", frame.getIndex(), decoded, pixelCount);
+            Arrays.fill(pixels, decoded, pixelCount, (byte) paddingIndex(frame));
+        }
+        int[] localPalette = frame.getLocalPalette();
+        Remap remap;
+        int[][] substitutes;
+        if (localPalette != null) {
+            boolean[] transparent = new boolean[256];
+            if (transparentIndex >= 0) {
+                transparent[transparentIndex] = true;
+            }
+            remap = Remap.build(localPalette, GifAnalyzer.usage(pixels, pixelCount), transparent);
+            substitutes = lossyTolerance > 0 ? substitutes(remap, -1) : null;
+        } else if (globalRemap != null) {
+            remap = globalRemap;
+            substitutes = globalSubstitutes;
+        } else {
+            throw new IllegalStateException("Frame " + frame.getIndex() + " has no color table");
+        }
+        int newTransparent = transparentIndex >= 0 ? remap.map[transparentIndex] : -1;
+        for (int i = 0; i < pixelCount; i++) {
+            pixels[i] = (byte) remap.map[pixels[i] & 0xff];
+        }
+        int depth = GifWriter.colorDepth(remap.palette.length);
+        ByteSink lzw = new ByteSink(frame.getData().length + 64);
+        LzwEncoder encoder = encoders.get();
+        if (substitutes != null) {
+            // 透明色不能替换成别的颜色，也不能被别的颜色替换
+            int[][] frameSubstitutes = newTransparent >= 0 ? withoutIndex(substitutes, newTransparent) : substitutes;
+            encoder.encodeLossy(pixels, pixelCount, depth, lzw, frameSubstitutes);
+        } else {
+            encoder.encode(pixels, pixelCount, depth, lzw);
+            if (remap.identity && decoded == pixelCount && lzw.size() > frame.getData().length + blockOverhead(frame.getData().length)) {
+                lzw.reset();
+                copyOriginal(frame, lzw);
+            }
+        }
+        return new Output(frame, localPalette != null ? remap.palette : null, newTransparent, lzw);
+    }
+
+    private static int paddingIndex(GifReader.Frame frame) {
+        return Math.max(0, frame.getTransparentIndex());
+    }
+
+    private static void write(GifWriter writer, Output result) throws IOException {
+        GifReader.Frame frame = result.frame;
+        writeExtensions(writer, frame.getExtensions());
+        if (frame.hasGraphicControl()) {
+            writer.writeGraphicControl(frame.getDelayCs(), frame.getDisposal(), result.transparentIndex);
+        }
+        writer.writeImage(frame.getLeft(), frame.getTop(), frame.getWidth(), frame.getHeight(), frame.isInterlaced(),
+                result.localPalette, result.lzw);
+    }
+
+    private static void writeExtensions(GifWriter writer, List<byte[]> extensions) throws IOException {
+        for (byte[] extension : extensions) {
+            if ((extension[1] & 0xff) != COMMENT_LABEL) {
+                writer.writeRaw(extension);
+            }
+        }
+    }
+
+    // 原码流重新分成子块：最小码长、每块最多 255 字节、结束符
+    private static void copyOriginal(GifReader.Frame frame, ByteSink sink) {
+        byte[] data = frame.getData();
+        sink.write(frame.getMinCodeSize());
+        for (int offset = 0; offset < data.length; offset += 255) {
+            int size = Math.min(255, data.length - offset);
+            sink.write(size);
+            sink.write(data, offset, size);
+        }
+        sink.write(0);
+    }
+
+    private static int blockOverhead(int dataLength) {
+        return (dataLength + 254) / 255 + 2;
+    }
+
+    // 每个新索引可以替换成的其他索引，各通道误差不超过容差，按误差排序
+    private int[][] substitutes(Remap remap, int excluded) {
+        int[] palette = remap.palette;
+        int[][] result = new int[256][];
+        List<int[]> candidates = new ArrayList<>();
+        for (int i = 0; i < palette.length; i++) {
+            if (i == excluded || remap.distinct[i]) {
+                continue;
+            }
+            candidates.clear();
+            for (int j = 0; j < palette.length; j++) {
+                if (j == i || j == excluded || remap.distinct[j]) {
+                    continue;
+                }
+                int error = channelError(palette[i], palette[j]);
+                if (error <= lossyTolerance) {
+                    candidates.add(new int[]{error, j});
+                }
+            }
+            candidates.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+            int n = Math.min(MAX_SUBSTITUTES, candidates.size());
+            result[i] = new int[n];
+            for (int k = 0; k < n; k++) {
+                result[i][k] = candidates.get(k)[1];
+            }
+        }
+        return result;
+    }
+
+    private static int[][] withoutIndex(int[][] substitutes, int index) {
+        int[][] result = new int[substitutes.length][];
+        for (int i = 0; i < substitutes.length; i++) {
+            int[] list = substitutes[i];
+            if (i == index || list == null) {
+                continue;
+            }
+            int n = 0;
+            int[] filtered = new int[list.length];
+            for (int s : list) {
+                if (s != index) {
+                    filtered[n++] = s;
+                }
+            }
+            result[i] = n == list.length ? list : Arrays.copyOf(filtered, n);
+        }
+        return result;
+    }
+
+    private static int channelError(int a, int b) {
+        int dr = Math.abs((a >> 16 & 0xff) - (b >> 16 & 0xff));
+        int dg = Math.abs((a >> 8 & 0xff) - (b >> 8 & 0xff));
+        int db = Math.abs((a & 0xff) - (b & 0xff));
+        return Math.max(dr, Math.max(dg, db));
+    }
+
+    /**
+     * 旧索引到精简后颜色表的映射
+     */
+    private static final class Remap {
+        final int[] map = new int[256]; // 未使用的索引为 -1
+        final int[] palette;
+        final boolean[] distinct; // 新索引是否来自透明色，不参与合并和有损替换
+        final boolean identity; // 用到的索引都没有变化
+
+        private Remap(int[] palette, boolean[] distinct, boolean identity, int[] map) {
+            this.palette = palette;
+            this.distinct = distinct;
+            this.identity = identity;
+            System.arraycopy(map, 0, this.map, 0, 256);
+        }
+
+        /**
+         * @param palette     原颜色表，超出长度的索引按黑色处理
+         * @param used        用到的索引
+         * @param transparent 作为透明色出现过的索引，单独保留，不与同色的不透明索引合并
+         */
+        static Remap build(int[] palette, long[] used, boolean[] transparent) {
+            int[] map = new int[256];
+            Arrays.fill(map, -1);
+            int[] newPalette = new int[256];
+            boolean[] distinct = new boolean[256];
+            Map<Integer, Integer> byColor = new HashMap<>();
+            int size = 0;
+            boolean identity = true;
+            for (int index = 0; index < 256; index++) {
+                if (!GifAnalyzer.isUsed(used, index)) {
+                    continue;
+                }
+                int rgb = index < palette.length ? palette[index] : 0;
+                Integer existing = transparent[index] ? null : byColor.get(rgb);
+                if (existing != null) {
+                    map[index] = existing;
+                } else {
+                    map[index] = size;
+                    newPalette[size] = rgb;
+                    distinct[size] = transparent[index];
+                    if (!transparent[index]) {
+                        byColor.put(rgb, size);
+                    }
+                    size++;
+                }
+                identity &= map[index] == index;
+            }
+            if (size == 0) {
+                size = 1;
+            }
+            identity &= GifWriter.colorDepth(size) == GifWriter.colorDepth(palette.length);
+            return new Remap(Arrays.copyOf(newPalette, size), Arrays.copyOf(distinct, size), identity, map);
+        }
+    }
+
+    private static class Output {
+        final GifReader.Frame frame;
+        final int[] localPalette;
+        final int transparentIndex;
+        final ByteSink lzw;
+
+        Output(GifReader.Frame frame, int[] localPalette, int transparentIndex, ByteSink lzw) {
+            this.frame = frame;
+            this.localPalette = localPalette;
+            this.transparentIndex = transparentIndex;
+            this.lzw = lzw;
+        }
+    }
+}
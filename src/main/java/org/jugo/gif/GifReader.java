@@ -0,0 +1,261 @@
+package org.jugo.gif;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 按块流式读取 GIF：文件头、颜色表、扩展块和图像块，图像数据保持 LZW 压缩状态，不解码、不合成画面。
+ * 先调用 {@link #readHeader()}，再反复调用 {@link #nextFrame()} 直到返回 null
+ */
+public class GifReader {
+    private static final int EXTENSION = 0x21;
+    private static final int IMAGE_DESCRIPTOR = 0x2c;
+    private static final int TRAILER = 0x3b;
+    private static final int GRAPHIC_CONTROL_LABEL = 0xf9;
+
+    private final DataInputStream in;
+    private final byte[] buffer = new byte[256];
+    private int frameIndex;
+    private List<byte[]> trailingExtensions = Collections.emptyList();
+
+    /**
+     * @param in 输入，由调用方负责缓冲和关闭
+     */
+    public GifReader(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    public Header readHeader() throws IOException {
+        byte[] header = new byte[13];
+        in.readFully(header);
+        if (header[0] != 'G' || header[1] != 'I' || header[2] != 'F') {
+            throw new IOException("Not a gif file");
+        }
+        int flags = header[10] & 0xff;
+        byte[] globalTable = null;
+        if ((flags & 0x80) != 0) {
+            globalTable = new byte[3 << ((flags & 7) + 1)];
+            in.readFully(globalTable);
+        }
+        return new Header(header, globalTable);
+    }
+
+    /**
+     * @return 下一帧，读到结尾时返回 null，之后未被任何帧带走的扩展见 {@link #getTrailingExtensions()}
+     */
+    public Frame nextFrame() throws IOException {
+        List<byte[]> extensions = new ArrayList<>();
+        byte[] graphicControl = null;
+        while (true) {
+            int type = in.read();
+            if (type < 0 || type == TRAILER) {
+                trailingExtensions = extensions;
+                return null;
+            }
+            if (type == EXTENSION) {
+                int label = in.readUnsignedByte();
+                byte[] data = readSubBlocks();
+                if (label == GRAPHIC_CONTROL_LABEL) {
+                    graphicControl = data;
+                } else {
+                    byte[] raw = new byte[data.length + 2];
+                    raw[0] = (byte) EXTENSION;
+                    raw[1] = (byte) label;
+                    System.arraycopy(data, 0, raw, 2, data.length);
+                    extensions.add(raw);
+                }
+            } else if (type == IMAGE_DESCRIPTOR) {
+                byte[] descriptor = new byte[9];
+                in.readFully(descriptor);
+                int flags = descriptor[8] & 0xff;
+                byte[] localTable = null;
+                if ((flags & 0x80) != 0) {
+                    localTable = new byte[3 << ((flags & 7) + 1)];
+                    in.readFully(localTable);
+                }
+                int minCodeSize = in.readUnsignedByte();
+                byte[] data = readSubBlockPayload();
+                return new Frame(frameIndex++, descriptor, localTable, graphicControl, minCodeSize, data, extensions);
+            } else {
+                throw new IOException("Unexpected gif block type: 0x" + Integer.toHexString(type));
+            }
+        }
+    }
+
+    /**
+     * 最后一帧之后、结束符之前的扩展块（原始字节，含 0x21 和标签）
+     */
+    public List<byte[]> getTrailingExtensions() {
+        return trailingExtensions;
+    }
+
+    // 子块原样保留（含长度字节和结束的 0），用于重新写出扩展
+    private byte[] readSubBlocks() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int size;
+        do {
+            size = readByte();
+            out.write(size);
+            in.readFully(buffer, 0, size);
+            out.write(buffer, 0, size);
+        } while (size != 0);
+        return out.toByteArray();
+    }
+
+    // 只取子块内容拼接起来，去掉长度字节，即连续的 LZW 码流
+    private byte[] readSubBlockPayload() throws IOException {
+        ByteSink out = new ByteSink(1 << 12);
+        int size;
+        while ((size = readByte()) != 0) {
+            in.readFully(buffer, 0, size);
+            out.write(buffer, 0, size);
+        }
+        byte[] data = new byte[out.size()];
+        System.arraycopy(out.array(), 0, data, 0, data.length);
+        return data;
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("Truncated gif data");
+        }
+        return b;
+    }
+
+    static int[] toPalette(byte[] table) {
+        int[] palette = new int[table.length / 3];
+        for (int i = 0, j = 0; i < palette.length; i++, j += 3) {
+            palette[i] = (table[j] & 0xff) << 16 | (table[j + 1] & 0xff) << 8 | (table[j + 2] & 0xff);
+        }
+        return palette;
+    }
+
+    public static class Header {
+        private final byte[] raw; // 文件头和逻辑屏幕描述，13 字节
+        private final byte[] globalTable;
+
+        Header(byte[] raw, byte[] globalTable) {
+            this.raw = raw;
+            this.globalTable = globalTable;
+        }
+
+        public int getWidth() {
+            return (raw[6] & 0xff) | (raw[7] & 0xff) << 8;
+        }
+
+        public int getHeight() {
+            return (raw[8] & 0xff) | (raw[9] & 0xff) << 8;
+        }
+
+        public int getBackgroundIndex() {
+            return raw[11] & 0xff;
+        }
+
+        /**
+         * @return 全局颜色表（0xRRGGBB），没有时为 null
+         */
+        public int[] getGlobalPalette() {
+            return globalTable == null ? null : toPalette(globalTable);
+        }
+
+        byte[] getRaw() {
+            return raw;
+        }
+    }
+
+    public static class Frame {
+        private final int index;
+        private final byte[] descriptor; // 图像描述的 9 字节，不含 0x2c
+        private final byte[] localTable;
+        private final byte[] graphicControl; // 图形控制扩展的子块，没有时为 null
+        private final int minCodeSize;
+        private final byte[] data;
+        private final List<byte[]> extensions;
+
+        Frame(int index, byte[] descriptor, byte[] localTable, byte[] graphicControl, int minCodeSize, byte[] data,
+              List<byte[]> extensions) {
+            this.index = index;
+            this.descriptor = descriptor;
+            this.localTable = localTable;
+            this.graphicControl = graphicControl;
+            this.minCodeSize = minCodeSize;
+            this.data = data;
+            this.extensions = extensions;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int getLeft() {
+            return (descriptor[0] & 0xff) | (descriptor[1] & 0xff) << 8;
+        }
+
+        public int getTop() {
+            return (descriptor[2] & 0xff) | (descriptor[3] & 0xff) << 8;
+        }
+
+        public int getWidth() {
+            return (descriptor[4] & 0xff) | (descriptor[5] & 0xff) << 8;
+        }
+
+        public int getHeight() {
+            return (descriptor[6] & 0xff) | (descriptor[7] & 0xff) << 8;
+        }
+
+        public boolean isInterlaced() {
+            return (descriptor[8] & 0x40) != 0;
+        }
+
+        /**
+         * @return 局部颜色表（0xRRGGBB），没有时为 null
+         */
+        public int[] getLocalPalette() {
+            return localTable == null ? null : toPalette(localTable);
+        }
+
+        public boolean hasGraphicControl() {
+            return graphicControl != null;
+        }
+
+        public int getDelayCs() {
+            return graphicControl == null ? 0 : (graphicControl[2] & 0xff) | (graphicControl[3] & 0xff) << 8;
+        }
+
+        public int getDisposal() {
+            return graphicControl == null ? 0 : (graphicControl[1] >> 2) & 7;
+        }
+
+        /**
+         * @return 透明色索引，不透明时为 -1
+         */
+        public int getTransparentIndex() {
+            return graphicControl != null && (graphicControl[1] & 1) != 0 ? graphicControl[4] & 0xff : -1;
+        }
+
+        public int getMinCodeSize() {
+            return minCodeSize;
+        }
+
+        /**
+         * @return 去掉子块长度后的 LZW 码流
+         */
+        public byte[] getData() {
+            return data;
+        }
+
+        /**
+         * 本帧之前的其他扩展块（循环、注释等，原始字节）
+         */
+        public List<byte[]> getExtensions() {
+            return extensions;
+        }
+    }
+}
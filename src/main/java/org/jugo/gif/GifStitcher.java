@@ -0,0 +1,146 @@
+package org.jugo.gif;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 把多段 GIF 按字节拼接成一个动画，不重新编码：
+ * 只保留第一段的文件头、全局颜色表和一个循环扩展，其余各段只复制图形控制扩展和图像块。
+ * 某段的全局颜色表与输出的不同时，把它作为局部颜色表写进该段每个没有局部颜色表的图像描述里
+ */
+public class GifStitcher {
+    private static final int EXTENSION = 0x21;
+    private static final int IMAGE_DESCRIPTOR = 0x2c;
+    private static final int TRAILER = 0x3b;
+    private static final int GRAPHIC_CONTROL_LABEL = 0xf9;
+
+    private final byte[] buffer = new byte[256];
+
+    /**
+     * @param parts 按播放顺序排列的分段 GIF
+     * @param out   输出
+     */
+    public void stitch(List<Path> parts, OutputStream out) throws IOException {
+        if (parts.isEmpty()) {
+            throw new IllegalArgumentException("No gif parts to stitch");
+        }
+        byte[] globalTable = null;
+        for (int i = 0; i < parts.size(); i++) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(parts.get(i)), 1 << 16))) {
+                byte[] header = new byte[13];
+                in.readFully(header);
+                if (header[0] != 'G' || header[1] != 'I' || header[2] != 'F') {
+                    throw new IOException("Not a gif file: " + parts.get(i));
+                }
+                int flags = header[10] & 0xff;
+                byte[] partTable = null;
+                if ((flags & 0x80) != 0) {
+                    partTable = new byte[3 << ((flags & 7) + 1)];
+                    in.readFully(partTable);
+                }
+                if (i == 0) {
+                    header[3] = '8';
+                    header[4] = '9';
+                    header[5] = 'a';
+                    out.write(header);
+                    if (partTable != null) {
+                        out.write(partTable);
+                    }
+                    globalTable = partTable;
+                    writeLoopExtension(out);
+                }
+                byte[] substituteTable = partTable == null || Arrays.equals(partTable, globalTable) ? null : partTable;
+                copyBlocks(in, out, substituteTable);
+            }
+        }
+        out.write(TRAILER);
+        out.flush();
+    }
+
+    private void copyBlocks(DataInputStream in, OutputStream out, byte[] substituteTable) throws IOException {
+        while (true) {
+            int type = in.read();
+            if (type < 0 || type == TRAILER) {
+                return;
+            }
+            if (type == EXTENSION) {
+                int label = in.readUnsignedByte();
+                if (label == GRAPHIC_CONTROL_LABEL) {
+                    out.write(EXTENSION);
+                    out.write(label);
+                    copySubBlocks(in, out);
+                } else {
+                    // 循环、注释等扩展只保留输出开头的一份
+                    skipSubBlocks(in);
+                }
+            } else if (type == IMAGE_DESCRIPTOR) {
+                byte[] descriptor = new byte[9];
+                in.readFully(descriptor);
+                int flags = descriptor[8] & 0xff;
+                out.write(IMAGE_DESCRIPTOR);
+                if ((flags & 0x80) == 0 && substituteTable != null) {
+                    int depth = Integer.numberOfTrailingZeros(substituteTable.length / 3);
+                    descriptor[8] = (byte) (flags & 0x40 | 0x80 | (depth - 1));
+                    out.write(descriptor);
+                    out.write(substituteTable);
+                } else {
+                    out.write(descriptor);
+                    if ((flags & 0x80) != 0) {
+                        copyFully(in, out, 3 << ((flags & 7) + 1));
+                    }
+                }
+                out.write(in.readUnsignedByte()); // LZW 最小码长
+                copySubBlocks(in, out);
+            } else {
+                throw new IOException("Unexpected gif block type: 0x" + Integer.toHexString(type));
+            }
+        }
+    }
+
+    private void copySubBlocks(InputStream in, OutputStream out) throws IOException {
+        int size;
+        do {
+            size = readByte(in);
+            out.write(size);
+            copyFully(in, out, size);
+        } while (size != 0);
+    }
+
+    private void skipSubBlocks(DataInputStream in) throws IOException {
+        int size;
+        while ((size = readByte(in)) != 0) {
+            in.readFully(buffer, 0, size);
+        }
+    }
+
+    private void copyFully(InputStream in, OutputStream out, int length) throws IOException {
+        while (length > 0) {
+            int n = in.read(buffer, 0, Math.min(length, buffer.length));
+            if (n < 0) {
+                throw new EOFException("Truncated gif data");
+            }
+            out.write(buffer, 0, n);
+            length -= n;
+        }
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("Truncated gif data");
+        }
+        return b;
+    }
+
+    private static void writeLoopExtension(OutputStream out) throws IOException {
+        out.write(new byte[]{EXTENSION, (byte) 0xff, 11, 'N', 'E', 'T', 'S', 'C', 'A', 'P', 'E', '2', '.', '0', 3, 1, 0, 0, 0});
+    }
+}
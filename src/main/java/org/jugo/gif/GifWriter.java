@@ -0,0 +1,151 @@
+package org.jugo.gif;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * GIF89a 的块级写出：文件头、逻辑屏幕描述、颜色表、循环扩展、图形控制扩展和图像块
+ */
+public class GifWriter {
+    public static final int DISPOSAL_UNSPECIFIED = 0;
+    public static final int DISPOSAL_NONE = 1; // 保留当前帧，下一帧在其上绘制
+    public static final int DISPOSAL_BACKGROUND = 2;
+
+    private final OutputStream out;
+    private final byte[] scratch = new byte[3 * 256];
+
+    public GifWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * @param globalPalette 全局颜色表（0xRRGGBB），为 null 时每帧需要带局部颜色表
+     * @param loopCount     循环次数，0 为无限循环，负数不写循环扩展
+     */
+    public void writeHeader(int width, int height, int[] globalPalette, int loopCount) throws IOException {
+        writeLogicalScreen(width, height, globalPalette, 0, 0);
+        if (loopCount >= 0) {
+            out.write(0x21);
+            out.write(0xff);
+            out.write(11);
+            out.write("NETSCAPE2.0".getBytes(StandardCharsets.US_ASCII));
+            out.write(3);
+            out.write(1);
+            writeShort(loopCount);
+            out.write(0);
+        }
+    }
+
+    /**
+     * 写出文件头、逻辑屏幕描述和全局颜色表
+     *
+     * @param backgroundIndex 背景色在全局颜色表中的索引
+     * @param aspectRatio     像素宽高比字节，0 表示未指定
+     */
+    public void writeLogicalScreen(int width, int height, int[] globalPalette, int backgroundIndex, int aspectRatio) throws IOException {
+        out.write("GIF89a".getBytes(StandardCharsets.US_ASCII));
+        writeShort(width);
+        writeShort(height);
+        if (globalPalette != null) {
+            int depth = colorDepth(globalPalette.length);
+            out.write(0x80 | 0x70 | (depth - 1));
+        } else {
+            out.write(0x70);
+        }
+        out.write(backgroundIndex);
+        out.write(aspectRatio);
+        if (globalPalette != null) {
+            writeColorTable(globalPalette);
+        }
+    }
+
+    /**
+     * 写出一帧
+     *
+     * @param localPalette     局部颜色表，为 null 时使用全局颜色表
+     * @param transparentIndex 透明色索引，负数表示不透明
+     * @param lzwData          {@link LzwEncoder} 的输出
+     */
+    public void writeFrame(int left, int top, int width, int height, int delayCs, int disposal, int transparentIndex,
+                           int[] localPalette, ByteSink lzwData) throws IOException {
+        writeGraphicControl(delayCs, disposal, transparentIndex);
+        writeImage(left, top, width, height, false, localPalette, lzwData);
+    }
+
+    /**
+     * 图形控制扩展：显示时长、处置方式和透明色
+     */
+    public void writeGraphicControl(int delayCs, int disposal, int transparentIndex) throws IOException {
+        out.write(0x21);
+        out.write(0xf9);
+        out.write(4);
+        out.write((disposal & 7) << 2 | (transparentIndex >= 0 ? 1 : 0));
+        writeShort(delayCs);
+        out.write(transparentIndex >= 0 ? transparentIndex : 0);
+        out.write(0);
+    }
+
+    /**
+     * 图像描述、局部颜色表和压缩数据
+     *
+     * @param interlaced lzwData 中的行是否按隔行顺序排列
+     */
+    public void writeImage(int left, int top, int width, int height, boolean interlaced, int[] localPalette,
+                           ByteSink lzwData) throws IOException {
+        out.write(0x2c);
+        writeShort(left);
+        writeShort(top);
+        writeShort(width);
+        writeShort(height);
+        int flags = interlaced ? 0x40 : 0;
+        if (localPalette != null) {
+            out.write(flags | 0x80 | (colorDepth(localPalette.length) - 1));
+            writeColorTable(localPalette);
+        } else {
+            out.write(flags);
+        }
+        lzwData.writeTo(out);
+    }
+
+    /**
+     * 原样写出一个已编码的块，如读取时保留的扩展
+     */
+    public void writeRaw(byte[] block) throws IOException {
+        out.write(block);
+    }
+
+    public void writeTrailer() throws IOException {
+        out.write(0x3b);
+        out.flush();
+    }
+
+    /**
+     * 容纳 colorCount 种颜色所需的位数，取值 1~8
+     */
+    public static int colorDepth(int colorCount) {
+        int depth = 1;
+        while ((1 << depth) < colorCount) {
+            depth++;
+        }
+        return depth;
+    }
+
+    // 颜色表长度必须是 2 的幂，不足部分补黑色
+    private void writeColorTable(int[] palette) throws IOException {
+        int size = 1 << colorDepth(palette.length);
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            int rgb = i < palette.length ? palette[i] : 0;
+            scratch[n++] = (byte) (rgb >> 16);
+            scratch[n++] = (byte) (rgb >> 8);
+            scratch[n++] = (byte) rgb;
+        }
+        out.write(scratch, 0, n);
+    }
+
+    private void writeShort(int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+    }
+}
@@ -0,0 +1,107 @@
+package org.jugo.gif;
+
+/**
+ * GIF 的可变码长 LZW 解压，只输出调色板索引，不转换颜色。
+ * 码表用前缀码和末字节两个数组表示，解码串倒序写入栈数组再拷出，不分配对象；
+ * 实例不是线程安全的，每个工作线程持有自己的实例
+ */
+public class LzwDecoder {
+    private static final int MAX_BITS = 12;
+    private static final int MAX_CODES = 1 << MAX_BITS;
+
+    private final short[] prefix = new short[MAX_CODES];
+    private final byte[] suffix = new byte[MAX_CODES];
+    private final byte[] first = new byte[MAX_CODES];
+    private final byte[] stack = new byte[MAX_CODES + 1];
+
+    /**
+     * @param data        去掉子块长度后的码流
+     * @param minCodeSize LZW 最小码长
+     * @param pixels      输出索引
+     * @param pixelCount  期望的像素数，多出的数据忽略
+     * @return 实际解出的像素数，码流提前结束时小于 pixelCount
+     */
+    public int decode(byte[] data, int minCodeSize, byte[] pixels, int pixelCount) {
+        if (minCodeSize < 1 || minCodeSize > 11) {
+            throw new IllegalArgumentException("Invalid LZW minimum code size: " + minCodeSize);
+        }
+        int clearCode = 1 << minCodeSize;
+        int eofCode = clearCode + 1;
+        for (int code = 0; code < clearCode; code++) {
+            prefix[code] = -1;
+            suffix[code] = (byte) code;
+            first[code] = (byte) code;
+        }
+        int codeSize = minCodeSize + 1;
+        int codeMask = (1 << codeSize) - 1;
+        int nextCode = clearCode + 2;
+        int previous = -1;
+        int accumulator = 0;
+        int accumulatorBits = 0;
+        int position = 0;
+        int out = 0;
+        while (out < pixelCount) {
+            while (accumulatorBits < codeSize) {
+                if (position >= data.length) {
+                    return out;
+                }
+                accumulator |= (data[position++] & 0xff) << accumulatorBits;
+                accumulatorBits += 8;
+            }
+            int code = accumulator & codeMask;
+            accumulator >>>= codeSize;
+            accumulatorBits -= codeSize;
+            if (code == clearCode) {
+                codeSize = minCodeSize + 1;
+                codeMask = (1 << codeSize) - 1;
+                nextCode = clearCode + 2;
+                previous = -1;
+                continue;
+            }
+            if (code == eofCode) {
+                return out;
+            }
+            if (previous < 0) {
+                if (code >= clearCode) {
+                    return out; // 清表后第一个码必须是单个像素，数据已损坏
+                }
+                pixels[out++] = (byte) code;
+                previous = code;
+                continue;
+            }
+            int top = 0;
+            int current = code;
+            if (code >= nextCode) {
+                if (code > nextCode) {
+                    return out; // 引用了还不存在的码，数据已损坏
+                }
+                // KwKwK：新码等于上一个串加上它自己的首字节
+                stack[top++] = first[previous];
+                current = previous;
+            }
+            while (current >= clearCode) {
+                stack[top++] = suffix[current];
+                current = prefix[current];
+            }
+            stack[top++] = (byte) current;
+            byte firstByte = (byte) current;
+            int count = Math.min(top, pixelCount - out);
+            for (int i = 0; i < count; i++) {
+                pixels[out++] = stack[--top];
+            }
+            // 码表满后不再添加，等编码端发清表码（GIF 允许延迟清表）
+            if (nextCode < MAX_CODES) {
+                prefix[nextCode] = (short) previous;
+                suffix[nextCode] = firstByte;
+                first[nextCode] = first[previous];
+                nextCode++;
+                if (nextCode > codeMask && codeSize < MAX_BITS) {
+                    codeSize++;
+                    codeMask = (1 << codeSize) - 1;
+                }
+            }
+            previous = code;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,225 @@
+package org.jugo.gif;
+
+import java.util.Arrays;
+
+/**
+ * GIF 的可变码长 LZW 压缩，基于开放寻址的整数哈希表，不在压缩过程中分配对象。
+ * 实例不是线程安全的，每个工作线程持有自己的实例以复用内部数组
+ */
+public class LzwEncoder {
+    private static final int MAX_BITS = 12;
+    private static final int MAX_MAX_CODE = 1 << MAX_BITS;
+    private static final int HASH_SIZE = 5003; // 80% 装载率的质数
+    private static final int HASH_SHIFT = 4; // 使 (c << HASH_SHIFT) ^ ent 落在 HASH_SIZE 内
+
+    private final int[] hashTable = new int[HASH_SIZE];
+    private final int[] codeTable = new int[HASH_SIZE];
+    private final byte[] block = new byte[256];
+
+    private ByteSink out;
+    private int initBits;
+    private int nBits;
+    private int maxCode;
+    private int clearCode;
+    private int eofCode;
+    private int freeEntry;
+    private boolean clearFlag;
+    private int accumulator;
+    private int accumulatorBits;
+    private int blockSize;
+
+    /**
+     * 压缩一帧索引数据，输出 LZW 最小码长、数据子块和块结束符
+     *
+     * @param pixels      调色板索引
+     * @param length      像素个数
+     * @param colorDepth  调色板位数（颜色数为 2^colorDepth）
+     * @param sink        输出
+     */
+    public void encode(byte[] pixels, int length, int colorDepth, ByteSink sink) {
+        int minCodeSize = Math.max(2, colorDepth);
+        sink.write(minCodeSize);
+        out = sink;
+        initBits = minCodeSize + 1;
+        nBits = initBits;
+        maxCode = maxCode(nBits);
+        clearCode = 1 << minCodeSize;
+        eofCode = clearCode + 1;
+        freeEntry = clearCode + 2;
+        clearFlag = false;
+        accumulator = 0;
+        accumulatorBits = 0;
+        blockSize = 0;
+        Arrays.fill(hashTable, -1);
+        output(clearCode);
+        if (length > 0) {
+            int ent = pixels[0] & 0xff;
+            outer:
+            for (int p = 1; p < length; p++) {
+                int c = pixels[p] & 0xff;
+                int fcode = (c << MAX_BITS) + ent;
+                int i = (c << HASH_SHIFT) ^ ent;
+                if (hashTable[i] == fcode) {
+                    ent = codeTable[i];
+                    continue;
+                }
+                if (hashTable[i] >= 0) {
+                    // 二次探测
+                    int disp = i == 0 ? 1 : HASH_SIZE - i;
+                    do {
+                        if ((i -= disp) < 0) {
+                            i += HASH_SIZE;
+                        }
+                        if (hashTable[i] == fcode) {
+                            ent = codeTable[i];
+                            continue outer;
+                        }
+                    } while (hashTable[i] >= 0);
+                }
+                output(ent);
+                ent = c;
+                if (freeEntry < MAX_MAX_CODE) {
+                    codeTable[i] = freeEntry++;
+                    hashTable[i] = fcode;
+                } else {
+                    clearTable();
+                }
+            }
+            output(ent);
+        }
+        output(eofCode);
+        sink.write(0); // 块结束符
+        out = null;
+    }
+
+    /**
+     * 有损压缩：当前串不能用原像素延长时，按 substitutes 中的顺序尝试近似色，
+     * 码表里已有的话就用近似色延长当前串，串越长输出的码越少。被替换的像素写回 pixels
+     *
+     * @param substitutes 每个索引可以替换成的索引，按误差从小到大排列；为 null 或空数组表示不能替换
+     */
+    public void encodeLossy(byte[] pixels, int length, int colorDepth, ByteSink sink, int[][] substitutes) {
+        int minCodeSize = Math.max(2, colorDepth);
+        sink.write(minCodeSize);
+        out = sink;
+        initBits = minCodeSize + 1;
+        nBits = initBits;
+        maxCode = maxCode(nBits);
+        clearCode = 1 << minCodeSize;
+        eofCode = clearCode + 1;
+        freeEntry = clearCode + 2;
+        clearFlag = false;
+        accumulator = 0;
+        accumulatorBits = 0;
+        blockSize = 0;
+        Arrays.fill(hashTable, -1);
+        output(clearCode);
+        if (length > 0) {
+            int ent = pixels[0] & 0xff;
+            outer:
+            for (int p = 1; p < length; p++) {
+                int c = pixels[p] & 0xff;
+                int i = probe(c, ent);
+                if (hashTable[i] >= 0) {
+                    ent = codeTable[i];
+                    continue;
+                }
+                int[] candidates = substitutes[c];
+                if (candidates != null) {
+                    for (int s : candidates) {
+                        int j = probe(s, ent);
+                        if (hashTable[j] >= 0) {
+                            pixels[p] = (byte) s;
+                            ent = codeTable[j];
+                            continue outer;
+                        }
+                    }
+                }
+                output(ent);
+                if (freeEntry < MAX_MAX_CODE) {
+                    codeTable[i] = freeEntry++;
+                    hashTable[i] = (c << MAX_BITS) + ent;
+                } else {
+                    clearTable();
+                }
+                ent = c;
+            }
+            output(ent);
+        }
+        output(eofCode);
+        sink.write(0);
+        out = null;
+    }
+
+    // 查找 (ent, c) 所在的槽，不存在时返回探测序列上的第一个空槽
+    private int probe(int c, int ent) {
+        int fcode = (c << MAX_BITS) + ent;
+        int i = (c << HASH_SHIFT) ^ ent;
+        if (hashTable[i] == fcode || hashTable[i] < 0) {
+            return i;
+        }
+        int disp = i == 0 ? 1 : HASH_SIZE - i;
+        do {
+            if ((i -= disp) < 0) {
+                i += HASH_SIZE;
+            }
+        } while (hashTable[i] != fcode && hashTable[i] >= 0);
+        return i;
+    }
+
+    private void clearTable() {
+        Arrays.fill(hashTable, -1);
+        freeEntry = clearCode + 2;
+        clearFlag = true;
+        output(clearCode);
+    }
+
+    private void output(int code) {
+        accumulator &= (1 << accumulatorBits) - 1;
+        accumulator = accumulatorBits > 0 ? accumulator | (code << accumulatorBits) : code;
+        accumulatorBits += nBits;
+        while (accumulatorBits >= 8) {
+            writeByte(accumulator & 0xff);
+            accumulator >>= 8;
+            accumulatorBits -= 8;
+        }
+        // 码表满后增加码长，清表后恢复初始码长
+        if (freeEntry > maxCode || clearFlag) {
+            if (clearFlag) {
+                nBits = initBits;
+                maxCode = maxCode(nBits);
+                clearFlag = false;
+            } else {
+                nBits++;
+                maxCode = nBits == MAX_BITS ? MAX_MAX_CODE : maxCode(nBits);
+            }
+        }
+        if (code == eofCode) {
+            while (accumulatorBits > 0) {
+                writeByte(accumulator & 0xff);
+                accumulator >>= 8;
+                accumulatorBits -= 8;
+            }
+            flushBlock();
+        }
+    }
+
+    private void writeByte(int b) {
+        block[blockSize++] = (byte) b;
+        if (blockSize == 255) {
+            flushBlock();
+        }
+    }
+
+    private void flushBlock() {
+        if (blockSize > 0) {
+            out.write(blockSize);
+            out.write(block, 0, blockSize);
+            blockSize = 0;
+        }
+    }
+
+    private static int maxCode(int bits) {
+        return (1 << bits) - 1;
+    }
+}
@@ -0,0 +1,231 @@
+package org.jugo.gif;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 中位切分量化：fork-join 并行统计 15 位颜色直方图，在直方图上做中位切分生成调色板，
+ * 再通过 {@link PaletteLookup} 映射像素。每帧生成自己的局部调色板，每个编码线程复用一个 PaletteLookup，换调色板时只清空缓存
+ */
+public class MedianCutQuantizer implements FrameQuantizer {
+    private static final int HISTOGRAM_SIZE = 1 << 15;
+    private static final int PARALLEL_THRESHOLD = 1 << 17;
+
+    private final int maxColors;
+    private final Ditherer.Mode dither;
+    private final int threads;
+    private final ThreadLocal<PaletteLookup> lookups = new ThreadLocal<>();
+
+    public MedianCutQuantizer(int maxColors) {
+        this(maxColors, Ditherer.Mode.NONE, 1);
+    }
+
+    /**
+     * @param dither  抖动方式
+     * @param threads 单帧抖动最多使用的线程数
+     */
+    public MedianCutQuantizer(int maxColors, Ditherer.Mode dither, int threads) {
+        if (maxColors < 2 || maxColors > 256) {
+            throw new IllegalArgumentException("maxColors must be in [2, 256]: " + maxColors);
+        }
+        this.maxColors = maxColors;
+        this.dither = dither;
+        this.threads = threads;
+    }
+
+    @Override
+    public int[] getGlobalPalette() {
+        return null;
+    }
+
+    @Override
+    public int[] quantize(int[] rgb, int pixelCount, byte[] indices) {
+        int[] palette = buildPalette(rgb, pixelCount, maxColors);
+        lookupFor(palette).map(rgb, pixelCount, indices);
+        return palette;
+    }
+
+    @Override
+    public int[] quantize(int[] rgb, int width, int height, byte[] indices) {
+        int[] palette = buildPalette(rgb, width * height, maxColors);
+        Ditherer.map(dither, lookupFor(palette), rgb, width, height, indices, threads);
+        return palette;
+    }
+
+    private PaletteLookup lookupFor(int[] palette) {
+        PaletteLookup lookup = lookups.get();
+        if (lookup == null) {
+            lookup = new PaletteLookup(palette);
+            lookups.set(lookup);
+        } else {
+            lookup.reset(palette);
+        }
+        return lookup;
+    }
+
+    /**
+     * 为给定像素生成不超过 maxColors 种颜色的调色板
+     */
+    public static int[] buildPalette(int[] rgb, int pixelCount, int maxColors) {
+        int[] histogram = pixelCount < PARALLEL_THRESHOLD
+                ? HistogramTask.count(rgb, 0, pixelCount)
+                : ForkJoinPool.commonPool().invoke(new HistogramTask(rgb, 0, pixelCount));
+        int distinct = 0;
+        for (int count : histogram) {
+            if (count != 0) {
+                distinct++;
+            }
+        }
+        int[] colors = new int[distinct];
+        for (int c = 0, n = 0; c < HISTOGRAM_SIZE; c++) {
+            if (histogram[c] != 0) {
+                colors[n++] = c;
+            }
+        }
+        if (distinct == 0) {
+            return new int[]{0};
+        }
+        // 每个盒子是 colors 中的一段 [boxStart, boxEnd)
+        int[] boxStart = new int[maxColors];
+        int[] boxEnd = new int[maxColors];
+        int[] keys = new int[distinct];
+        boxEnd[0] = distinct;
+        int boxCount = 1;
+        while (boxCount < maxColors) {
+            int target = -1;
+            int targetChannel = 0;
+            long targetScore = 0;
+            for (int i = 0; i < boxCount; i++) {
+                if (boxEnd[i] - boxStart[i] < 2) {
+                    continue;
+                }
+                int[] range = channelRanges(colors, boxStart[i], boxEnd[i]);
+                int channel = range[0] >= range[1] ? (range[0] >= range[2] ? 0 : 2) : (range[1] >= range[2] ? 1 : 2);
+                long score = population(histogram, colors, boxStart[i], boxEnd[i]) * (range[channel] + 1);
+                if (score > targetScore) {
+                    targetScore = score;
+                    target = i;
+                    targetChannel = channel;
+                }
+            }
+            if (target < 0) {
+                break;
+            }
+            int split = splitAtMedian(histogram, colors, keys, boxStart[target], boxEnd[target], targetChannel);
+            boxStart[boxCount] = split;
+            boxEnd[boxCount] = boxEnd[target];
+            boxEnd[target] = split;
+            boxCount++;
+        }
+        int[] palette = new int[boxCount];
+        for (int i = 0; i < boxCount; i++) {
+            palette[i] = average(histogram, colors, boxStart[i], boxEnd[i]);
+        }
+        return palette;
+    }
+
+    private static int channel(int color15, int channel) {
+        return color15 >> (10 - channel * 5) & 0x1f;
+    }
+
+    private static int[] channelRanges(int[] colors, int from, int to) {
+        int[] min = {31, 31, 31};
+        int[] max = {0, 0, 0};
+        for (int i = from; i < to; i++) {
+            for (int ch = 0; ch < 3; ch++) {
+                int v = channel(colors[i], ch);
+                if (v < min[ch]) {
+                    min[ch] = v;
+                }
+                if (v > max[ch]) {
+                    max[ch] = v;
+                }
+            }
+        }
+        return new int[]{max[0] - min[0], max[1] - min[1], max[2] - min[2]};
+    }
+
+    private static long population(int[] histogram, int[] colors, int from, int to) {
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += histogram[colors[i]];
+        }
+        return sum;
+    }
+
+    // 按通道排序后在像素数过半处切开，返回第二个盒子的起点
+    private static int splitAtMedian(int[] histogram, int[] colors, int[] keys, int from, int to, int channel) {
+        for (int i = from; i < to; i++) {
+            keys[i] = channel(colors[i], channel) << 15 | colors[i];
+        }
+        Arrays.sort(keys, from, to);
+        for (int i = from; i < to; i++) {
+            colors[i] = keys[i] & 0x7fff;
+        }
+        long half = population(histogram, colors, from, to) / 2;
+        long sum = 0;
+        for (int i = from; i < to - 1; i++) {
+            sum += histogram[colors[i]];
+            if (sum >= half) {
+                return i + 1;
+            }
+        }
+        return to - 1;
+    }
+
+    private static int average(int[] histogram, int[] colors, int from, int to) {
+        long r = 0;
+        long g = 0;
+        long b = 0;
+        long total = 0;
+        for (int i = from; i < to; i++) {
+            int c = colors[i];
+            long count = histogram[c];
+            r += count * (channel(c, 0) << 3 | 4);
+            g += count * (channel(c, 1) << 3 | 4);
+            b += count * (channel(c, 2) << 3 | 4);
+            total += count;
+        }
+        return (int) (r / total) << 16 | (int) (g / total) << 8 | (int) (b / total);
+    }
+
+    private static class HistogramTask extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] rgb;
+        private final int from;
+        private final int to;
+
+        HistogramTask(int[] rgb, int from, int to) {
+            this.rgb = rgb;
+            this.from = from;
+            this.to = to;
+        }
+
+        static int[] count(int[] rgb, int from, int to) {
+            int[] histogram = new int[HISTOGRAM_SIZE];
+            for (int i = from; i < to; i++) {
+                int c = rgb[i];
+                histogram[(c >> 9 & 0x7c00) | (c >> 6 & 0x3e0) | (c >> 3 & 0x1f)]++;
+            }
+            return histogram;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                return count(rgb, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            HistogramTask right = new HistogramTask(rgb, mid, to);
+            right.fork();
+            int[] left = new HistogramTask(rgb, from, mid).compute();
+            int[] other = right.join();
+            for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+                left[i] += other[i];
+            }
+            return left;
+        }
+    }
+}
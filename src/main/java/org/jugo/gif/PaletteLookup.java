@@ -0,0 +1,191 @@
+package org.jugo.gif;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 像素到调色板索引的最近色查找。
+ * 颜色先截成 15 位（RGB 5-5-5）作为缓存下标，未命中时在按绿色分量排序的调色板上向两侧搜索并剪枝，
+ * 每个缓存格最多计算一次。缓存为 int 数组，多线程并发填充同一格写入的是相同的值，不需要加锁
+ */
+public class PaletteLookup {
+    private static final int CACHE_SIZE = 1 << 15;
+    // 加权欧氏距离，人眼对绿色最敏感
+    private static final int WEIGHT_R = 2;
+    private static final int WEIGHT_G = 4;
+    private static final int WEIGHT_B = 3;
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private final int[] cache = new int[CACHE_SIZE]; // 0 表示未计算，否则为索引+1
+    private int[] palette;
+    private int[] sortedR;
+    private int[] sortedG;
+    private int[] sortedB;
+    private int[] sortedIndex;
+
+    public PaletteLookup(int[] palette) {
+        setPalette(palette);
+    }
+
+    /**
+     * 换成另一个调色板并清空缓存，复用缓存数组，避免每帧重新分配。调用时不能有其他线程正在查找
+     */
+    public void reset(int[] palette) {
+        Arrays.fill(cache, 0);
+        setPalette(palette);
+    }
+
+    private void setPalette(int[] palette) {
+        if (palette.length == 0 || palette.length > 256) {
+            throw new IllegalArgumentException("Palette size must be in [1, 256]: " + palette.length);
+        }
+        this.palette = palette;
+        int n = palette.length;
+        // 以 (绿色 << 8 | 原索引) 排序，避免装箱
+        int[] keys = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = (palette[i] >> 8 & 0xff) << 8 | i;
+        }
+        Arrays.sort(keys);
+        sortedR = new int[n];
+        sortedG = new int[n];
+        sortedB = new int[n];
+        sortedIndex = new int[n];
+        for (int i = 0; i < n; i++) {
+            int index = keys[i] & 0xff;
+            int c = palette[index];
+            sortedIndex[i] = index;
+            sortedR[i] = c >> 16 & 0xff;
+            sortedG[i] = c >> 8 & 0xff;
+            sortedB[i] = c & 0xff;
+        }
+    }
+
+    public int[] getPalette() {
+        return palette;
+    }
+
+    /**
+     * @param rgb 0xRRGGBB
+     * @return 最近的调色板索引
+     */
+    public int indexOf(int rgb) {
+        int key = (rgb >> 9 & 0x7c00) | (rgb >> 6 & 0x3e0) | (rgb >> 3 & 0x1f);
+        int cached = cache[key];
+        if (cached != 0) {
+            return cached - 1;
+        }
+        // 用格子中心计算，保证同一格的结果与首次访问的像素无关
+        int r = (key >> 10) << 3 | 4;
+        int g = (key >> 5 & 0x1f) << 3 | 4;
+        int b = (key & 0x1f) << 3 | 4;
+        int index = search(r, g, b);
+        cache[key] = index + 1;
+        return index;
+    }
+
+    /**
+     * 把 rgb 的前 pixelCount 个像素映射到 indices，大帧用 fork-join 分段并行
+     */
+    public void map(int[] rgb, int pixelCount, byte[] indices) {
+        if (pixelCount < PARALLEL_THRESHOLD) {
+            mapRange(rgb, 0, pixelCount, indices);
+        } else {
+            ForkJoinPool.commonPool().invoke(new MapTask(rgb, 0, pixelCount, indices));
+        }
+    }
+
+    private void mapRange(int[] rgb, int from, int to, byte[] indices) {
+        if (from >= to) {
+            return;
+        }
+        int lastRgb = ~rgb[from];
+        int lastIndex = 0;
+        for (int i = from; i < to; i++) {
+            int c = rgb[i];
+            if (c != lastRgb) {
+                lastRgb = c;
+                lastIndex = indexOf(c);
+            }
+            indices[i] = (byte) lastIndex;
+        }
+    }
+
+    private int search(int r, int g, int b) {
+        int n = sortedG.length;
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sortedG[mid] < g) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int best = Integer.MAX_VALUE;
+        int bestIndex = 0;
+        int up = lo;
+        int down = lo - 1;
+        while (up < n || down >= 0) {
+            if (up < n) {
+                int dg = sortedG[up] - g;
+                if (dg * dg * WEIGHT_G >= best) {
+                    up = n;
+                } else {
+                    int dr = sortedR[up] - r;
+                    int db = sortedB[up] - b;
+                    int d = dr * dr * WEIGHT_R + dg * dg * WEIGHT_G + db * db * WEIGHT_B;
+                    if (d < best) {
+                        best = d;
+                        bestIndex = sortedIndex[up];
+                    }
+                    up++;
+                }
+            }
+            if (down >= 0) {
+                int dg = g - sortedG[down];
+                if (dg * dg * WEIGHT_G >= best) {
+                    down = -1;
+                } else {
+                    int dr = sortedR[down] - r;
+                    int db = sortedB[down] - b;
+                    int d = dr * dr * WEIGHT_R + dg * dg * WEIGHT_G + db * db * WEIGHT_B;
+                    if (d < best) {
+                        best = d;
+                        bestIndex = sortedIndex[down];
+                    }
+                    down--;
+                }
+            }
+        }
+        return bestIndex;
+    }
+
+    private class MapTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] rgb;
+        private final int from;
+        private final int to;
+        private final byte[] indices;
+
+        MapTask(int[] rgb, int from, int to, byte[] indices) {
+            this.rgb = rgb;
+            this.from = from;
+            this.to = to;
+            this.indices = indices;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                mapRange(rgb, from, to, indices);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new MapTask(rgb, from, mid, indices), new MapTask(rgb, mid, to, indices));
+        }
+    }
+}
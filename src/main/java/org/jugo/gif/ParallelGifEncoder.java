@@ -0,0 +1,235 @@
+package org.jugo.gif;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 流式 GIF 编码器：量化和 LZW 压缩在线程池里按帧并行，写出严格按提交顺序。
+ * 同时在途的帧数固定为 window，每个槽位的像素、索引和压缩缓冲循环复用，内存占用与视频长度无关。
+ * <p>
+ * 用法：循环调用 {@link #frameBuffer()} 填充像素后 {@link #submitFrame(int)}，最后 {@link #finish()}。
+ * 这两个方法只能由同一个线程调用
+ * <p>
+ * 开启差分帧后，每帧只编码与上一帧相比变化的矩形，矩形内未变化的像素写成透明色，所有帧的处置方式为保留，
+ * 下一帧叠加在当前画面上。差分只依赖相邻两帧的原始像素，仍然按帧并行计算
+ */
+public class ParallelGifEncoder implements Closeable {
+    private static final AtomicInteger POOL_INDEX = new AtomicInteger();
+
+    private final int width;
+    private final int height;
+    private final FrameQuantizer quantizer;
+    private final GifWriter writer;
+    private final ExecutorService pool;
+    private final ThreadLocal<LzwEncoder> lzwEncoders = ThreadLocal.withInitial(LzwEncoder::new);
+    private final Slot[] slots;
+    private final boolean deltaFrames;
+    // 差分帧需要上一帧的像素，在途帧数比槽位少一个，保证最早在途帧的上一帧槽位还没有被复用
+    private final int maxInFlight;
+    private final int[] headerPalette;
+    private final int globalTransparentIndex;
+    private long submitted;
+    private long written;
+    private boolean finished;
+
+    public ParallelGifEncoder(OutputStream out, int width, int height, FrameQuantizer quantizer, int threads) throws IOException {
+        this(out, width, height, quantizer, threads, false);
+    }
+
+    /**
+     * @param deltaFrames 是否只编码每帧的变化区域。使用局部调色板时，量化器最多生成 255 种颜色才能留出透明色，
+     *                    否则该帧只裁剪矩形不做透明处理
+     */
+    public ParallelGifEncoder(OutputStream out, int width, int height, FrameQuantizer quantizer, int threads,
+                              boolean deltaFrames) throws IOException {
+        if (width <= 0 || height <= 0 || width > 0xffff || height > 0xffff) {
+            throw new IllegalArgumentException("Invalid gif size: " + width + "x" + height);
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        this.width = width;
+        this.height = height;
+        this.quantizer = quantizer;
+        this.deltaFrames = deltaFrames;
+        this.writer = new GifWriter(out);
+        int poolIndex = POOL_INDEX.incrementAndGet();
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "gif-encoder-" + poolIndex + "-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 每个线程一帧在压缩、一帧在排队，足够让线程池保持忙碌
+        this.slots = new Slot[Math.max(2, threads * 2) + (deltaFrames ? 1 : 0)];
+        this.maxInFlight = slots.length - (deltaFrames ? 1 : 0);
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot(width * height, deltaFrames);
+        }
+        // 全局调色板不满 256 色时在末尾追加一个透明色
+        int[] globalPalette = quantizer.getGlobalPalette();
+        if (deltaFrames && globalPalette != null && globalPalette.length < 256) {
+            this.globalTransparentIndex = globalPalette.length;
+            this.headerPalette = Arrays.copyOf(globalPalette, globalPalette.length + 1);
+        } else {
+            this.globalTransparentIndex = -1;
+            this.headerPalette = globalPalette;
+        }
+        writer.writeHeader(width, height, headerPalette, 0);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 返回下一帧要填充的像素缓冲（0xRRGGBB，长度 width*height）。槽位都在途时会先等待最早的一帧写出
+     */
+    public int[] frameBuffer() throws IOException {
+        if (submitted - written == maxInFlight) {
+            writeNext();
+        }
+        return slots[(int) (submitted % slots.length)].rgb;
+    }
+
+    /**
+     * 提交 {@link #frameBuffer()} 返回的缓冲
+     *
+     * @param delayCs 帧显示时长，单位 1/100 秒
+     */
+    public void submitFrame(int delayCs) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Encoder already finished");
+        }
+        if (submitted - written == maxInFlight) {
+            writeNext();
+        }
+        Slot slot = slots[(int) (submitted % slots.length)];
+        Slot previous = deltaFrames && submitted > 0 ? slots[(int) ((submitted - 1) % slots.length)] : null;
+        slot.delayCs = delayCs;
+        slot.future = pool.submit(() -> encode(slot, previous));
+        submitted++;
+    }
+
+    /**
+     * 把 delayCs 加到最近提交的一帧上，用于丢弃重复帧时保留其显示时长。
+     * 最近一帧总是还在途（窗口至少两帧），延时在写出时才生效
+     *
+     * @return 还没有提交过帧，或加上后超过 GIF 延时上限 65535 时返回 false，调用方应改为提交该帧
+     */
+    public boolean extendLastFrame(int delayCs) {
+        if (submitted == written) {
+            return false;
+        }
+        Slot slot = slots[(int) ((submitted - 1) % slots.length)];
+        if (slot.delayCs + delayCs > 0xffff) {
+            return false;
+        }
+        slot.delayCs += delayCs;
+        return true;
+    }
+
+    /**
+     * 写出所有在途的帧和文件尾
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        while (written < submitted) {
+            writeNext();
+        }
+        writer.writeTrailer();
+        finished = true;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private void encode(Slot slot, Slot previous) {
+        int[] bounds = slot.bounds;
+        int[] pixels = slot.rgb;
+        bounds[0] = 0;
+        bounds[1] = 0;
+        bounds[2] = width;
+        bounds[3] = height;
+        if (previous != null) {
+            if (!FrameDiff.dirtyBounds(previous.rgb, slot.rgb, width, height, bounds)) {
+                // 与上一帧相同时写一个像素的透明帧，只占显示时长
+                bounds[2] = 1;
+                bounds[3] = 1;
+            }
+            FrameDiff.extract(slot.rgb, width, bounds, slot.region);
+            pixels = slot.region;
+        }
+        int pixelCount = bounds[2] * bounds[3];
+        int[] palette = quantizer.quantize(pixels, bounds[2], bounds[3], slot.indices);
+        int transparentIndex = -1;
+        if (previous != null) {
+            if (palette == quantizer.getGlobalPalette()) {
+                transparentIndex = globalTransparentIndex;
+            } else if (palette.length < 256) {
+                transparentIndex = palette.length;
+                palette = Arrays.copyOf(palette, palette.length + 1);
+            }
+            if (transparentIndex >= 0) {
+                FrameDiff.maskUnchanged(previous.rgb, slot.rgb, width, bounds, slot.indices, transparentIndex);
+            }
+        }
+        slot.palette = palette;
+        slot.transparentIndex = transparentIndex;
+        slot.lzw.reset();
+        int colorCount = palette == quantizer.getGlobalPalette() ? headerPalette.length : palette.length;
+        lzwEncoders.get().encode(slot.indices, pixelCount, GifWriter.colorDepth(colorCount), slot.lzw);
+    }
+
+    private void writeNext() throws IOException {
+        Slot slot = slots[(int) (written % slots.length)];
+        try {
+            slot.future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while encoding frame " + written, ie);
+        } catch (ExecutionException ee) {
+            throw new IOException("Failed to encode frame " + written, ee.getCause());
+        }
+        int[] localPalette = slot.palette == quantizer.getGlobalPalette() ? null : slot.palette;
+        int[] bounds = slot.bounds;
+        writer.writeFrame(bounds[0], bounds[1], bounds[2], bounds[3], slot.delayCs,
+                deltaFrames ? GifWriter.DISPOSAL_NONE : GifWriter.DISPOSAL_UNSPECIFIED, slot.transparentIndex, localPalette, slot.lzw);
+        slot.future = null;
+        written++;
+    }
+
+    private static class Slot {
+        final int[] rgb;
+        final byte[] indices;
+        final ByteSink lzw;
+        final int[] region;
+        final int[] bounds = new int[4];
+        int[] palette;
+        int transparentIndex;
+        int delayCs;
+        Future<?> future;
+
+        Slot(int pixelCount, boolean deltaFrames) {
+            rgb = new int[pixelCount];
+            indices = new byte[pixelCount];
+            lzw = new ByteSink(pixelCount / 2);
+            region = deltaFrames ? new int[pixelCount] : null;
+        }
+    }
+}
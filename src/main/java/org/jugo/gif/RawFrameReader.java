@@ -0,0 +1,61 @@
+package org.jugo.gif;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 从 ffmpeg 的 rawvideo(rgb24) 输出中逐帧读取像素，读缓冲在帧之间复用
+ */
+public class RawFrameReader {
+    private final InputStream in;
+    private final int pixelCount;
+    private final byte[] buffer;
+
+    public RawFrameReader(InputStream in, int width, int height) {
+        this.in = in;
+        this.pixelCount = width * height;
+        this.buffer = new byte[pixelCount * 3];
+    }
+
+    public int getPixelCount() {
+        return pixelCount;
+    }
+
+    /**
+     * 读取下一帧到 rgb（0xRRGGBB）
+     *
+     * @return 流已结束时返回 false
+     */
+    public boolean read(int[] rgb) throws IOException {
+        if (!readRgb24(buffer)) {
+            return false;
+        }
+        for (int i = 0, j = 0; i < pixelCount; i++, j += 3) {
+            rgb[i] = (buffer[j] & 0xff) << 16 | (buffer[j + 1] & 0xff) << 8 | (buffer[j + 2] & 0xff);
+        }
+        return true;
+    }
+
+    /**
+     * 读取下一帧的原始 rgb24 字节，不做转换，供直接写入图像使用
+     *
+     * @param rgb24 长度至少为 像素数 * 3
+     * @return 流已结束时返回 false
+     */
+    public boolean readRgb24(byte[] rgb24) throws IOException {
+        int length = pixelCount * 3;
+        int filled = 0;
+        while (filled < length) {
+            int n = in.read(rgb24, filled, length - filled);
+            if (n < 0) {
+                if (filled == 0) {
+                    return false;
+                }
+                throw new EOFException("Truncated frame: " + filled + " of " + length + " bytes");
+            }
+            filled += n;
+        }
+        return true;
+    }
+}
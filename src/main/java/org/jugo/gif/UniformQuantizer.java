@@ -0,0 +1,34 @@
+package org.jugo.gif;
+
+/**
+ * 固定的 RGB 3-3-2 调色板，按位直接计算索引，不需要查找
+ */
+public class UniformQuantizer implements FrameQuantizer {
+    private static final int[] PALETTE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int r = (i >> 5) * 255 / 7;
+            int g = ((i >> 2) & 7) * 255 / 7;
+            int b = (i & 3) * 255 / 3;
+            PALETTE[i] = r << 16 | g << 8 | b;
+        }
+    }
+
+    @Override
+    public int[] getGlobalPalette() {
+        return PALETTE;
+    }
+
+    @Override
+    public int[] quantize(int[] rgb, int pixelCount, byte[] indices) {
+        for (int i = 0; i < pixelCount; i++) {
+            int c = rgb[i];
+            int r = ((c >> 16 & 0xff) * 7 + 127) / 255;
+            int g = ((c >> 8 & 0xff) * 7 + 127) / 255;
+            int b = ((c & 0xff) * 3 + 127) / 255;
+            indices[i] = (byte) (r << 5 | g << 2 | b);
+        }
+        return PALETTE;
+    }
+}
@@ -0,0 +1,10 @@
+package org.jugo.metrics;
+
+import org.jugo.model.JobMetrics;
+
+/**
+ * 转换进度回调，在 ffmpeg 进度解析线程上调用，实现中不要做耗时操作
+ */
+public interface ConversionListener {
+    void onProgress(JobMetrics metrics);
+}
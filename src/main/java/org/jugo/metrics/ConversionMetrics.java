@@ -0,0 +1,224 @@
+package org.jugo.metrics;
+
+import org.jugo.model.JobMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 全局转换统计：计数器和直方图，首次使用时注册到平台 MBeanServer
+ */
+public class ConversionMetrics implements ConversionMetricsMBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConversionMetrics.class);
+    public static final String OBJECT_NAME = "org.jugo:type=ConversionMetrics";
+    private static final ConversionMetrics INSTANCE = new ConversionMetrics();
+    private static final ThreadLocal<JobContext> CONTEXT = new ThreadLocal<>();
+
+    /**
+     * 在任务上下文中执行的转换
+     */
+    public interface Task {
+        void run() throws IOException;
+    }
+
+    private final AtomicLong jobsStarted = new AtomicLong();
+    private final AtomicLong jobsSucceeded = new AtomicLong();
+    private final AtomicLong jobsFailed = new AtomicLong();
+    private final AtomicInteger activeJobs = new AtomicInteger();
+    private final AtomicLong framesProcessed = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private volatile Histogram elapsedMillis = new Histogram();
+    private volatile Histogram queueWaitMillis = new Histogram();
+    private volatile Histogram decodeFps = new Histogram();
+    private volatile Histogram speedPercent = new Histogram();
+    private volatile Histogram peakRssKb = new Histogram();
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+        } catch (JMException | SecurityException e) {
+            LOGGER.warn("Can not register {}: {}", OBJECT_NAME, e.getMessage());
+        }
+    }
+
+    private ConversionMetrics() {
+    }
+
+    public static ConversionMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * 带上排队时间和进度回调执行 task，task 内启动的转换任务会使用这些信息
+     *
+     * @param queuedAtNanos 任务进入队列时的 {@link System#nanoTime()}
+     * @param listener      进度回调，可以为 null
+     */
+    public static void runWithContext(long queuedAtNanos, ConversionListener listener, Task task) throws IOException {
+        JobContext previous = CONTEXT.get();
+        CONTEXT.set(new JobContext(queuedAtNanos, listener));
+        try {
+            task.run();
+        } finally {
+            if (previous == null) {
+                CONTEXT.remove();
+            } else {
+                CONTEXT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 开始跟踪一个 ffmpeg 任务，必须在执行任务的线程上调用，并在结束时调用 {@link JobTracker#finish}
+     */
+    public JobTracker startJob(String jobName) {
+        JobContext context = CONTEXT.get();
+        long now = System.nanoTime();
+        JobTracker tracker = new JobTracker(this, jobName, context == null ? now : context.queuedAtNanos, now,
+                context == null ? null : context.listener);
+        jobsStarted.incrementAndGet();
+        activeJobs.incrementAndGet();
+        return tracker;
+    }
+
+    void onJobFinished(JobMetrics metrics, boolean success) {
+        activeJobs.decrementAndGet();
+        (success ? jobsSucceeded : jobsFailed).incrementAndGet();
+        framesProcessed.addAndGet(metrics.getFrames());
+        bytesWritten.addAndGet(metrics.getBytesWritten());
+        elapsedMillis.record(metrics.getElapsedMillis());
+        queueWaitMillis.record(metrics.getQueueWaitMillis());
+        // 没有收到进度（帧数为 0）或没有采到内存（-1）时不计入分布，避免 0 和 -1 拉低统计
+        if (success && metrics.getFrames() > 0) {
+            if (metrics.getDecodeFps() > 0) {
+                decodeFps.record(Math.round(metrics.getDecodeFps()));
+            }
+            if (metrics.getSpeed() > 0) {
+                speedPercent.record(Math.round(metrics.getSpeed() * 100));
+            }
+        }
+        if (metrics.getPeakRssKb() >= 0) {
+            peakRssKb.record(metrics.getPeakRssKb());
+        }
+    }
+
+    @Override
+    public long getJobsStarted() {
+        return jobsStarted.get();
+    }
+
+    @Override
+    public long getJobsSucceeded() {
+        return jobsSucceeded.get();
+    }
+
+    @Override
+    public long getJobsFailed() {
+        return jobsFailed.get();
+    }
+
+    @Override
+    public int getActiveJobs() {
+        return activeJobs.get();
+    }
+
+    @Override
+    public long getFramesProcessed() {
+        return framesProcessed.get();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    @Override
+    public double getElapsedMillisMean() {
+        return elapsedMillis.getMean();
+    }
+
+    @Override
+    public long getElapsedMillisP50() {
+        return elapsedMillis.getPercentile(50);
+    }
+
+    @Override
+    public long getElapsedMillisP95() {
+        return elapsedMillis.getPercentile(95);
+    }
+
+    @Override
+    public long getElapsedMillisP99() {
+        return elapsedMillis.getPercentile(99);
+    }
+
+    @Override
+    public long getElapsedMillisMax() {
+        return elapsedMillis.getMax();
+    }
+
+    @Override
+    public double getQueueWaitMillisMean() {
+        return queueWaitMillis.getMean();
+    }
+
+    @Override
+    public long getQueueWaitMillisP95() {
+        return queueWaitMillis.getPercentile(95);
+    }
+
+    @Override
+    public long getQueueWaitMillisMax() {
+        return queueWaitMillis.getMax();
+    }
+
+    @Override
+    public double getDecodeFpsMean() {
+        return decodeFps.getMean();
+    }
+
+    @Override
+    public double getSpeedMean() {
+        return speedPercent.getMean() / 100;
+    }
+
+    @Override
+    public long getPeakRssKbP95() {
+        return peakRssKb.getPercentile(95);
+    }
+
+    @Override
+    public long getPeakRssKbMax() {
+        return peakRssKb.getMax();
+    }
+
+    @Override
+    public void reset() {
+        jobsStarted.set(0);
+        jobsSucceeded.set(0);
+        jobsFailed.set(0);
+        framesProcessed.set(0);
+        bytesWritten.set(0);
+        elapsedMillis = new Histogram();
+        queueWaitMillis = new Histogram();
+        decodeFps = new Histogram();
+        speedPercent = new Histogram();
+        peakRssKb = new Histogram();
+    }
+
+    private static class JobContext {
+        final long queuedAtNanos;
+        final ConversionListener listener;
+
+        JobContext(long queuedAtNanos, ConversionListener listener) {
+            this.queuedAtNanos = queuedAtNanos;
+            this.listener = listener;
+        }
+    }
+}
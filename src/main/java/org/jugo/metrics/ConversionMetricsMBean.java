@@ -0,0 +1,44 @@
+package org.jugo.metrics;
+
+/**
+ * 通过 JMX 暴露的转换统计，ObjectName 为 org.jugo:type=ConversionMetrics
+ */
+public interface ConversionMetricsMBean {
+    long getJobsStarted();
+
+    long getJobsSucceeded();
+
+    long getJobsFailed();
+
+    int getActiveJobs();
+
+    long getFramesProcessed();
+
+    long getBytesWritten();
+
+    double getElapsedMillisMean();
+
+    long getElapsedMillisP50();
+
+    long getElapsedMillisP95();
+
+    long getElapsedMillisP99();
+
+    long getElapsedMillisMax();
+
+    double getQueueWaitMillisMean();
+
+    long getQueueWaitMillisP95();
+
+    long getQueueWaitMillisMax();
+
+    double getDecodeFpsMean();
+
+    double getSpeedMean();
+
+    long getPeakRssKbP95();
+
+    long getPeakRssKbMax();
+
+    void reset();
+}
@@ -0,0 +1,141 @@
+package org.jugo.metrics;
+
+import net.bramp.ffmpeg.progress.Progress;
+import net.bramp.ffmpeg.progress.ProgressListener;
+import org.jugo.model.JobMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * 跟踪一个 ffmpeg 任务：接收 -progress 输出的进度，采样子进程峰值内存，结束时汇总到 {@link ConversionMetrics}
+ */
+public class JobTracker implements ProgressListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobTracker.class);
+    private static final ThreadLocal<JobTracker> CURRENT = new ThreadLocal<>();
+
+    private final ConversionMetrics metrics;
+    private final String jobName;
+    private final long queueWaitMillis;
+    private final long startNanos;
+    private final ConversionListener listener;
+    private volatile Process process;
+    private volatile long frames;
+    private volatile double decodeFps;
+    private volatile double speed;
+    private volatile long bytesWritten;
+    private volatile long outTimeMicros;
+    private volatile long peakRssKb = -1;
+    private volatile boolean finished;
+
+    JobTracker(ConversionMetrics metrics, String jobName, long queuedAtNanos, long startNanos, ConversionListener listener) {
+        this.metrics = metrics;
+        this.jobName = jobName;
+        this.queueWaitMillis = (startNanos - queuedAtNanos) / 1_000_000;
+        this.startNanos = startNanos;
+        this.listener = listener;
+        CURRENT.set(this);
+    }
+
+    /**
+     * @return 当前线程上正在执行的任务，没有时为 null
+     */
+    public static JobTracker current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 记下 ffmpeg 子进程，用于采样内存
+     */
+    public void attach(Process process) {
+        this.process = process;
+    }
+
+    @Override
+    public void progress(Progress progress) {
+        frames = progress.frame;
+        if (progress.fps != null) {
+            decodeFps = progress.fps.doubleValue();
+        }
+        speed = progress.speed;
+        bytesWritten = progress.total_size;
+        outTimeMicros = progress.out_time_ns / 1000;
+        samplePeakRss();
+        notifyListener();
+    }
+
+    /**
+     * 任务结束，必须在启动任务的线程上调用
+     *
+     * @param outputBytes 输出文件的最终大小，未知时传负数
+     */
+    public void finish(boolean success, long outputBytes) {
+        CURRENT.remove();
+        samplePeakRss();
+        if (outputBytes >= 0) {
+            bytesWritten = outputBytes;
+        }
+        finished = true;
+        JobMetrics snapshot = snapshot();
+        metrics.onJobFinished(snapshot, success);
+        notifyListener();
+        LOGGER.debug("Job {} finished: success={}, {} ms, {} frames, {} bytes, peak rss {} kB", jobName, success,
+                snapshot.getElapsedMillis(), snapshot.getFrames(), snapshot.getBytesWritten(), snapshot.getPeakRssKb());
+    }
+
+    public JobMetrics snapshot() {
+        return new JobMetrics(jobName, queueWaitMillis, (System.nanoTime() - startNanos) / 1_000_000, frames, decodeFps, speed,
+                bytesWritten, outTimeMicros, peakRssKb, finished);
+    }
+
+    private void notifyListener() {
+        if (listener != null) {
+            try {
+                listener.onProgress(snapshot());
+            } catch (RuntimeException re) {
+                LOGGER.warn("Progress listener failed: {}", re.getMessage());
+            }
+        }
+    }
+
+    // Linux 下读 /proc/<pid>/status 的 VmHWM（进程生命周期内的峰值常驻内存）
+    private void samplePeakRss() {
+        Process p = process;
+        if (p == null || !p.isAlive()) {
+            return;
+        }
+        long pid = pidOf(p);
+        if (pid <= 0) {
+            return;
+        }
+        Path status = Paths.get("/proc", Long.toString(pid), "status");
+        try {
+            for (String line : Files.readAllLines(status, StandardCharsets.US_ASCII)) {
+                if (line.startsWith("VmHWM:")) {
+                    long kb = Long.parseLong(line.substring(6).trim().split("\\s+")[0]);
+                    if (kb > peakRssKb) {
+                        peakRssKb = kb;
+                    }
+                    return;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // 进程已退出或不是 Linux
+        }
+    }
+
+    private static long pidOf(Process process) {
+        try {
+            Method pid = Process.class.getMethod("pid"); // Java 9+
+            return (Long) pid.invoke(process);
+        } catch (ReflectiveOperationException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.jugo.metrics;
+
+import net.bramp.ffmpeg.ProcessFunction;
+import org.jugo.utils.FfMpegGovernor;
+import org.jugo.utils.IoThreads;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 启动 ffmpeg 时把子进程交给当前线程上的 {@link JobTracker}，并与直接启动的进程一样受 {@link FfMpegGovernor} 的名额和线程预算约束
+ */
+public class TrackingProcessFunction implements ProcessFunction {
+    @Override
+    public Process run(List<String> args) throws IOException {
+        FfMpegGovernor.Lease lease = FfMpegGovernor.shared().acquire();
+        Process process;
+        try {
+            process = new ProcessBuilder(lease.apply(args)).redirectErrorStream(true).start();
+        } catch (IOException | RuntimeException e) {
+            lease.close();
+            throw e;
+        }
+        IoThreads.start("ffmpeg-exit", () -> {
+            try {
+                process.waitFor();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lease.close();
+            }
+        });
+        JobTracker tracker = JobTracker.current();
+        if (tracker != null) {
+            tracker.attach(process);
+        }
+        return process;
+    }
+}
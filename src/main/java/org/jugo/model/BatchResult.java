@@ -0,0 +1,45 @@
+package org.jugo.model;
+
+import java.nio.file.Path;
+
+public class BatchResult {
+    public enum Status {
+        CONVERTED, // 已转换
+        SKIPPED, // 输出已是最新，跳过
+        FAILED // 转换失败
+    }
+
+    private final Path inputPath;
+    private final Path outputPath;
+    private final Status status;
+    private final long elapsedMillis;
+    private final String message;
+
+    public BatchResult(Path inputPath, Path outputPath, Status status, long elapsedMillis, String message) {
+        this.inputPath = inputPath;
+        this.outputPath = outputPath;
+        this.status = status;
+        this.elapsedMillis = elapsedMillis;
+        this.message = message;
+    }
+
+    public Path getInputPath() {
+        return inputPath;
+    }
+
+    public Path getOutputPath() {
+        return outputPath;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
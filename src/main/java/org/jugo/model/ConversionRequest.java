@@ -0,0 +1,140 @@
+package org.jugo.model;
+
+import java.nio.file.Path;
+
+/**
+ * 提交给 {@link org.jugo.service.ConversionService} 的文件转换请求
+ */
+public class ConversionRequest {
+    public static final int PRIORITY_LOW = -10; // 批量、脚本
+    public static final int PRIORITY_NORMAL = 0;
+    public static final int PRIORITY_HIGH = 10; // 界面上等待结果的交互操作
+
+    private final Path inputPath;
+    private final Path outputPath;
+    private Integer width;
+    private Integer height;
+    private Double frameRate;
+    private PaletteOptions paletteOptions;
+    private EncoderOptions encoderOptions;
+    private int priority = PRIORITY_NORMAL;
+    private long startMicros;
+    private long endMicros;
+    private int segments;
+
+    public ConversionRequest(Path inputPath, Path outputPath) {
+        this.inputPath = inputPath;
+        this.outputPath = outputPath;
+    }
+
+    public Path getInputPath() {
+        return inputPath;
+    }
+
+    public Path getOutputPath() {
+        return outputPath;
+    }
+
+    public Integer getWidth() {
+        return width;
+    }
+
+    public ConversionRequest setWidth(Integer width) {
+        this.width = width;
+        return this;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+
+    public ConversionRequest setHeight(Integer height) {
+        this.height = height;
+        return this;
+    }
+
+    public Double getFrameRate() {
+        return frameRate;
+    }
+
+    public ConversionRequest setFrameRate(Double frameRate) {
+        this.frameRate = frameRate;
+        return this;
+    }
+
+    public PaletteOptions getPaletteOptions() {
+        return paletteOptions;
+    }
+
+    /**
+     * 设置后使用调色板模式转换
+     */
+    public ConversionRequest setPaletteOptions(PaletteOptions paletteOptions) {
+        this.paletteOptions = paletteOptions;
+        return this;
+    }
+
+    public EncoderOptions getEncoderOptions() {
+        return encoderOptions;
+    }
+
+    /**
+     * 设置后由 Java 端编码，优先于调色板模式
+     */
+    public ConversionRequest setEncoderOptions(EncoderOptions encoderOptions) {
+        this.encoderOptions = encoderOptions;
+        return this;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * 数值越大越先执行，相同优先级按提交顺序
+     */
+    public ConversionRequest setPriority(int priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    public long getStartMicros() {
+        return startMicros;
+    }
+
+    public long getEndMicros() {
+        return endMicros;
+    }
+
+    /**
+     * 只转换 [startMicros, endMicros) 这一段，endMicros 小于等于 0 时到结尾。只用于 ffmpeg 编码，不能与 EncoderOptions 同时使用
+     */
+    public ConversionRequest setTimeRange(long startMicros, long endMicros) {
+        if (startMicros < 0 || (endMicros > 0 && endMicros <= startMicros)) {
+            throw new IllegalArgumentException("Invalid time range: " + startMicros + " - " + endMicros);
+        }
+        this.startMicros = startMicros;
+        this.endMicros = endMicros;
+        return this;
+    }
+
+    public boolean hasTimeRange() {
+        return startMicros > 0 || endMicros > 0;
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    /**
+     * 大于 1 时把时间轴切成这么多段并发转换再拼接，见 {@link org.jugo.utils.FfMpegUtils#convertToGifSegmented}。
+     * 使用调色板模式（未设置 PaletteOptions 时用默认值），不能与时间段或 EncoderOptions 同时使用
+     */
+    public ConversionRequest setSegments(int segments) {
+        if (segments < 0) {
+            throw new IllegalArgumentException("segments must not be negative: " + segments);
+        }
+        this.segments = segments;
+        return this;
+    }
+}
@@ -0,0 +1,94 @@
+package org.jugo.model;
+
+import org.jugo.gif.Ditherer;
+import org.jugo.gif.FrameQuantizer;
+
+/**
+ * Java 端编码参数，对应 {@link org.jugo.utils.FfMpegUtils#convertToGifInJava}
+ */
+public class EncoderOptions {
+    private FrameQuantizer quantizer;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean deltaFrames;
+    private Double duplicateThreshold;
+    private Ditherer.Mode dither = Ditherer.Mode.NONE;
+    private boolean globalPalette;
+
+    public FrameQuantizer getQuantizer() {
+        return quantizer;
+    }
+
+    /**
+     * @param quantizer 调色板量化，为 null 时按 {@link #setGlobalPalette} 选择全局或逐帧的中位切分
+     */
+    public EncoderOptions setQuantizer(FrameQuantizer quantizer) {
+        this.quantizer = quantizer;
+        return this;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public EncoderOptions setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    public boolean isDeltaFrames() {
+        return deltaFrames;
+    }
+
+    /**
+     * 每帧只编码相对上一帧变化的矩形，适合录屏等大部分画面静止的视频
+     */
+    public EncoderOptions setDeltaFrames(boolean deltaFrames) {
+        this.deltaFrames = deltaFrames;
+        return this;
+    }
+
+    public Double getDuplicateThreshold() {
+        return duplicateThreshold;
+    }
+
+    /**
+     * 丢弃与上一个保留帧近似相同的帧，显示时长并入保留帧，null 表示不丢帧
+     *
+     * @param duplicateThreshold 8x8 格子亮度均值的最大允许差（0~255），见 {@link org.jugo.gif.DuplicateFrameFilter}
+     */
+    public EncoderOptions setDuplicateThreshold(Double duplicateThreshold) {
+        if (duplicateThreshold != null && duplicateThreshold < 0) {
+            throw new IllegalArgumentException("duplicateThreshold must not be negative: " + duplicateThreshold);
+        }
+        this.duplicateThreshold = duplicateThreshold;
+        return this;
+    }
+
+    public Ditherer.Mode getDither() {
+        return dither;
+    }
+
+    /**
+     * 默认量化（每帧中位切分）使用的抖动方式，指定了 quantizer 时由 quantizer 自己决定
+     */
+    public EncoderOptions setDither(Ditherer.Mode dither) {
+        this.dither = dither == null ? Ditherer.Mode.NONE : dither;
+        return this;
+    }
+
+    public boolean isGlobalPalette() {
+        return globalPalette;
+    }
+
+    /**
+     * 未指定 quantizer 时，用第一帧生成一个全局调色板给所有帧共用（{@link org.jugo.gif.FixedPaletteQuantizer}），
+     * 最近色缓存在帧之间共享，省去每帧的直方图和切分；画面颜色变化大的视频质量不如逐帧调色板
+     */
+    public EncoderOptions setGlobalPalette(boolean globalPalette) {
+        this.globalPalette = globalPalette;
+        return this;
+    }
+}
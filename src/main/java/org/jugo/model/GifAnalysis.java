@@ -0,0 +1,95 @@
+package org.jugo.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 整个 GIF 的统计。压缩后大小超过中位数 {@link #OUTLIER_FACTOR} 倍的帧标记为离群，
+ * 通常是场景切换、噪点或没有做差分的整帧，是优化的重点
+ */
+public class GifAnalysis {
+    public static final double OUTLIER_FACTOR = 4.0;
+
+    private final int width;
+    private final int height;
+    private final long fileBytes;
+    private final int globalTableSize; // 0 表示没有全局颜色表
+    private final int globalColorsUsed;
+    private final List<GifFrameStats> frames;
+
+    public GifAnalysis(int width, int height, long fileBytes, int globalTableSize, int globalColorsUsed, List<GifFrameStats> frames) {
+        this.width = width;
+        this.height = height;
+        this.fileBytes = fileBytes;
+        this.globalTableSize = globalTableSize;
+        this.globalColorsUsed = globalColorsUsed;
+        this.frames = frames;
+        markOutliers(frames);
+    }
+
+    private static void markOutliers(List<GifFrameStats> frames) {
+        if (frames.size() < 3) {
+            return;
+        }
+        long[] sizes = new long[frames.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = frames.get(i).getCompressedBytes();
+        }
+        Arrays.sort(sizes);
+        long median = sizes[sizes.length / 2];
+        for (GifFrameStats frame : frames) {
+            frame.setOutlier(frame.getCompressedBytes() > median * OUTLIER_FACTOR);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getFileBytes() {
+        return fileBytes;
+    }
+
+    public int getGlobalTableSize() {
+        return globalTableSize;
+    }
+
+    public int getGlobalColorsUsed() {
+        return globalColorsUsed;
+    }
+
+    public List<GifFrameStats> getFrames() {
+        return frames;
+    }
+
+    public List<GifFrameStats> getOutliers() {
+        List<GifFrameStats> outliers = new ArrayList<>();
+        for (GifFrameStats frame : frames) {
+            if (frame.isOutlier()) {
+                outliers.add(frame);
+            }
+        }
+        return outliers;
+    }
+
+    public long getTotalDelayCs() {
+        long total = 0;
+        for (GifFrameStats frame : frames) {
+            total += frame.getDelayCs();
+        }
+        return total;
+    }
+
+    public long getCompressedBytes() {
+        long total = 0;
+        for (GifFrameStats frame : frames) {
+            total += frame.getCompressedBytes();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,123 @@
+package org.jugo.model;
+
+/**
+ * GIF 中一帧的统计，来自块级读取和 LZW 解码，不合成画面
+ */
+public class GifFrameStats {
+    private final int index;
+    private final int left;
+    private final int top;
+    private final int width;
+    private final int height;
+    private final int delayCs;
+    private final int disposal;
+    private final int transparentIndex; // -1 表示不透明
+    private final boolean localTable;
+    private final int tableSize; // 本帧使用的颜色表长度
+    private final int colorsUsed; // 实际出现的不同索引数
+    private final int minCodeSize;
+    private final long compressedBytes; // LZW 码流字节数，不含子块长度
+    private final long decodedPixels; // 小于 宽×高 表示码流提前结束
+    private boolean outlier;
+
+    public GifFrameStats(int index, int left, int top, int width, int height, int delayCs, int disposal, int transparentIndex,
+                         boolean localTable, int tableSize, int colorsUsed, int minCodeSize, long compressedBytes, long decodedPixels) {
+        this.index = index;
+        this.left = left;
+        this.top = top;
+        this.width = width;
+        this.height = height;
+        this.delayCs = delayCs;
+        this.disposal = disposal;
+        this.transparentIndex = transparentIndex;
+        this.localTable = localTable;
+        this.tableSize = tableSize;
+        this.colorsUsed = colorsUsed;
+        this.minCodeSize = minCodeSize;
+        this.compressedBytes = compressedBytes;
+        this.decodedPixels = decodedPixels;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getLeft() {
+        return left;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getDelayCs() {
+        return delayCs;
+    }
+
+    public int getDisposal() {
+        return disposal;
+    }
+
+    public int getTransparentIndex() {
+        return transparentIndex;
+    }
+
+    public boolean hasLocalTable() {
+        return localTable;
+    }
+
+    public int getTableSize() {
+        return tableSize;
+    }
+
+    public int getColorsUsed() {
+        return colorsUsed;
+    }
+
+    public int getMinCodeSize() {
+        return minCodeSize;
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    public long getDecodedPixels() {
+        return decodedPixels;
+    }
+
+    public boolean isTruncated() {
+        return decodedPixels < (long) width * height;
+    }
+
+    /**
+     * LZW 压缩比：按最小码长计的未压缩位数 / 压缩后位数
+     */
+    public double getCompressionRatio() {
+        return compressedBytes == 0 ? 0 : (double) width * height * minCodeSize / (compressedBytes * 8);
+    }
+
+    public double getBitsPerPixel() {
+        long pixels = (long) width * height;
+        return pixels == 0 ? 0 : compressedBytes * 8.0 / pixels;
+    }
+
+    /**
+     * 压缩后大小明显大于其他帧，见 {@link GifAnalysis}
+     */
+    public boolean isOutlier() {
+        return outlier;
+    }
+
+    public void setOutlier(boolean outlier) {
+        this.outlier = outlier;
+    }
+}
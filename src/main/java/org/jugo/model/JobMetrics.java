@@ -0,0 +1,80 @@
+package org.jugo.model;
+
+/**
+ * 单个转换任务的进度和统计快照
+ */
+public class JobMetrics {
+    private final String jobName;
+    private final long queueWaitMillis;
+    private final long elapsedMillis;
+    private final long frames;
+    private final double decodeFps;
+    private final double speed;
+    private final long bytesWritten;
+    private final long outTimeMicros;
+    private final long peakRssKb;
+    private final boolean finished;
+
+    public JobMetrics(String jobName, long queueWaitMillis, long elapsedMillis, long frames, double decodeFps, double speed,
+                      long bytesWritten, long outTimeMicros, long peakRssKb, boolean finished) {
+        this.jobName = jobName;
+        this.queueWaitMillis = queueWaitMillis;
+        this.elapsedMillis = elapsedMillis;
+        this.frames = frames;
+        this.decodeFps = decodeFps;
+        this.speed = speed;
+        this.bytesWritten = bytesWritten;
+        this.outTimeMicros = outTimeMicros;
+        this.peakRssKb = peakRssKb;
+        this.finished = finished;
+    }
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    public long getQueueWaitMillis() {
+        return queueWaitMillis;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public double getDecodeFps() {
+        return decodeFps;
+    }
+
+    /**
+     * @return 处理速度相对实时播放的倍数
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return 已输出内容对应的视频时间
+     */
+    public long getOutTimeMicros() {
+        return outTimeMicros;
+    }
+
+    /**
+     * @return ffmpeg 子进程的峰值常驻内存，-1 表示当前平台无法获取
+     */
+    public long getPeakRssKb() {
+        return peakRssKb;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+}
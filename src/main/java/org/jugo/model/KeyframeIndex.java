@@ -0,0 +1,36 @@
+package org.jugo.model;
+
+import java.util.Arrays;
+
+/**
+ * 视频轨关键帧的显示时间（微秒，升序），用于定位到某个时间点之前最近的关键帧
+ */
+public class KeyframeIndex {
+    private final long[] keyframeMicros;
+    private final long durationMicros;
+
+    public KeyframeIndex(long[] keyframeMicros, long durationMicros) {
+        this.keyframeMicros = keyframeMicros;
+        this.durationMicros = durationMicros;
+    }
+
+    /**
+     * @return 不晚于 micros 的最后一个关键帧时间，micros 早于第一个关键帧时返回 0
+     */
+    public long floor(long micros) {
+        int i = Arrays.binarySearch(keyframeMicros, micros);
+        if (i >= 0) {
+            return keyframeMicros[i];
+        }
+        int insertion = -i - 1;
+        return insertion == 0 ? 0 : keyframeMicros[insertion - 1];
+    }
+
+    public int size() {
+        return keyframeMicros.length;
+    }
+
+    public long getDurationMicros() {
+        return durationMicros;
+    }
+}
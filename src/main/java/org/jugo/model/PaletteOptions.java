@@ -0,0 +1,101 @@
+package org.jugo.model;
+
+import java.util.Locale;
+
+/**
+ * 调色板模式参数，对应 palettegen/paletteuse 滤镜
+ */
+public class PaletteOptions {
+    public enum StatsMode {
+        FULL, // 整段视频统计一个调色板
+        DIFF, // 只统计帧间变化的像素，适合背景静止的视频
+        SINGLE; // 每帧单独生成调色板
+
+        public String filterValue() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * paletteuse 的 dither 取值，只列各版本 ffmpeg 都支持的几种
+     */
+    public enum Dither {
+        NONE,
+        BAYER, // 有序抖动，帧间稳定，压缩率好
+        HECKBERT,
+        FLOYD_STEINBERG,
+        SIERRA2,
+        SIERRA2_4A; // 误差扩散中最轻量的一种
+
+        public String filterValue() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private StatsMode statsMode = StatsMode.FULL;
+    private int maxColors = 256;
+    private Dither dither = Dither.SIERRA2_4A;
+    private Double statsWindowSeconds;
+    private boolean dropDuplicateFrames;
+
+    public StatsMode getStatsMode() {
+        return statsMode;
+    }
+
+    public PaletteOptions setStatsMode(StatsMode statsMode) {
+        this.statsMode = statsMode;
+        return this;
+    }
+
+    public int getMaxColors() {
+        return maxColors;
+    }
+
+    public PaletteOptions setMaxColors(int maxColors) {
+        if (maxColors < 4 || maxColors > 256) {
+            throw new IllegalArgumentException("maxColors must be in [4, 256]: " + maxColors);
+        }
+        this.maxColors = maxColors;
+        return this;
+    }
+
+    public Dither getDither() {
+        return dither;
+    }
+
+    public PaletteOptions setDither(Dither dither) {
+        if (dither == null) {
+            throw new IllegalArgumentException("dither must not be null");
+        }
+        this.dither = dither;
+        return this;
+    }
+
+    public Double getStatsWindowSeconds() {
+        return statsWindowSeconds;
+    }
+
+    /**
+     * 只用开头这段时长的帧统计调色板，null 表示整段。
+     * 窗口越短，split 需要缓存的帧越少，paletteuse 也能越早开始输出
+     */
+    public PaletteOptions setStatsWindowSeconds(Double statsWindowSeconds) {
+        if (statsWindowSeconds != null && statsWindowSeconds <= 0) {
+            throw new IllegalArgumentException("statsWindowSeconds must be positive: " + statsWindowSeconds);
+        }
+        this.statsWindowSeconds = statsWindowSeconds;
+        return this;
+    }
+
+    public boolean isDropDuplicateFrames() {
+        return dropDuplicateFrames;
+    }
+
+    /**
+     * 用 mpdecimate 丢弃与上一个保留帧近似相同的帧。GIF 按可变帧率输出，被丢弃帧的时长自然并入前一帧
+     */
+    public PaletteOptions setDropDuplicateFrames(boolean dropDuplicateFrames) {
+        this.dropDuplicateFrames = dropDuplicateFrames;
+        return this;
+    }
+}
@@ -0,0 +1,51 @@
+package org.jugo.model;
+
+/**
+ * 按文件大小上限选出的转换参数
+ */
+public class SizeBudgetPlan {
+    private final int width;
+    private final int height;
+    private final double frameRate;
+    private final long estimatedBytes;
+    private final boolean withinBudget; // 为 false 表示最小的候选也超出上限
+    private final int probes; // 试转的片段数
+
+    public SizeBudgetPlan(int width, int height, double frameRate, long estimatedBytes, boolean withinBudget, int probes) {
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+        this.estimatedBytes = estimatedBytes;
+        this.withinBudget = withinBudget;
+        this.probes = probes;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public double getFrameRate() {
+        return frameRate;
+    }
+
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public boolean isWithinBudget() {
+        return withinBudget;
+    }
+
+    public int getProbes() {
+        return probes;
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + "@" + frameRate + "fps ~" + estimatedBytes + " bytes";
+    }
+}
@@ -4,11 +4,23 @@ public class VideoInfo {
     private final int width;
     private final int height;
     private final double frameRate;
+    private final long durationMicros; // 0 表示未知
+    private final long frameCount; // 0 表示未知
 
     public VideoInfo(int width, int height, double frameRate) {
+        this(width, height, frameRate, 0);
+    }
+
+    public VideoInfo(int width, int height, double frameRate, long durationMicros) {
+        this(width, height, frameRate, durationMicros, 0);
+    }
+
+    public VideoInfo(int width, int height, double frameRate, long durationMicros, long frameCount) {
         this.width = width;
         this.height = height;
         this.frameRate = frameRate;
+        this.durationMicros = durationMicros;
+        this.frameCount = frameCount;
     }
 
     public int getWidth() {
@@ -22,5 +34,12 @@ public class VideoInfo {
     public double getFrameRate() {
         return frameRate;
     }
-}
 
+    public long getDurationMicros() {
+        return durationMicros;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+}
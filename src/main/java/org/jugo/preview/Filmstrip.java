@@ -0,0 +1,283 @@
+package org.jugo.preview;
+
+import javafx.application.Platform;
+import javafx.scene.Cursor;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import org.jugo.gif.RawFrameReader;
+import org.jugo.utils.FfMpegProcess;
+import org.jugo.utils.FfMpegUtils;
+import org.jugo.utils.IoThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.function.Consumer;
+
+/**
+ * 时间轴胶片条：均匀排列的缩略图，在上面按下拖动选择转换的时间段，单击清除选择。
+ * 缩略图由后台线程用一个 ffmpeg 进程一次抽出，解码后的 {@link Image} 放进 {@link ThumbnailCache}，
+ * 同一个文件再次加载或来回拖动时直接从缓存取，不再解码。除生成线程外的方法都在 FX 线程调用
+ */
+public class Filmstrip {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Filmstrip.class);
+    // 拖动距离小于这个像素数时视为单击
+    private static final double CLICK_TOLERANCE = 3;
+
+    private final ThumbnailCache cache;
+    private final int count;
+    private final double stripWidth;
+    private final double stripHeight;
+    private final ImageView[] views;
+    private final Image[] thumbnails;
+    private final Rectangle selection = new Rectangle();
+    private final Pane view;
+    private Consumer<Image> onScrub;
+    private Runnable onRangeChanged;
+    private volatile Generation generation;
+    private long durationMicros;
+    private long startMicros;
+    private long endMicros;
+    private double pressX;
+
+    /**
+     * @param count 缩略图张数
+     */
+    public Filmstrip(ThumbnailCache cache, int count, double stripWidth, double stripHeight) {
+        this.cache = cache;
+        this.count = count;
+        this.stripWidth = stripWidth;
+        this.stripHeight = stripHeight;
+        this.views = new ImageView[count];
+        this.thumbnails = new Image[count];
+        HBox strip = new HBox();
+        for (int i = 0; i < count; i++) {
+            views[i] = new ImageView();
+            views[i].setFitWidth(stripWidth / count);
+            views[i].setFitHeight(stripHeight);
+            views[i].setPreserveRatio(false);
+            strip.getChildren().add(views[i]);
+        }
+        selection.setFill(Color.rgb(66, 133, 244, 0.35));
+        selection.setStroke(Color.rgb(66, 133, 244));
+        selection.setHeight(stripHeight);
+        selection.setVisible(false);
+        selection.setMouseTransparent(true);
+        view = new Pane(strip, selection);
+        view.setPrefSize(stripWidth, stripHeight);
+        view.setMaxSize(stripWidth, stripHeight);
+        view.setStyle("-fx-background-color: #dddddd;");
+        view.setCursor(Cursor.CROSSHAIR);
+        view.setOnMousePressed(this::onPressed);
+        view.setOnMouseDragged(this::onDragged);
+        view.setOnMouseReleased(this::onReleased);
+        view.setOnMouseMoved(e -> scrub(e.getX()));
+    }
+
+    public Pane getView() {
+        return view;
+    }
+
+    /**
+     * 拖动或悬停时回调当前位置的缩略图
+     */
+    public void setOnScrub(Consumer<Image> onScrub) {
+        this.onScrub = onScrub;
+    }
+
+    public void setOnRangeChanged(Runnable onRangeChanged) {
+        this.onRangeChanged = onRangeChanged;
+    }
+
+    /**
+     * 加载视频的缩略图并清除选择，取消上一次还在进行的生成。缩略图都在缓存中时不启动 ffmpeg
+     *
+     * @param durationMicros 视频时长，未知时只清空胶片条
+     * @param width          视频宽度，用于按比例确定缩略图尺寸
+     * @param height         视频高度
+     */
+    public void load(String inputPath, long durationMicros, int width, int height) {
+        cancel();
+        this.durationMicros = durationMicros;
+        for (int i = 0; i < count; i++) {
+            thumbnails[i] = null;
+            views[i].setImage(null);
+        }
+        setRange(0, 0);
+        if (durationMicros <= 0 || width <= 0 || height <= 0) {
+            return;
+        }
+        // 解码尺寸按视频比例填满格子的高度，宽度取偶数
+        int thumbHeight = Math.max(2, (int) Math.round(stripHeight / 2) * 2);
+        int thumbWidth = Math.max(2, (int) Math.round(thumbHeight * (double) width / height / 2) * 2);
+        String file;
+        try {
+            file = ThumbnailCache.fileIdentity(Paths.get(inputPath));
+        } catch (IOException ioe) {
+            LOGGER.warn("Can not read {}: {}", inputPath, ioe.getMessage());
+            return;
+        }
+        ThumbnailCache.Key[] keys = new ThumbnailCache.Key[count];
+        boolean complete = true;
+        for (int i = 0; i < count; i++) {
+            keys[i] = new ThumbnailCache.Key(file, timeOf(i), thumbWidth, thumbHeight);
+            Image cached = cache.get(keys[i]);
+            if (cached != null) {
+                show(i, cached);
+            } else {
+                complete = false;
+            }
+        }
+        if (!complete) {
+            Generation next = new Generation(inputPath, keys, thumbWidth, thumbHeight);
+            generation = next;
+            IoThreads.start("filmstrip", next::run);
+        }
+    }
+
+    /**
+     * 结束还在进行的生成
+     */
+    public void cancel() {
+        Generation current = generation;
+        generation = null;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    /**
+     * @return 是否选择了时间段，没有选择时转换整段
+     */
+    public boolean hasRange() {
+        return endMicros > startMicros;
+    }
+
+    public long getStartMicros() {
+        return startMicros;
+    }
+
+    public long getEndMicros() {
+        return endMicros;
+    }
+
+    private long timeOf(int index) {
+        return durationMicros * index / count;
+    }
+
+    private void show(int index, Image image) {
+        thumbnails[index] = image;
+        views[index].setImage(image);
+    }
+
+    private long toMicros(double x) {
+        double clamped = Math.max(0, Math.min(stripWidth, x));
+        return (long) (clamped / stripWidth * durationMicros);
+    }
+
+    private void scrub(double x) {
+        if (onScrub == null || durationMicros <= 0) {
+            return;
+        }
+        int index = (int) Math.max(0, Math.min(count - 1, x / stripWidth * count));
+        Image image = thumbnails[index];
+        if (image != null) {
+            onScrub.accept(image);
+        }
+    }
+
+    private void onPressed(MouseEvent e) {
+        pressX = e.getX();
+        scrub(pressX);
+    }
+
+    private void onDragged(MouseEvent e) {
+        scrub(e.getX());
+        if (durationMicros > 0 && Math.abs(e.getX() - pressX) >= CLICK_TOLERANCE) {
+            setRange(toMicros(Math.min(pressX, e.getX())), toMicros(Math.max(pressX, e.getX())));
+        }
+    }
+
+    private void onReleased(MouseEvent e) {
+        if (Math.abs(e.getX() - pressX) < CLICK_TOLERANCE) {
+            setRange(0, 0);
+        }
+    }
+
+    private void setRange(long start, long end) {
+        if (start == startMicros && end == endMicros) {
+            return;
+        }
+        startMicros = start;
+        endMicros = end;
+        selection.setVisible(end > start);
+        if (end > start) {
+            selection.setX((double) start / durationMicros * stripWidth);
+            selection.setWidth((double) (end - start) / durationMicros * stripWidth);
+        }
+        if (onRangeChanged != null) {
+            onRangeChanged.run();
+        }
+    }
+
+    private class Generation {
+        private final String inputPath;
+        private final ThumbnailCache.Key[] keys;
+        private final long durationMicros;
+        private final int width;
+        private final int height;
+        private volatile boolean cancelled;
+        private volatile FfMpegProcess process;
+
+        Generation(String inputPath, ThumbnailCache.Key[] keys, int width, int height) {
+            this.inputPath = inputPath;
+            this.keys = keys;
+            this.durationMicros = Filmstrip.this.durationMicros;
+            this.width = width;
+            this.height = height;
+        }
+
+        void run() {
+            try (FfMpegProcess started = FfMpegUtils.startThumbnailDecode(inputPath, count, durationMicros, width, height)) {
+                process = started;
+                if (cancelled) {
+                    return;
+                }
+                RawFrameReader reader = new RawFrameReader(new BufferedInputStream(started.getInputStream(), 1 << 16), width, height);
+                byte[] rgb = new byte[width * height * 3];
+                for (int i = 0; i < count && !cancelled && reader.readRgb24(rgb); i++) {
+                    WritableImage image = new WritableImage(width, height);
+                    image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getByteRgbInstance(), rgb, 0, width * 3);
+                    cache.put(keys[i], image);
+                    int index = i;
+                    Platform.runLater(() -> {
+                        if (generation == this) {
+                            show(index, image);
+                        }
+                    });
+                }
+            } catch (IOException ioe) {
+                if (!cancelled) {
+                    LOGGER.warn("Filmstrip of {} failed: {}", inputPath, ioe.getMessage());
+                }
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            FfMpegProcess current = process;
+            if (current != null) {
+                current.close();
+            }
+        }
+    }
+}
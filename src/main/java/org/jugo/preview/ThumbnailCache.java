@@ -0,0 +1,101 @@
+package org.jugo.preview;
+
+import javafx.scene.image.Image;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 已解码缩略图的 LRU 缓存，按图片像素占用的字节数（每像素 4 字节）限制总大小。
+ * 以文件身份（规范路径、大小、修改时间）、时间点和缩略图尺寸为键，文件被修改后旧的缩略图自然不再命中，随后被淘汰。
+ * 线程安全，生成线程写入、FX 线程读取
+ */
+public class ThumbnailCache {
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Image> images = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+
+    public ThumbnailCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 文件身份，作为 {@link Key} 的一部分
+     */
+    public static String fileIdentity(Path path) throws IOException {
+        Path realPath = path.toRealPath();
+        BasicFileAttributes attributes = Files.readAttributes(realPath, BasicFileAttributes.class);
+        return realPath + "|" + attributes.size() + "|" + attributes.lastModifiedTime().toMillis();
+    }
+
+    public synchronized Image get(Key key) {
+        return images.get(key);
+    }
+
+    public synchronized void put(Key key, Image image) {
+        Image previous = images.put(key, image);
+        if (previous != null) {
+            bytes -= sizeOf(previous);
+        }
+        bytes += sizeOf(image);
+        // 最近放入的一张即使单独超限也保留，其余按最久未用淘汰
+        Iterator<Map.Entry<Key, Image>> it = images.entrySet().iterator();
+        while (bytes > maxBytes && images.size() > 1) {
+            Map.Entry<Key, Image> eldest = it.next();
+            bytes -= sizeOf(eldest.getValue());
+            it.remove();
+        }
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return images.size();
+    }
+
+    private static long sizeOf(Image image) {
+        return (long) image.getWidth() * (long) image.getHeight() * 4;
+    }
+
+    public static final class Key {
+        private final String file;
+        private final long micros;
+        private final int width;
+        private final int height;
+
+        public Key(String file, long micros, int width, int height) {
+            this.file = file;
+            this.micros = micros;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return micros == other.micros && width == other.width && height == other.height && file.equals(other.file);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(file, micros, width, height);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package org.jugo.preview;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import org.jugo.gif.RawFrameReader;
+import org.jugo.utils.FfMpegProcess;
+import org.jugo.utils.FfMpegUtils;
+import org.jugo.utils.IoThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 低分辨率的即时预览，不需要先完整转换一次。
+ * <ol>
+ *     <li>粗预览：几个 ffmpeg 并发按时间点快速定位，各自只解码一个关键帧，第一帧通常几十到几百毫秒内出现</li>
+ *     <li>细化：后台按转换帧率（总帧数有上限）解码整段，到达的帧逐步替换关键帧之间的空隙</li>
+ * </ol>
+ * 帧按时间戳放在有序表里，{@link AnimationTimer} 每次刷新时按播放时钟取不晚于当前时间的最近一帧，
+ * 因此只有关键帧时按关键帧间隔跳动播放，细化过程中逐段变得连贯。除 {@link #getView()} 外的方法都在 FX 线程调用
+ */
+public class VideoPreview {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VideoPreview.class);
+    // 预览帧尺寸上限，帧全部留在内存里，尺寸和数量都要小
+    private static final int MAX_WIDTH = 320;
+    private static final int MAX_HEIGHT = 180;
+    private static final int KEYFRAME_SAMPLES = 12;
+    private static final int MAX_REFINED_FRAMES = 240;
+    private static final double DEFAULT_FRAME_RATE = 10;
+
+    private final ImageView view = new ImageView();
+    private final AnimationTimer timer;
+    private volatile Session session;
+
+    public VideoPreview(double fitWidth, double fitHeight) {
+        view.setFitWidth(fitWidth);
+        view.setFitHeight(fitHeight);
+        view.setPreserveRatio(true);
+        timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                Session current = session;
+                if (current != null) {
+                    current.render(now);
+                }
+            }
+        };
+    }
+
+    public ImageView getView() {
+        return view;
+    }
+
+    /**
+     * 开始预览，取消上一次还在进行的预览
+     *
+     * @param durationMicros 视频时长，0 表示未知
+     * @param width          转换宽度，预览按比例缩小到不超过 320x180
+     * @param height         转换高度
+     * @param frameRate      转换帧率，为 null 时细化阶段使用默认帧率
+     */
+    public void show(String inputPath, long durationMicros, int width, int height, Double frameRate) {
+        stop();
+        double scale = Math.min(1.0, Math.min((double) MAX_WIDTH / width, (double) MAX_HEIGHT / height));
+        int previewWidth = Math.max(2, (int) Math.round(width * scale / 2) * 2);
+        int previewHeight = Math.max(2, (int) Math.round(height * scale / 2) * 2);
+        Session next = new Session(inputPath, durationMicros, previewWidth, previewHeight,
+                frameRate == null ? DEFAULT_FRAME_RATE : frameRate);
+        session = next;
+        view.setImage(null);
+        next.start();
+        timer.start();
+    }
+
+    /**
+     * 停止预览并结束所有解码进程，保留当前画面
+     */
+    public void stop() {
+        timer.stop();
+        Session current = session;
+        session = null;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    private class Session {
+        private final String inputPath;
+        private final long durationMicros;
+        private final int width;
+        private final int height;
+        private final double frameRate;
+        private final ConcurrentSkipListMap<Long, Image> frames = new ConcurrentSkipListMap<>();
+        private final List<FfMpegProcess> processes = new ArrayList<>();
+        private final ExecutorService pool;
+        private volatile boolean cancelled;
+        private long startNanos = -1;
+
+        Session(String inputPath, long durationMicros, int width, int height, double frameRate) {
+            this.inputPath = inputPath;
+            this.durationMicros = durationMicros;
+            this.width = width;
+            this.height = height;
+            this.frameRate = frameRate;
+            this.pool = Executors.newFixedThreadPool(Math.min(4, Runtime.getRuntime().availableProcessors()), r -> {
+                Thread thread = new Thread(r, "preview-keyframe");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        void start() {
+            for (long at : sampleTimes()) {
+                pool.submit(() -> decodeKeyframe(at));
+            }
+            pool.shutdown();
+            // 关键帧都拿到后再细化，不和粗预览抢 CPU
+            IoThreads.start("preview-refine", () -> {
+                try {
+                    pool.awaitTermination(1, TimeUnit.MINUTES);
+                    refine();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                } catch (IOException ioe) {
+                    if (!cancelled) {
+                        LOGGER.warn("Preview refinement of {} failed: {}", inputPath, ioe.getMessage());
+                    }
+                }
+            });
+        }
+
+        // 0 最先，之后按二分顺序取点，越早到达的关键帧在时间轴上分布越均匀
+        private List<Long> sampleTimes() {
+            List<Long> times = new ArrayList<>();
+            times.add(0L);
+            if (durationMicros <= 0) {
+                return times;
+            }
+            for (int denominator = 2; times.size() < KEYFRAME_SAMPLES; denominator *= 2) {
+                for (int numerator = 1; numerator < denominator && times.size() < KEYFRAME_SAMPLES; numerator += 2) {
+                    times.add(durationMicros * numerator / denominator);
+                }
+            }
+            return times;
+        }
+
+        private void decodeKeyframe(long atMicros) {
+            if (cancelled) {
+                return;
+            }
+            try (FfMpegProcess process = track(FfMpegUtils.startKeyframeDecode(inputPath, atMicros, width, height))) {
+                RawFrameReader reader = new RawFrameReader(process.getInputStream(), width, height);
+                byte[] rgb = new byte[width * height * 3];
+                if (reader.readRgb24(rgb) && !cancelled) {
+                    frames.putIfAbsent(atMicros, toImage(rgb));
+                }
+            } catch (IOException ioe) {
+                if (!cancelled) {
+                    LOGGER.debug("Keyframe at {} us of {} not available: {}", atMicros, inputPath, ioe.getMessage());
+                }
+            }
+        }
+
+        // 抽取的帧率保证整段不超过 MAX_REFINED_FRAMES 帧
+        private void refine() throws IOException {
+            if (cancelled) {
+                return;
+            }
+            double refineRate = frameRate;
+            if (durationMicros > 0) {
+                refineRate = Math.min(frameRate, MAX_REFINED_FRAMES * 1_000_000.0 / durationMicros);
+            }
+            try (FfMpegProcess process = track(FfMpegUtils.startRawVideoDecode(inputPath, width, height, refineRate))) {
+                RawFrameReader reader = new RawFrameReader(new BufferedInputStream(process.getInputStream(), 1 << 16), width, height);
+                byte[] rgb = new byte[width * height * 3];
+                long previous = -1;
+                for (long index = 0; index < MAX_REFINED_FRAMES && !cancelled && reader.readRgb24(rgb); index++) {
+                    long at = (long) (index * 1_000_000L / refineRate);
+                    // 已细化的时间段内不再需要粗预览的关键帧
+                    frames.subMap(previous, false, at, false).clear();
+                    frames.put(at, toImage(rgb));
+                    previous = at;
+                }
+            }
+        }
+
+        private FfMpegProcess track(FfMpegProcess process) {
+            synchronized (processes) {
+                processes.add(process);
+            }
+            if (cancelled) {
+                process.close();
+            }
+            return process;
+        }
+
+        private Image toImage(byte[] rgb) {
+            WritableImage image = new WritableImage(width, height);
+            image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getByteRgbInstance(), rgb, 0, width * 3);
+            return image;
+        }
+
+        void render(long now) {
+            Map.Entry<Long, Image> first = frames.firstEntry();
+            if (first == null) {
+                return;
+            }
+            if (startNanos < 0) {
+                startNanos = now;
+            }
+            long loopMicros = durationMicros > 0 ? durationMicros : frames.lastKey() + 1_000_000L;
+            long position = (now - startNanos) / 1000 % loopMicros;
+            Map.Entry<Long, Image> entry = frames.floorEntry(position);
+            Image image = (entry == null ? first : entry).getValue();
+            if (view.getImage() != image) {
+                view.setImage(image);
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            pool.shutdownNow();
+            synchronized (processes) {
+                for (FfMpegProcess process : processes) {
+                    process.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.jugo.service;
+
+import org.jugo.metrics.ConversionListener;
+import org.jugo.metrics.ConversionMetrics;
+import org.jugo.model.JobMetrics;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link ConversionService} 队列中的一个任务。按优先级从高到低、同优先级按提交顺序执行。
+ * 只有还在排队的任务可以取消
+ */
+public class ConversionJob implements Runnable, Comparable<ConversionJob> {
+    public enum State {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED,
+        CANCELLED
+    }
+
+    private final long id;
+    private final String name;
+    private final int priority;
+    private final long submittedNanos;
+    private final ConversionListener listener;
+    private final ConversionMetrics.Task task;
+    private final Runnable onDone;
+    private final AtomicReference<State> state = new AtomicReference<>(State.QUEUED);
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+    private volatile JobMetrics metrics;
+    private volatile String error;
+
+    ConversionJob(long id, String name, int priority, ConversionListener listener, ConversionMetrics.Task task, Runnable onDone) {
+        this.id = id;
+        this.name = name;
+        this.priority = priority;
+        this.submittedNanos = System.nanoTime();
+        this.listener = listener;
+        this.task = task;
+        this.onDone = onDone;
+    }
+
+    @Override
+    public void run() {
+        if (!state.compareAndSet(State.QUEUED, State.RUNNING)) {
+            return; // 排队时已取消
+        }
+        Exception failure = null;
+        try {
+            ConversionMetrics.runWithContext(submittedNanos, snapshot -> {
+                metrics = snapshot;
+                if (listener != null) {
+                    listener.onProgress(snapshot);
+                }
+            }, task);
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+            error = String.valueOf(e.getMessage());
+        } finally {
+            state.set(failure == null ? State.SUCCEEDED : State.FAILED);
+            // 先释放队列名额再通知调用方，回调里立即提交新任务不会被拒绝
+            onDone.run();
+        }
+        if (failure == null) {
+            future.complete(null);
+        } else {
+            future.completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * @return 任务还在排队并成功取消时返回 true
+     */
+    public boolean cancel() {
+        if (!state.compareAndSet(State.QUEUED, State.CANCELLED)) {
+            return false;
+        }
+        future.cancel(false);
+        onDone.run();
+        return true;
+    }
+
+    @Override
+    public int compareTo(ConversionJob other) {
+        if (priority != other.priority) {
+            return Integer.compare(other.priority, priority);
+        }
+        return Long.compare(id, other.id);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * @return 最近一次进度，还没有开始转换时为 null
+     */
+    public JobMetrics getMetrics() {
+        return metrics;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * 任务结束时完成；失败时以转换抛出的异常完成
+     */
+    public CompletableFuture<Void> getFuture() {
+        return future;
+    }
+}
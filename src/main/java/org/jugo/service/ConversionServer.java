@@ -0,0 +1,452 @@
+package org.jugo.service;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jugo.model.ConversionRequest;
+import org.jugo.model.JobMetrics;
+import org.jugo.model.PaletteOptions;
+import org.jugo.utils.CacheDirs;
+import org.jugo.utils.FfMpegUtils;
+import org.jugo.utils.HexUtils;
+import org.jugo.utils.IoThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 只监听本机回环地址的 HTTP 接口，所有转换都进入同一个 {@link ConversionService} 排队。
+ * <pre>
+ * POST   /jobs?input=&amp;output=[&amp;width=&amp;height=&amp;fps=&amp;palette=full|diff|single&amp;priority=&amp;start=&amp;end=&amp;segments=]
+ *                        提交文件转换，start/end 为秒，segments 为分段并发转换的段数，返回 202 和任务 id
+ * GET    /jobs/{id}      任务状态和进度
+ * DELETE /jobs/{id}      取消还在排队的任务
+ * POST   /convert[?width=&amp;height=&amp;fps=&amp;palette=&amp;priority=]  请求体为视频，响应体直接是 GIF，不落临时文件
+ * GET    /status         队列状态
+ * </pre>
+ * 队列已满时返回 503 和 Retry-After，由调用方稍后重试。
+ * <p>
+ * 回环地址挡不住本机浏览器里的网页（跨域简单请求、DNS 重绑定），因此：
+ * <ul>
+ *     <li>带 Origin 头或 Host 不是回环地址的请求一律 403</li>
+ *     <li>每次启动生成随机令牌，写到缓存目录的 {@value #TOKEN_FILE}（仅所有者可读），
+ *     请求须带 {@code Authorization: Bearer <令牌>}，否则 401</li>
+ *     <li>output 是相对输出目录的路径，不能跳出该目录</li>
+ * </ul>
+ * /convert 在 GIF 已经开始输出后失败时直接断开连接，不发送分块结束标记，客户端会读到异常而不是截断的完整响应
+ */
+public class ConversionServer implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConversionServer.class);
+    public static final int DEFAULT_PORT = 7311;
+    public static final String TOKEN_FILE = "server.token";
+    private static final String JSON = "application/json; charset=utf-8";
+
+    private final ConversionService service;
+    private final Path outputDir;
+    private final String token;
+    private final Path tokenFile;
+    private final HttpServer server;
+    private final ExecutorService handlerExecutor;
+
+    /**
+     * @param outputDir /jobs 的 output 只能写在这个目录下，不存在时创建
+     */
+    public ConversionServer(ConversionService service, int port, Path outputDir) throws IOException {
+        this.service = service;
+        this.outputDir = Files.createDirectories(outputDir).toRealPath();
+        this.token = newToken();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        // 处理线程大部分时间阻塞在上传、下载和等待任务上，使用 I/O 线程
+        this.handlerExecutor = IoThreads.newExecutor("conversion-http");
+        server.setExecutor(handlerExecutor);
+        Filter access = new AccessFilter();
+        server.createContext("/jobs", this::handleJobs).getFilters().add(access);
+        server.createContext("/convert", this::handleConvert).getFilters().add(access);
+        server.createContext("/status", this::handleStatus).getFilters().add(access);
+        this.tokenFile = writeToken(CacheDirs.root().resolve(TOKEN_FILE), token);
+    }
+
+    public void start() {
+        server.start();
+        LOGGER.info("Conversion server listening on http://{}:{}/, token in {}, output confined to {}",
+                server.getAddress().getHostString(), getPort(), tokenFile, outputDir);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * 本次启动的访问令牌
+     */
+    public String getToken() {
+        return token;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        handlerExecutor.shutdownNow();
+        try {
+            Files.deleteIfExists(tokenFile);
+        } catch (IOException ioe) {
+            LOGGER.debug("Can not delete {}: {}", tokenFile, ioe.getMessage());
+        }
+    }
+
+    private void handleJobs(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            if (path.equals("/jobs") || path.equals("/jobs/")) {
+                if (!method.equals("POST")) {
+                    sendJson(exchange, 405, error("Use POST to submit a job"));
+                    return;
+                }
+                Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+                String input = query.get("input");
+                String output = query.get("output");
+                if (input == null || output == null) {
+                    sendJson(exchange, 400, error("input and output are required"));
+                    return;
+                }
+                ConversionRequest request = new ConversionRequest(Paths.get(input), resolveOutput(output))
+                        .setWidth(intParam(query, "width"))
+                        .setHeight(intParam(query, "height"))
+                        .setFrameRate(doubleParam(query, "fps"))
+                        .setPaletteOptions(paletteParam(query))
+                        .setPriority(priorityParam(query))
+                        .setTimeRange(microsParam(query, "start"), microsParam(query, "end"));
+                Integer segments = intParam(query, "segments");
+                if (segments != null) {
+                    request.setSegments(segments);
+                }
+                ConversionJob job = service.submit(request, null);
+                sendJson(exchange, 202, toJson(job));
+                return;
+            }
+            ConversionJob job = service.getJob(Long.parseLong(path.substring("/jobs/".length())));
+            if (job == null) {
+                sendJson(exchange, 404, error("No such job"));
+            } else if (method.equals("GET")) {
+                sendJson(exchange, 200, toJson(job));
+            } else if (method.equals("DELETE")) {
+                boolean cancelled = service.cancel(job.getId());
+                sendJson(exchange, cancelled ? 200 : 409, toJson(job));
+            } else {
+                sendJson(exchange, 405, error("Unsupported method " + method));
+            }
+        } catch (RejectedExecutionException ree) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendJson(exchange, 503, error(ree.getMessage()));
+        } catch (IllegalArgumentException iae) {
+            sendJson(exchange, 400, error(iae.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleConvert(HttpExchange exchange) throws IOException {
+        boolean aborted = false;
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                sendJson(exchange, 405, error("Use POST with the video as request body"));
+                return;
+            }
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            Integer width = intParam(query, "width");
+            Integer height = intParam(query, "height");
+            Double frameRate = doubleParam(query, "fps");
+            PaletteOptions paletteOptions = paletteParam(query);
+            LazyResponseStream response = new LazyResponseStream(exchange);
+            ConversionJob job = service.submit("upload", priorityParam(query), null,
+                    () -> FfMpegUtils.convertToGif(exchange.getRequestBody(), response, width, height, frameRate, paletteOptions));
+            try {
+                job.getFuture().get();
+                response.close();
+            } catch (ExecutionException ee) {
+                if (response.isCommitted()) {
+                    // 已经开始输出 GIF，状态码发不出去了：不关闭 exchange（那会写出分块结束标记），
+                    // 抛出异常让 HttpServer 直接断开连接，客户端读到不完整的分块流
+                    aborted = true;
+                    throw new IOException("Upload conversion failed after streaming started: " + ee.getCause().getMessage(), ee.getCause());
+                }
+                sendJson(exchange, 500, error(String.valueOf(ee.getCause().getMessage())));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                job.cancel();
+                aborted = true;
+                throw new InterruptedIOException("Interrupted while converting upload");
+            }
+        } catch (RejectedExecutionException ree) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendJson(exchange, 503, error(ree.getMessage()));
+        } catch (IllegalArgumentException iae) {
+            sendJson(exchange, 400, error(iae.getMessage()));
+        } finally {
+            if (!aborted) {
+                exchange.close();
+            }
+        }
+    }
+
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        try {
+            sendJson(exchange, 200, "{\"workers\":" + service.getWorkers()
+                    + ",\"queueCapacity\":" + service.getQueueCapacity()
+                    + ",\"running\":" + service.getRunningJobs()
+                    + ",\"queued\":" + service.getQueuedJobs()
+                    + ",\"virtualThreads\":" + IoThreads.isVirtual() + "}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * output 按输出目录解析。规范化后不在目录内、所在目录不存在或经符号链接跳出、目标本身是符号链接时拒绝
+     */
+    private Path resolveOutput(String output) {
+        Path resolved = outputDir.resolve(output).normalize();
+        if (!resolved.startsWith(outputDir) || resolved.equals(outputDir)) {
+            throw new IllegalArgumentException("output must be a file inside " + outputDir);
+        }
+        Path parent;
+        try {
+            parent = resolved.getParent().toRealPath();
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException("output directory does not exist: " + resolved.getParent());
+        }
+        if (!parent.startsWith(outputDir) || Files.isSymbolicLink(resolved)) {
+            throw new IllegalArgumentException("output must be a file inside " + outputDir);
+        }
+        return parent.resolve(resolved.getFileName());
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        return HexUtils.toHex(bytes);
+    }
+
+    private static Path writeToken(Path file, String token) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temp = Files.createTempFile(file.getParent(), TOKEN_FILE, ".tmp");
+        try {
+            try {
+                Files.setPosixFilePermissions(temp, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException e) {
+                // 非 POSIX 文件系统，依赖用户目录本身的权限
+            }
+            Files.write(temp, token.getBytes(StandardCharsets.US_ASCII));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return file;
+    }
+
+    private static boolean isLoopbackHost(String host) {
+        if (host == null) {
+            return false;
+        }
+        String name = host.trim().toLowerCase(Locale.ROOT);
+        if (name.startsWith("[")) {
+            int end = name.indexOf(']');
+            name = end < 0 ? name : name.substring(1, end);
+        } else if (name.indexOf(':') >= 0) {
+            name = name.substring(0, name.indexOf(':'));
+        }
+        return name.equals("localhost") || name.equals("::1") || name.startsWith("127.");
+    }
+
+    private static Integer intParam(Map<String, String> query, String name) {
+        String value = query.get(name);
+        return value == null || value.isEmpty() ? null : Integer.valueOf(value);
+    }
+
+    private static Double doubleParam(Map<String, String> query, String name) {
+        String value = query.get(name);
+        return value == null || value.isEmpty() ? null : Double.valueOf(value);
+    }
+
+    // 秒转微秒，缺省为 0
+    private static long microsParam(Map<String, String> query, String name) {
+        Double seconds = doubleParam(query, name);
+        return seconds == null ? 0 : Math.round(seconds * 1_000_000);
+    }
+
+    private static PaletteOptions paletteParam(Map<String, String> query) {
+        String mode = query.get("palette");
+        if (mode == null || mode.isEmpty()) {
+            return null;
+        }
+        return new PaletteOptions().setStatsMode(PaletteOptions.StatsMode.valueOf(mode.toUpperCase(Locale.ROOT)));
+    }
+
+    private static int priorityParam(Map<String, String> query) {
+        Integer priority = intParam(query, "priority");
+        return priority == null ? ConversionRequest.PRIORITY_NORMAL : priority;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+            params.put(key, value);
+        }
+        return params;
+    }
+
+    private static String toJson(ConversionJob job) {
+        StringBuilder json = new StringBuilder("{\"id\":").append(job.getId())
+                .append(",\"name\":").append(quote(job.getName()))
+                .append(",\"state\":\"").append(job.getState()).append('"')
+                .append(",\"priority\":").append(job.getPriority());
+        JobMetrics metrics = job.getMetrics();
+        if (metrics != null) {
+            json.append(",\"frames\":").append(metrics.getFrames())
+                    .append(",\"outTimeMicros\":").append(metrics.getOutTimeMicros())
+                    .append(",\"speed\":").append(metrics.getSpeed());
+        }
+        if (job.getError() != null) {
+            json.append(",\"error\":").append(quote(job.getError()));
+        }
+        return json.append('}').toString();
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    private static String quote(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * 拒绝来自网页的请求和不带令牌的请求，见类注释
+     */
+    private class AccessFilter extends Filter {
+        private final byte[] expected = ("Bearer " + token).getBytes(StandardCharsets.US_ASCII);
+
+        @Override
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            if (exchange.getRequestHeaders().containsKey("Origin") || !isLoopbackHost(exchange.getRequestHeaders().getFirst("Host"))) {
+                reject(exchange, 403, "Requests from browsers or non-loopback hosts are not accepted");
+                return;
+            }
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            if (authorization == null || !MessageDigest.isEqual(expected, authorization.getBytes(StandardCharsets.US_ASCII))) {
+                reject(exchange, 401, "Missing or wrong token, see " + TOKEN_FILE);
+                return;
+            }
+            chain.doFilter(exchange);
+        }
+
+        @Override
+        public String description() {
+            return "loopback and token check";
+        }
+
+        private void reject(HttpExchange exchange, int status, String message) throws IOException {
+            try {
+                sendJson(exchange, status, error(message));
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     * 第一次写入时才发送 200 响应头（分块传输），转换在输出前失败时还能返回错误状态码
+     */
+    private static class LazyResponseStream extends OutputStream {
+        private final HttpExchange exchange;
+        private OutputStream body;
+
+        LazyResponseStream(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        boolean isCommitted() {
+            return body != null;
+        }
+
+        private OutputStream body() throws IOException {
+            if (body == null) {
+                exchange.getResponseHeaders().set("Content-Type", "image/gif");
+                exchange.sendResponseHeaders(200, 0);
+                body = exchange.getResponseBody();
+            }
+            return body;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            body().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            body().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (body != null) {
+                body.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            body().close();
+        }
+    }
+}
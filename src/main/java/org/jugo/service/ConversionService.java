@@ -0,0 +1,212 @@
+package org.jugo.service;
+
+import org.jugo.metrics.ConversionListener;
+import org.jugo.metrics.ConversionMetrics;
+import org.jugo.model.ConversionRequest;
+import org.jugo.utils.FfMpegUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内共用的转换调度器：固定数量的工作线程从有界优先队列取任务执行。
+ * 已接收（排队和执行中）的任务数达到 workers + queueCapacity 时，{@link #submit} 立即拒绝，
+ * 带超时的 {@link #submit(String, int, ConversionListener, ConversionMetrics.Task, long, TimeUnit)} 等待空位
+ */
+public class ConversionService implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConversionService.class);
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    // 已结束任务保留最近这些个供查询
+    private static final int RETAINED_FINISHED_JOBS = 256;
+    private static volatile ConversionService shared;
+
+    private final int workers;
+    private final int queueCapacity;
+    private final ThreadPoolExecutor executor;
+    private final Semaphore admission;
+    private final AtomicLong nextId = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger();
+    private final Map<Long, ConversionJob> jobs = new ConcurrentHashMap<>();
+    private final Deque<Long> finishedIds = new ArrayDeque<>();
+
+    public ConversionService(int workers, int queueCapacity) {
+        if (workers < 1 || queueCapacity < 0) {
+            throw new IllegalArgumentException("Invalid service size: workers=" + workers + ", queueCapacity=" + queueCapacity);
+        }
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+        this.admission = new Semaphore(workers + queueCapacity);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "conversion-worker-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }) {
+            @Override
+            protected void beforeExecute(Thread t, Runnable r) {
+                running.incrementAndGet();
+            }
+
+            @Override
+            protected void afterExecute(Runnable r, Throwable t) {
+                running.decrementAndGet();
+            }
+        };
+    }
+
+    /**
+     * 界面和库调用共用的实例，每个 ffmpeg 进程本身是多线程的，默认只同时运行一半核数的任务
+     */
+    public static ConversionService shared() {
+        ConversionService service = shared;
+        if (service == null) {
+            synchronized (ConversionService.class) {
+                service = shared;
+                if (service == null) {
+                    service = new ConversionService(Math.max(1, Runtime.getRuntime().availableProcessors() / 2), DEFAULT_QUEUE_CAPACITY);
+                    shared = service;
+                }
+            }
+        }
+        return service;
+    }
+
+    /**
+     * 提交文件转换
+     *
+     * @param listener 进度回调，可以为 null
+     * @throws RejectedExecutionException 队列已满
+     */
+    public ConversionJob submit(ConversionRequest request, ConversionListener listener) {
+        return submit(request.getInputPath().toString(), request.getPriority(), listener, () -> convert(request));
+    }
+
+    /**
+     * 提交任意转换任务，队列已满时立即拒绝
+     *
+     * @throws RejectedExecutionException 队列已满或服务已关闭
+     */
+    public ConversionJob submit(String name, int priority, ConversionListener listener, ConversionMetrics.Task task) {
+        if (!admission.tryAcquire()) {
+            throw new RejectedExecutionException("Conversion queue is full (" + (workers + queueCapacity) + " jobs)");
+        }
+        return enqueue(name, priority, listener, task);
+    }
+
+    /**
+     * 提交任意转换任务，队列已满时最多等待 timeout
+     *
+     * @throws RejectedExecutionException 等待超时或服务已关闭
+     */
+    public ConversionJob submit(String name, int priority, ConversionListener listener, ConversionMetrics.Task task,
+                                long timeout, TimeUnit unit) throws InterruptedException {
+        if (!admission.tryAcquire(timeout, unit)) {
+            throw new RejectedExecutionException("Conversion queue is still full after " + unit.toMillis(timeout) + " ms");
+        }
+        return enqueue(name, priority, listener, task);
+    }
+
+    private ConversionJob enqueue(String name, int priority, ConversionListener listener, ConversionMetrics.Task task) {
+        long id = nextId.incrementAndGet();
+        ConversionJob job = new ConversionJob(id, name, priority, listener, task, () -> onFinished(id));
+        jobs.put(id, job);
+        try {
+            executor.execute(job);
+        } catch (RejectedExecutionException ree) {
+            jobs.remove(id);
+            admission.release();
+            throw ree;
+        }
+        LOGGER.debug("Queued job {} ({}) with priority {}", id, name, priority);
+        return job;
+    }
+
+    private void onFinished(long id) {
+        admission.release();
+        synchronized (finishedIds) {
+            finishedIds.addLast(id);
+            while (finishedIds.size() > RETAINED_FINISHED_JOBS) {
+                jobs.remove(finishedIds.removeFirst());
+            }
+        }
+    }
+
+    private static void convert(ConversionRequest request) throws IOException {
+        String input = request.getInputPath().toString();
+        String output = request.getOutputPath().toString();
+        if (request.getSegments() > 1) {
+            if (request.hasTimeRange() || request.getEncoderOptions() != null) {
+                throw new IllegalArgumentException("Segmented conversion can not be combined with a time range or the Java encoder");
+            }
+            FfMpegUtils.convertToGifSegmented(input, output, request.getWidth(), request.getHeight(), request.getFrameRate(),
+                    request.getPaletteOptions(), request.getSegments());
+        } else if (request.hasTimeRange()) {
+            if (request.getEncoderOptions() != null) {
+                throw new IllegalArgumentException("Time range is not supported by the Java encoder");
+            }
+            FfMpegUtils.convertToGifRange(input, output, request.getStartMicros(), request.getEndMicros(), request.getWidth(),
+                    request.getHeight(), request.getFrameRate(), request.getPaletteOptions());
+        } else if (request.getEncoderOptions() != null) {
+            FfMpegUtils.convertToGifInJava(input, output, request.getWidth(), request.getHeight(), request.getFrameRate(),
+                    request.getEncoderOptions());
+        } else if (request.getPaletteOptions() != null) {
+            FfMpegUtils.convertToGif(input, output, request.getWidth(), request.getHeight(), request.getFrameRate(),
+                    request.getPaletteOptions());
+        } else {
+            FfMpegUtils.convertToGif(input, output, request.getWidth(), request.getHeight(), request.getFrameRate());
+        }
+    }
+
+    /**
+     * @return 任务，不存在或已结束较久被清理时为 null
+     */
+    public ConversionJob getJob(long id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * 取消还在排队的任务
+     */
+    public boolean cancel(long id) {
+        ConversionJob job = jobs.get(id);
+        if (job == null || !job.cancel()) {
+            return false;
+        }
+        executor.remove(job);
+        return true;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getRunningJobs() {
+        return running.get();
+    }
+
+    public int getQueuedJobs() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
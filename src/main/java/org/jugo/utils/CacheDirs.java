@@ -0,0 +1,28 @@
+package org.jugo.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * 本地缓存目录，默认 ~/.gifparser，可用系统属性 gifparser.cache.dir 指定
+ */
+public class CacheDirs {
+    public static final String CACHE_DIR_PROPERTY = "gifparser.cache.dir";
+
+    private CacheDirs() {
+    }
+
+    public static Path root() {
+        String configured = System.getProperty(CACHE_DIR_PROPERTY);
+        return configured != null ? Paths.get(configured) : Paths.get(System.getProperty("user.home"), ".gifparser");
+    }
+
+    /**
+     * 返回 root 下的子目录，不存在时创建
+     */
+    public static Path resolve(String name) throws IOException {
+        return Files.createDirectories(root().resolve(name));
+    }
+}
@@ -0,0 +1,178 @@
+package org.jugo.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 按内容寻址的转换结果缓存：键是输入文件内容的 SHA-256 加上全部转换参数。
+ * 结果先写临时文件再原子改名发布；命中时复制到目标位置，输出文件与缓存条目互不影响。
+ * 总大小超过上限时按最近使用时间（命中时刷新修改时间）淘汰
+ */
+public class ConversionCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConversionCache.class);
+    private static final String ENTRY_SUFFIX = ".gif";
+    private static final int DIGEST_MEMO_SIZE = 1024;
+
+    public interface Converter {
+        void convert(Path output) throws IOException;
+    }
+
+    private final Path storeDir;
+    private final long maxBytes;
+    // 同一文件未变化时不重复计算摘要
+    private final Map<String, String> digestMemo = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > DIGEST_MEMO_SIZE;
+        }
+    };
+
+    public ConversionCache(Path storeDir, long maxBytes) throws IOException {
+        this.storeDir = Files.createDirectories(storeDir);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 命中时把缓存结果放到 output，否则调用 converter 生成并发布到缓存
+     *
+     * @param parameters 影响输出的全部转换参数
+     * @return 是否命中缓存
+     */
+    public boolean convert(Path input, Path output, String parameters, Converter converter) throws IOException {
+        String key = sha256Hex(inputDigest(input) + '\n' + parameters);
+        Path entry = storeDir.resolve(key + ENTRY_SUFFIX);
+        if (materialize(entry, output)) {
+            LOGGER.debug("Conversion cache hit {} -> {}", input, output);
+            return true;
+        }
+        Path temp = storeDir.resolve(key + ".tmp-" + UUID.randomUUID());
+        try {
+            converter.convert(temp);
+            publish(temp, entry);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        if (!materialize(entry, output)) {
+            throw new IOException("Converted result disappeared from cache: " + entry);
+        }
+        evictIfNeeded();
+        return false;
+    }
+
+    /**
+     * 把缓存结果复制到 output。不用硬链接：输出文件之后可能被原地改写（ffmpeg -y 等），链接会连带改坏缓存条目
+     */
+    private boolean materialize(Path entry, Path output) throws IOException {
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            Files.copy(entry, output, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (NoSuchFileException e) {
+            if (Files.exists(entry)) {
+                throw e; // 输出目录不存在
+            }
+            return false; // 刚好被淘汰
+        }
+    }
+
+    private static void publish(Path temp, Path entry) throws IOException {
+        try {
+            Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // 另一个线程已发布相同内容
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private synchronized void evictIfNeeded() throws IOException {
+        List<Path> files = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(storeDir, "*" + ENTRY_SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+                total += Files.size(file);
+            }
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        files.sort(Comparator.comparing(ConversionCache::lastModified));
+        for (Path file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            long size = Files.size(file);
+            if (Files.deleteIfExists(file)) {
+                total -= size;
+                LOGGER.debug("Evicted {} from conversion cache", file.getFileName());
+            }
+        }
+    }
+
+    private String inputDigest(Path input) throws IOException {
+        Path realPath = input.toRealPath();
+        BasicFileAttributes attributes = Files.readAttributes(realPath, BasicFileAttributes.class);
+        String memoKey = realPath + "|" + attributes.size() + "|" + attributes.lastModifiedTime().toMillis();
+        synchronized (digestMemo) {
+            String digest = digestMemo.get(memoKey);
+            if (digest != null) {
+                return digest;
+            }
+        }
+        MessageDigest md = newSha256();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(realPath)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                md.update(buffer, 0, n);
+            }
+        }
+        String digest = HexUtils.toHex(md.digest());
+        synchronized (digestMemo) {
+            digestMemo.put(memoKey, digest);
+        }
+        return digest;
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static String sha256Hex(String value) {
+        return HexUtils.toHex(newSha256().digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
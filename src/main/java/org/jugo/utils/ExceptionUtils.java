@@ -7,7 +7,7 @@ public class ExceptionUtils {
      * @param exception 异常
      * @return exception堆栈信息
      */
-    public static String toString(Exception exception) {
+    public static String toString(Throwable exception) {
         StringBuilder sb = new StringBuilder();
         StackTraceElement[] stackTrace = exception.getStackTrace();
         for (StackTraceElement stackTraceElement : stackTrace) {
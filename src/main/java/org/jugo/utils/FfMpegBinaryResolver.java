@@ -0,0 +1,275 @@
+package org.jugo.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * 查找 ffmpeg 可执行文件，首次使用时才解析，结果在进程内缓存。顺序为：
+ * <ol>
+ *     <li>系统属性 gifparser.ffmpeg.path 或环境变量 FFMPEG_PATH</li>
+ *     <li>PATH 中的 ffmpeg</li>
+ *     <li>随程序打包的 ffmpeg.zip，解压到 ~/.gifparser/ffmpeg/&lt;版本&gt;/，每个版本只解压一次并记录 SHA-256</li>
+ * </ol>
+ */
+public class FfMpegBinaryResolver {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FfMpegBinaryResolver.class);
+    public static final String PATH_PROPERTY = "gifparser.ffmpeg.path";
+    public static final String PATH_ENV = "FFMPEG_PATH";
+    private static final String BUNDLE_RESOURCE = "ffmpeg.zip";
+    private static final boolean WINDOWS = System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("windows");
+    private static final String BINARY_NAME = WINDOWS ? "ffmpeg.exe" : "ffmpeg";
+    private static final String CHECKSUM_SUFFIX = ".sha256";
+
+    private static final Object LOCK = new Object();
+    private static volatile String resolvedPath;
+
+    private FfMpegBinaryResolver() {
+    }
+
+    /**
+     * @return ffmpeg 可执行文件的绝对路径
+     * @throws IllegalStateException 找不到可用的 ffmpeg
+     */
+    public static String ffmpegPath() {
+        String path = resolvedPath;
+        if (path == null) {
+            synchronized (LOCK) {
+                path = resolvedPath;
+                if (path == null) {
+                    path = resolve();
+                    resolvedPath = path;
+                }
+            }
+        }
+        return path;
+    }
+
+    private static String resolve() {
+        long start = System.nanoTime();
+        String path = fromConfiguration();
+        if (path == null) {
+            path = fromSystemPath();
+        }
+        if (path == null) {
+            try {
+                path = fromBundle();
+            } catch (IOException ioe) {
+                LOGGER.error("Can not extract bundled ffmpeg: {}", ioe.getMessage());
+                throw new IllegalStateException("Can not extract bundled ffmpeg: " + ioe.getMessage(), ioe);
+            }
+        }
+        if (path == null) {
+            throw new IllegalStateException("ffmpeg not found: set -D" + PATH_PROPERTY + ", " + PATH_ENV + " or add it to PATH");
+        }
+        LOGGER.info("Using ffmpeg {} (resolved in {} ms)", path, (System.nanoTime() - start) / 1_000_000);
+        return path;
+    }
+
+    private static String fromConfiguration() {
+        String configured = System.getProperty(PATH_PROPERTY);
+        if (configured == null || configured.isEmpty()) {
+            configured = System.getenv(PATH_ENV);
+        }
+        if (configured == null || configured.isEmpty()) {
+            return null;
+        }
+        Path path = Paths.get(configured);
+        if (Files.isDirectory(path)) {
+            path = path.resolve(BINARY_NAME);
+        }
+        if (!Files.isExecutable(path)) {
+            throw new IllegalStateException("Configured ffmpeg is not executable: " + path);
+        }
+        return path.toAbsolutePath().toString();
+    }
+
+    private static String fromSystemPath() {
+        String systemPath = System.getenv("PATH");
+        if (systemPath == null) {
+            return null;
+        }
+        for (String dir : systemPath.split(File.pathSeparator)) {
+            if (dir.isEmpty()) {
+                continue;
+            }
+            Path candidate = Paths.get(dir, BINARY_NAME);
+            if (Files.isRegularFile(candidate) && Files.isExecutable(candidate)) {
+                return candidate.toAbsolutePath().toString();
+            }
+        }
+        return null;
+    }
+
+    private static String fromBundle() throws IOException {
+        String version;
+        try (ZipInputStream zipIn = openBundle()) {
+            ZipEntry entry = zipIn == null ? null : findEntry(zipIn);
+            if (entry == null) {
+                return null;
+            }
+            // 条目头里的 CRC 和大小足以区分打包的 ffmpeg 版本，不需要读取内容；
+            // 流式写入的 zip 把它们放在数据之后（CRC 为 -1），这时改用打包资源本身的版本信息
+            version = entry.getCrc() >= 0 ? Long.toHexString(entry.getCrc()) + "-" + entry.getSize() : bundleVersion();
+        }
+        Path versionDir = CacheDirs.resolve("ffmpeg").resolve(version);
+        Files.createDirectories(versionDir);
+        Path binary = versionDir.resolve(BINARY_NAME);
+        if (isVerified(binary)) {
+            return binary.toString();
+        }
+        // 多个进程同时启动时只让一个解压
+        try (FileChannel lockChannel = FileChannel.open(versionDir.resolve(".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = lockChannel.lock();
+            try {
+                if (isVerified(binary)) {
+                    return binary.toString();
+                }
+                extract(binary);
+            } finally {
+                lock.release();
+            }
+        }
+        return binary.toString();
+    }
+
+    private static ZipInputStream openBundle() {
+        InputStream in = FfMpegBinaryResolver.class.getClassLoader().getResourceAsStream(BUNDLE_RESOURCE);
+        return in == null ? null : new ZipInputStream(in);
+    }
+
+    /**
+     * 程序 jar 的版本号加上 ffmpeg.zip 资源的大小和修改时间，取摘要前 16 位。打包内容变化时至少其中一项会变
+     */
+    private static String bundleVersion() throws IOException {
+        URL url = FfMpegBinaryResolver.class.getClassLoader().getResource(BUNDLE_RESOURCE);
+        URLConnection connection = url.openConnection();
+        connection.setUseCaches(false);
+        long length = connection.getContentLengthLong();
+        long modified = connection.getLastModified();
+        connection.getInputStream().close();
+        Package pkg = FfMpegBinaryResolver.class.getPackage();
+        String identity = (pkg == null ? null : pkg.getImplementationVersion()) + "|" + length + "|" + modified;
+        return "b" + HexUtils.toHex(newSha256().digest(identity.getBytes(StandardCharsets.UTF_8))).substring(0, 16);
+    }
+
+    private static ZipEntry findEntry(ZipInputStream zipIn) throws IOException {
+        ZipEntry entry;
+        while ((entry = zipIn.getNextEntry()) != null) {
+            if (entry.getName().equals(BINARY_NAME) || entry.getName().endsWith("/" + BINARY_NAME)) {
+                return entry;
+            }
+            zipIn.closeEntry();
+        }
+        return null;
+    }
+
+    // 直接从 jar 里的条目流式解压到临时文件，边写边算摘要，完成后原子改名
+    private static void extract(Path binary) throws IOException {
+        long start = System.nanoTime();
+        Path temp = binary.resolveSibling(binary.getFileName() + ".tmp");
+        MessageDigest md = newSha256();
+        long size;
+        try (ZipInputStream zipIn = openBundle()) {
+            if (zipIn == null || findEntry(zipIn) == null) {
+                throw new IOException(BINARY_NAME + " not found in " + BUNDLE_RESOURCE);
+            }
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                size = copy(new DigestInputStream(zipIn, md), out);
+            }
+        }
+        if (!WINDOWS && !temp.toFile().setExecutable(true)) {
+            throw new IOException("Can not make " + temp + " executable");
+        }
+        try {
+            Files.move(temp, binary, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, binary, StandardCopyOption.REPLACE_EXISTING);
+        }
+        writeChecksum(binary, HexUtils.toHex(md.digest()), size);
+        LOGGER.info("Extracted {} ({} bytes) in {} ms", binary, size, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * 校验记录格式为 "sha256 大小 修改时间"。大小和修改时间都没变时直接信任，否则重新计算摘要比对
+     */
+    private static boolean isVerified(Path binary) throws IOException {
+        Path checksumFile = binary.resolveSibling(binary.getFileName() + CHECKSUM_SUFFIX);
+        if (!Files.isRegularFile(binary) || !Files.isRegularFile(checksumFile)) {
+            return false;
+        }
+        List<String> fields = Arrays.asList(new String(Files.readAllBytes(checksumFile), StandardCharsets.US_ASCII).trim().split(" "));
+        if (fields.size() != 3) {
+            return false;
+        }
+        long size = Files.size(binary);
+        long modified = Files.getLastModifiedTime(binary).toMillis();
+        if (!fields.get(1).equals(Long.toString(size))) {
+            return false;
+        }
+        if (fields.get(2).equals(Long.toString(modified))) {
+            return true;
+        }
+        MessageDigest md = newSha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(binary), md)) {
+            copy(in, null);
+        }
+        boolean verified = HexUtils.toHex(md.digest()).equals(fields.get(0));
+        if (verified) {
+            writeChecksum(binary, fields.get(0), size);
+        } else {
+            LOGGER.warn("Checksum mismatch for {}, extracting again", binary);
+        }
+        return verified;
+    }
+
+    private static void writeChecksum(Path binary, String sha256, long size) throws IOException {
+        long modified = Files.getLastModifiedTime(binary).toMillis();
+        Files.write(binary.resolveSibling(binary.getFileName() + CHECKSUM_SUFFIX),
+                (sha256 + " " + size + " " + modified).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        long total = 0;
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            if (out != null) {
+                out.write(buffer, 0, n);
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.jugo.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 所有 ffmpeg 子进程共用的 CPU 预算：
+ * <ul>
+ *     <li>同时运行的子进程数有上限，超出时启动方阻塞等待，按先来先得</li>
+ *     <li>每个进程启动时按 CPU 核数 ÷ 当前运行的进程数分到线程数，通过 -threads（解码）和 -filter_threads、
+ *     -filter_complex_threads（滤镜）传给 ffmpeg，不再每个进程都按全部核数开线程</li>
+ * </ul>
+ * ffmpeg 运行中不能调整线程数，预算在每次启动时按当时的负载重新计算：进程结束后，之后启动的进程分到更多线程。
+ * 系统属性 gifparser.ffmpeg.maxProcesses 设置进程数上限（默认为核数，至少 2），
+ * gifparser.ffmpeg.threadBudget=false 时只限制进程数、不加线程参数（兼容不支持这些选项的旧版 ffmpeg）
+ */
+public final class FfMpegGovernor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FfMpegGovernor.class);
+    public static final String MAX_PROCESSES_PROPERTY = "gifparser.ffmpeg.maxProcesses";
+    public static final String THREAD_BUDGET_PROPERTY = "gifparser.ffmpeg.threadBudget";
+
+    private static final FfMpegGovernor SHARED = new FfMpegGovernor(Runtime.getRuntime().availableProcessors(),
+            Integer.getInteger(MAX_PROCESSES_PROPERTY, Math.max(2, Runtime.getRuntime().availableProcessors())),
+            !"false".equalsIgnoreCase(System.getProperty(THREAD_BUDGET_PROPERTY)));
+
+    private final int cores;
+    private final int maxProcesses;
+    private final boolean threadBudget;
+    private final Semaphore permits;
+    private int active;
+
+    FfMpegGovernor(int cores, int maxProcesses, boolean threadBudget) {
+        if (cores < 1 || maxProcesses < 1) {
+            throw new IllegalArgumentException("cores and maxProcesses must be positive: " + cores + ", " + maxProcesses);
+        }
+        this.cores = cores;
+        this.maxProcesses = maxProcesses;
+        this.threadBudget = threadBudget;
+        this.permits = new Semaphore(maxProcesses, true);
+    }
+
+    public static FfMpegGovernor shared() {
+        return SHARED;
+    }
+
+    /**
+     * 等到可以再启动一个进程，返回该进程的线程预算。进程结束后必须关闭返回的 Lease
+     */
+    public Lease acquire() throws InterruptedIOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an ffmpeg slot");
+        }
+        int threads;
+        synchronized (this) {
+            active++;
+            threads = Math.max(1, cores / active);
+        }
+        return new Lease(threads);
+    }
+
+    public synchronized int getActive() {
+        return active;
+    }
+
+    public int getMaxProcesses() {
+        return maxProcesses;
+    }
+
+    /**
+     * 给命令加上线程参数：每个 -i 前加 -threads，可执行文件之后加滤镜线程数。
+     * 没有输入的命令（如 -version）和已经指定 -threads 的命令原样返回
+     */
+    public List<String> withThreads(List<String> command, int threads) {
+        if (!threadBudget || !command.contains("-i") || command.contains("-threads")) {
+            return command;
+        }
+        String value = Integer.toString(threads);
+        List<String> result = new ArrayList<>(command.size() + 8);
+        result.add(command.get(0));
+        result.add("-filter_threads");
+        result.add(value);
+        if (command.contains("-filter_complex")) {
+            result.add("-filter_complex_threads");
+            result.add(value);
+        }
+        for (int i = 1; i < command.size(); i++) {
+            String arg = command.get(i);
+            if (arg.equals("-i")) {
+                result.add("-threads");
+                result.add(value);
+            }
+            result.add(arg);
+        }
+        return result;
+    }
+
+    private synchronized void release() {
+        active--;
+    }
+
+    public final class Lease implements Closeable {
+        private final int threads;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(int threads) {
+            this.threads = threads;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * 按预算改写命令，见 {@link FfMpegGovernor#withThreads}
+         */
+        public List<String> apply(List<String> command) {
+            List<String> result = withThreads(command, threads);
+            if (result != command) {
+                LOGGER.debug("ffmpeg thread budget {} ({} of {} processes running)", threads, getActive(), maxProcesses);
+            }
+            return result;
+        }
+
+        /**
+         * 可以重复调用，只释放一次
+         */
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                release();
+                permits.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package org.jugo.utils;
+
+import net.bramp.ffmpeg.progress.Progress;
+import net.bramp.ffmpeg.progress.ProgressListener;
+import org.apache.commons.lang3.math.Fraction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 直接启动的 ffmpeg 子进程，stdin/stdout 交给调用方做管道，stderr 在后台 I/O 线程（见 {@link IoThreads}）里持续读走，
+ * 避免管道写满导致 ffmpeg 阻塞，并保留最后几行用于报错。
+ * 指定进度监听时加上 -progress pipe:2，stderr 里的 key=value 进度块解析后交给监听方，不计入报错内容。
+ * 启动前先从 {@link FfMpegGovernor} 取得进程名额和线程预算，进程退出后归还
+ */
+public class FfMpegProcess implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FfMpegProcess.class);
+    private static final int STDERR_TAIL_LINES = 20;
+    private static final Pattern PROGRESS_LINE = Pattern.compile("[a-z_0-9]+=.*");
+
+    private final Process process;
+    private final FfMpegGovernor.Lease lease;
+    private final Thread stderrDrainer;
+    private final Deque<String> stderrTail = new ArrayDeque<>();
+    private final ProgressListener progressListener;
+    private Progress pendingProgress = new Progress();
+    private Thread stdinFeeder;
+    private volatile IOException inputFailure;
+
+    private FfMpegProcess(Process process, FfMpegGovernor.Lease lease, ProgressListener progressListener) {
+        this.process = process;
+        this.lease = lease;
+        this.progressListener = progressListener;
+        this.stderrDrainer = IoThreads.start("ffmpeg-stderr", this::drainStderr);
+    }
+
+    /**
+     * 同时运行的 ffmpeg 达到上限时阻塞，直到有进程结束
+     */
+    public static FfMpegProcess start(List<String> command) throws IOException {
+        return start(command, null);
+    }
+
+    /**
+     * @param progressListener 接收 ffmpeg 的进度，为 null 时不输出进度
+     */
+    public static FfMpegProcess start(List<String> command, ProgressListener progressListener) throws IOException {
+        if (progressListener != null) {
+            List<String> withProgress = new ArrayList<>(command.size() + 3);
+            withProgress.add(command.get(0));
+            withProgress.addAll(Arrays.asList("-progress", "pipe:2", "-nostats"));
+            withProgress.addAll(command.subList(1, command.size()));
+            command = withProgress;
+        }
+        FfMpegGovernor.Lease lease = FfMpegGovernor.shared().acquire();
+        try {
+            List<String> governed = lease.apply(command);
+            LOGGER.debug("Starting {}", governed);
+            return new FfMpegProcess(new ProcessBuilder(governed).start(), lease, progressListener);
+        } catch (IOException | RuntimeException e) {
+            lease.close();
+            throw e;
+        }
+    }
+
+    public InputStream getInputStream() {
+        return process.getInputStream();
+    }
+
+    public OutputStream getOutputStream() {
+        return process.getOutputStream();
+    }
+
+    public Process getProcess() {
+        return process;
+    }
+
+    /**
+     * 在后台线程把 input 的内容写入 stdin，读到结尾后关闭 stdin 让 ffmpeg 收到 EOF。
+     * 管道写满时写入会阻塞，读取 input 的速度自然跟随 ffmpeg 的消费速度，内存占用只有一个缓冲区
+     *
+     * @param input      输入，由调用方负责关闭
+     * @param bufferSize 直接缓冲区大小
+     */
+    public void feedStdin(ReadableByteChannel input, int bufferSize) {
+        if (stdinFeeder != null) {
+            throw new IllegalStateException("stdin is already being fed");
+        }
+        stdinFeeder = IoThreads.start("ffmpeg-stdin", () -> feed(input, bufferSize));
+    }
+
+    /**
+     * 把 stdout 全部写入 output，直到 ffmpeg 关闭 stdout
+     *
+     * @return 写入的字节数
+     */
+    public long drainStdout(WritableByteChannel output, int bufferSize) throws IOException {
+        ReadableByteChannel stdout = Channels.newChannel(process.getInputStream());
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+        long total = 0;
+        while (stdout.read(buffer) >= 0) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                total += output.write(buffer);
+            }
+            buffer.clear();
+        }
+        return total;
+    }
+
+    /**
+     * 等待进程结束，退出码非 0 时抛出带 stderr 末尾内容的异常；读取 stdin 的输入失败时抛出该异常
+     */
+    public void waitForSuccess() throws IOException {
+        int exitCode;
+        try {
+            exitCode = process.waitFor();
+            stderrDrainer.join(1000);
+            if (stdinFeeder != null) {
+                stdinFeeder.join(1000);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            process.destroy();
+            throw new IOException("Interrupted while waiting for ffmpeg", ie);
+        }
+        if (inputFailure != null) {
+            throw new IOException("Can not read ffmpeg input: " + inputFailure.getMessage(), inputFailure);
+        }
+        if (exitCode != 0) {
+            throw new IOException("ffmpeg exited with code " + exitCode + ": " + getStderrTail());
+        }
+    }
+
+    public String getStderrTail() {
+        synchronized (stderrTail) {
+            return String.join(System.lineSeparator(), stderrTail);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (process.isAlive()) {
+            process.destroy();
+        }
+    }
+
+    private void feed(ReadableByteChannel input, int bufferSize) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+        try (WritableByteChannel stdin = Channels.newChannel(process.getOutputStream())) {
+            while (true) {
+                try {
+                    if (input.read(buffer) < 0) {
+                        break;
+                    }
+                } catch (IOException ioe) {
+                    // 输入中断（如上传被取消）时结束进程，不让 ffmpeg 把不完整的输入当作正常结尾
+                    inputFailure = ioe;
+                    process.destroy();
+                    return;
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    stdin.write(buffer);
+                }
+                buffer.clear();
+            }
+        } catch (IOException ioe) {
+            // ffmpeg 提前退出导致管道断开，错误原因由退出码和 stderr 报告
+            LOGGER.debug("ffmpeg stdin closed: {}", ioe.getMessage());
+        }
+    }
+
+    private void drainStderr() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (progressListener != null && PROGRESS_LINE.matcher(line).matches()) {
+                    parseProgress(line);
+                    continue;
+                }
+                synchronized (stderrTail) {
+                    if (stderrTail.size() == STDERR_TAIL_LINES) {
+                        stderrTail.removeFirst();
+                    }
+                    stderrTail.addLast(line);
+                }
+            }
+        } catch (IOException ioe) {
+            LOGGER.debug("ffmpeg stderr closed: {}", ioe.getMessage());
+        } finally {
+            releaseAfterExit();
+        }
+    }
+
+    /**
+     * 一个进度块由若干 key=value 行组成，以 progress=continue 或 progress=end 结束
+     */
+    private void parseProgress(String line) {
+        int eq = line.indexOf('=');
+        String key = line.substring(0, eq);
+        String value = line.substring(eq + 1).trim();
+        Progress progress = pendingProgress;
+        try {
+            switch (key) {
+                case "frame":
+                    progress.frame = Long.parseLong(value);
+                    break;
+                case "fps":
+                    progress.fps = Fraction.getFraction(Double.parseDouble(value));
+                    break;
+                case "total_size":
+                    progress.total_size = Long.parseLong(value);
+                    break;
+                case "out_time_us":
+                case "out_time_ms": // 旧版 ffmpeg 的 out_time_ms 实际也是微秒
+                    progress.out_time_ns = Long.parseLong(value) * 1000;
+                    break;
+                case "speed":
+                    progress.speed = Float.parseFloat(value.endsWith("x") ? value.substring(0, value.length() - 1) : value);
+                    break;
+                case "progress":
+                    progress.status = "end".equals(value) ? Progress.Status.END : Progress.Status.CONTINUE;
+                    pendingProgress = new Progress();
+                    progressListener.progress(progress);
+                    break;
+                default:
+                    break;
+            }
+        } catch (NumberFormatException | ArithmeticException e) {
+            // 开头几个块里常见 N/A，保留默认值
+        }
+    }
+
+    // stderr 结束说明进程已经或即将退出，等它真正退出再归还名额
+    private void releaseAfterExit() {
+        try {
+            process.waitFor();
+        } catch (InterruptedException ie) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+        } finally {
+            lease.close();
+        }
+    }
+}
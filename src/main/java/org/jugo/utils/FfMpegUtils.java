@@ -5,55 +5,107 @@ import net.bramp.ffmpeg.FFmpeg;
 import net.bramp.ffmpeg.FFmpegExecutor;
 import net.bramp.ffmpeg.builder.FFmpegBuilder;
 import net.bramp.ffmpeg.builder.FFmpegOutputBuilder;
+import net.bramp.ffmpeg.progress.Progress;
+import org.apache.commons.lang3.math.Fraction;
+import org.jugo.gif.DuplicateFrameFilter;
+import org.jugo.gif.FixedPaletteQuantizer;
+import org.jugo.gif.FrameQuantizer;
+import org.jugo.gif.FrameTiming;
+import org.jugo.gif.GifStitcher;
+import org.jugo.gif.MedianCutQuantizer;
+import org.jugo.gif.ParallelGifEncoder;
+import org.jugo.gif.RawFrameReader;
+import org.jugo.metrics.ConversionMetrics;
+import org.jugo.metrics.JobTracker;
+import org.jugo.metrics.TrackingProcessFunction;
+import org.jugo.model.EncoderOptions;
+import org.jugo.model.KeyframeIndex;
+import org.jugo.model.PaletteOptions;
+import org.jugo.model.SizeBudgetPlan;
 import org.jugo.model.VideoInfo;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.stream.Stream;
 
 public class FfMpegUtils {
     private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(FfMpegUtils.class);
-    private static String ffmpegExePath;
-    private static FFmpeg ffmpeg;
+    private static volatile FFmpeg ffmpeg;
+    private static volatile ConversionCache conversionCache;
+    private static final VideoInfoCache VIDEO_INFO_CACHE = new VideoInfoCache(4096, false,
+            CacheDirs.root().resolve("videoinfo.cache"));
+    // 分段转换时每段的最短时长，太短时进程启动开销会超过并行收益
+    private static final long MIN_SEGMENT_MICROS = 2_000_000L;
+    private static final int PIPE_BUFFER_SIZE = 1 << 16;
+    // 缩略图间隔超过这个值时只解码关键帧，偏差不超过一个 GOP，相对间隔可以忽略
+    private static final long KEYFRAME_ONLY_INTERVAL_MICROS = 10_000_000L;
+    private static final Pattern RESOLUTION_PATTERN = Pattern.compile(", (\\d+)x(\\d+)[, ]");
+    private static final Pattern FRAME_RATE_PATTERN = Pattern.compile("(\\d+(?:\\.\\d+)?) fps");
+    private static final Pattern DURATION_PATTERN = Pattern.compile("Duration: (\\d+):(\\d+):(\\d+(?:\\.\\d+)?)");
 
-    static {
-        try {
-            extractFfpmgExeFromZip(FfMpegUtils.class.getClassLoader().getResource("ffmpeg.zip").getPath());
-            ffmpegExePath = FfMpegUtils.class.getClassLoader().getResource("ffmpeg.exe").getPath();
-            ffmpeg = new FFmpeg(ffmpegExePath);
-        } catch (IOException ioe) {
-            LOGGER.warn("Can not read ffmpeg.exe in resource: {}", ioe.getMessage());
-            String jarPath;
-            try {
-                jarPath = new File(FfMpegUtils.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getAbsolutePath();
-                LOGGER.info("jarPath: {}", jarPath);
-            } catch (URISyntaxException ex) {
-                LOGGER.error("Can not find Jar Path: {}", ex.getMessage());
-                throw new RuntimeException(ex.getMessage());
-            }
-            try {
-                extractFfmpegExeFromJar(jarPath);
-            } catch (IOException ioe2) {
-                LOGGER.error("Can not extract ffmpeg folder: {}", ioe2.getMessage());
-                throw new RuntimeException(ioe2.getMessage());
-            }
-            ffmpegExePath = Paths.get(jarPath).getParent().toString() + File.separator + "ffmpeg.exe";
-            try {
-                ffmpeg = new FFmpeg(ffmpegExePath);
-            } catch (IOException ioe3) {
-                LOGGER.error("Can not construct ffmpeg: {}", ioe3.getMessage());
-                throw new RuntimeException(ioe3.getMessage());
+    // ffmpeg 在第一次转换时才解析和构造，类加载不再触发解压
+    private static FFmpeg ffmpeg() {
+        FFmpeg instance = ffmpeg;
+        if (instance == null) {
+            synchronized (FfMpegUtils.class) {
+                instance = ffmpeg;
+                if (instance == null) {
+                    try {
+                        instance = new FFmpeg(ffmpegPath(), new TrackingProcessFunction());
+                    } catch (IOException ioe) {
+                        LOGGER.error("Can not construct ffmpeg: {}", ioe.getMessage());
+                        throw new IllegalStateException(ioe.getMessage(), ioe);
+                    }
+                    ffmpeg = instance;
+                }
             }
         }
+        return instance;
+    }
+
+    private static String ffmpegPath() {
+        return FfMpegBinaryResolver.ffmpegPath();
+    }
+
+    /**
+     * 设置转换结果缓存，为 null 时关闭。开启后相同输入和参数的转换直接从缓存取结果
+     */
+    public static void setConversionCache(ConversionCache cache) {
+        conversionCache = cache;
     }
 
     public static void convertToGif(String inputPath, String outputPath, Integer width, Integer height, Double frameRate) throws IOException {
+        ConversionCache cache = conversionCache;
+        if (cache != null) {
+            cache.convert(Paths.get(inputPath), Paths.get(outputPath), "gif|" + width + "|" + height + "|" + frameRate,
+                    temp -> runGifJob(inputPath, temp.toString(), width, height, frameRate));
+        } else {
+            runGifJob(inputPath, outputPath, width, height, frameRate);
+        }
+    }
+
+    private static void runGifJob(String inputPath, String outputPath, Integer width, Integer height, Double frameRate) throws IOException {
         // 创建FFmpeg命令构建器
         FFmpegOutputBuilder fFmpegOutputBuilder = new FFmpegBuilder()
                 .setInput(inputPath) // 设置输入视频文件
@@ -70,128 +122,692 @@ public class FfMpegUtils {
         }
         FFmpegBuilder builder = fFmpegOutputBuilder.done();
         // 创建执行器并执行转换命令
-        FFmpegExecutor executor = new FFmpegExecutor(ffmpeg);
-        executor.createJob(builder).run();
+        runTracked(inputPath, outputPath, builder);
     }
 
-    // 读取视频参数
-    public static VideoInfo readVideoInfo(String videoPath) throws IOException {
-        // 构建 ffmpeg 命令
-        ProcessBuilder processBuilder = new ProcessBuilder(ffmpegExePath, "-i", videoPath);
-        Process process = processBuilder.start();
-        // 读取 ffmpeg 的 stderr（ffmpeg 把视频信息写在 stderr）
-        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-        String line;
-        while ((line = reader.readLine()) != null) {
-            if (line.contains("Video:")) {
-                Integer width = null;
-                Integer height = null;
-                Double frameRate = null;
-                Pattern resolutionPattern = Pattern.compile(", (\\d+)x(\\d+),");
-                Pattern frameRatePattern = Pattern.compile("(\\d+(?:\\.\\d+)?) fps");
-                // 查找分辨率
-                Matcher resolutionMatcher = resolutionPattern.matcher(line);
-                if (resolutionMatcher.find()) {
-                    width = Integer.parseInt(resolutionMatcher.group(1));
-                    height = Integer.parseInt(resolutionMatcher.group(2));
-                    // 查找帧率
-                    Matcher frameRateMatcher = frameRatePattern.matcher(line);
-                    if (frameRateMatcher.find()) {
-                        frameRate = Double.parseDouble(frameRateMatcher.group(1));
-                        return new VideoInfo(width, height, frameRate);
+    // 执行转换并通过 -progress 记录进度和统计
+    private static void runTracked(String inputPath, String outputPath, FFmpegBuilder builder) throws IOException {
+        JobTracker tracker = ConversionMetrics.get().startJob(inputPath);
+        boolean success = false;
+        try {
+            FFmpegExecutor executor = new FFmpegExecutor(ffmpeg());
+            executor.createJob(builder, tracker).run();
+            success = true;
+        } finally {
+            File output = new File(outputPath);
+            tracker.finish(success, output.isFile() ? output.length() : -1);
+        }
+    }
+
+    /**
+     * 单次解码的调色板转换：一个 filter_complex 里完成 fps、scale、split、palettegen、paletteuse
+     *
+     * @param paletteOptions 调色板参数
+     */
+    public static void convertToGif(String inputPath, String outputPath, Integer width, Integer height, Double frameRate,
+                                    PaletteOptions paletteOptions) throws IOException {
+        String filterGraph = buildPaletteFilterGraph(width, height, frameRate, paletteOptions);
+        ConversionCache cache = conversionCache;
+        if (cache != null) {
+            cache.convert(Paths.get(inputPath), Paths.get(outputPath), "palette|" + filterGraph,
+                    temp -> runPaletteJob(inputPath, temp.toString(), filterGraph));
+        } else {
+            runPaletteJob(inputPath, outputPath, filterGraph);
+        }
+    }
+
+    private static void runPaletteJob(String inputPath, String outputPath, String filterGraph) throws IOException {
+        FFmpegBuilder builder = new FFmpegBuilder()
+                .setInput(inputPath)
+                .overrideOutputFiles(true)
+                .setComplexFilter(filterGraph)
+                .addOutput(outputPath)
+                .setFormat("gif")
+                .setStrict(FFmpegBuilder.Strict.NORMAL)
+                .done();
+        runTracked(inputPath, outputPath, builder);
+    }
+
+    /**
+     * 流式转换：输入通过 stdin 交给 ffmpeg，GIF 从 stdout 直接写到 output，不落临时文件。
+     * 两个方向各用一个固定大小的直接缓冲区，管道满时阻塞等待，内存占用与输入大小无关。
+     * 输入不可回退，MP4/MOV 需要 moov 在文件开头（faststart），否则 ffmpeg 会报错
+     *
+     * @param input          输入视频，由调用方关闭
+     * @param output         GIF 输出，由调用方关闭
+     * @param paletteOptions 调色板参数，为 null 时使用普通模式
+     */
+    public static void convertToGif(ReadableByteChannel input, WritableByteChannel output, Integer width, Integer height,
+                                    Double frameRate, PaletteOptions paletteOptions) throws IOException {
+        List<String> command = new ArrayList<>(Arrays.asList(ffmpegPath(), "-v", "error", "-i", "pipe:0", "-an"));
+        addGifOutputArgs(command, null, width, height, frameRate, paletteOptions, "pipe:1");
+        JobTracker tracker = ConversionMetrics.get().startJob("pipe:0");
+        boolean success = false;
+        long written = -1;
+        try (FfMpegProcess process = FfMpegProcess.start(command, tracker)) {
+            tracker.attach(process.getProcess());
+            process.feedStdin(input, PIPE_BUFFER_SIZE);
+            written = process.drainStdout(output, PIPE_BUFFER_SIZE);
+            process.waitForSuccess();
+            success = true;
+        } finally {
+            tracker.finish(success, written);
+        }
+    }
+
+    /**
+     * 直接启动 ffmpeg 时的输出参数，与文件转换使用相同的缩放、帧率和调色板设置
+     *
+     * @param preFilter 放在 fps、scale 之前的滤镜，为 null 时不加
+     * @param target    输出文件，pipe:1 为 stdout
+     */
+    private static void addGifOutputArgs(List<String> command, String preFilter, Integer width, Integer height,
+                                         Double frameRate, PaletteOptions paletteOptions, String target) {
+        if (paletteOptions != null) {
+            String graph = buildPaletteFilterGraph(width, height, frameRate, paletteOptions);
+            if (preFilter != null) {
+                graph = "[0:v]" + preFilter + "," + graph.substring("[0:v]".length());
+            }
+            command.addAll(Arrays.asList("-filter_complex", graph));
+        } else {
+            if (preFilter != null) {
+                command.addAll(Arrays.asList("-vf", preFilter));
+            }
+            if (width != null && height != null) {
+                command.addAll(Arrays.asList("-s", width + "x" + height));
+            }
+            if (frameRate != null) {
+                command.addAll(Arrays.asList("-r", frameRate.toString()));
+            }
+        }
+        command.addAll(Arrays.asList("-f", "gif", target));
+    }
+
+    /**
+     * 只转换 [startMicros, endMicros) 这一段。MP4/MOV 先从 stss/stts 读出关键帧索引，
+     * 输入端 -ss 定位到 startMicros 之前最近的关键帧，只解码从该关键帧到 endMicros 的 GOP，
+     * 再用 trim 精确裁掉关键帧到 startMicros 之间的帧；其他格式交给 ffmpeg 自己按关键帧定位
+     *
+     * @param endMicros      结束时间，小于等于 0 时转换到结尾
+     * @param paletteOptions 调色板参数，为 null 时使用普通模式
+     */
+    public static void convertToGifRange(String inputPath, String outputPath, long startMicros, long endMicros, Integer width,
+                                         Integer height, Double frameRate, PaletteOptions paletteOptions) throws IOException {
+        if (startMicros < 0 || (endMicros > 0 && endMicros <= startMicros)) {
+            throw new IllegalArgumentException("Invalid time range: " + startMicros + " - " + endMicros);
+        }
+        ConversionCache cache = conversionCache;
+        if (cache != null) {
+            String key = "range|" + startMicros + "|" + endMicros + "|" + width + "|" + height + "|" + frameRate + "|"
+                    + (paletteOptions == null ? "" : buildPaletteFilterGraph(width, height, frameRate, paletteOptions));
+            cache.convert(Paths.get(inputPath), Paths.get(outputPath), key,
+                    temp -> runRangeJob(inputPath, temp.toString(), startMicros, endMicros, width, height, frameRate, paletteOptions));
+        } else {
+            runRangeJob(inputPath, outputPath, startMicros, endMicros, width, height, frameRate, paletteOptions);
+        }
+    }
+
+    private static void runRangeJob(String inputPath, String outputPath, long startMicros, long endMicros, Integer width,
+                                    Integer height, Double frameRate, PaletteOptions paletteOptions) throws IOException {
+        KeyframeIndex index = Mp4MetadataReader.readKeyframeIndex(Paths.get(inputPath));
+        List<String> command = new ArrayList<>(Arrays.asList(ffmpegPath(), "-y", "-nostdin", "-v", "error"));
+        String trim = null;
+        long seekMicros = startMicros;
+        if (index != null && index.size() > 0) {
+            seekMicros = index.floor(startMicros);
+            // 定位后时间戳从 seekMicros 起算为 0，关键帧之后、起点之前的帧由 trim 丢掉
+            command.add("-noaccurate_seek");
+            if (startMicros > seekMicros) {
+                trim = "trim=start=" + toSeconds(startMicros - seekMicros) + ",setpts=PTS-STARTPTS";
+            }
+            LOGGER.debug("{}: seeking to keyframe at {}s for range starting at {}s", inputPath, toSeconds(seekMicros),
+                    toSeconds(startMicros));
+        }
+        if (seekMicros > 0) {
+            command.addAll(Arrays.asList("-ss", toSeconds(seekMicros)));
+        }
+        // 输入端 -t 让 ffmpeg 读到结束时间就停止，不再解码后面的内容
+        if (endMicros > 0) {
+            command.addAll(Arrays.asList("-t", toSeconds(endMicros - seekMicros)));
+        }
+        command.addAll(Arrays.asList("-i", inputPath, "-an"));
+        addGifOutputArgs(command, trim, width, height, frameRate, paletteOptions, outputPath);
+        JobTracker tracker = ConversionMetrics.get().startJob(inputPath);
+        boolean success = false;
+        try (FfMpegProcess process = FfMpegProcess.start(command, tracker)) {
+            tracker.attach(process.getProcess());
+            process.waitForSuccess();
+            success = true;
+        } finally {
+            File output = new File(outputPath);
+            tracker.finish(success, output.isFile() ? output.length() : -1);
+        }
+    }
+
+    /**
+     * 只转换 [startMicros, startMicros + durationMicros) 这一段并统计 GIF 字节数，输出直接丢弃。
+     * -ss 放在 -i 前面按关键帧快速定位，不需要解码前面的内容
+     *
+     * @return 这一段 GIF 的字节数
+     */
+    public static long measureGifExcerpt(String inputPath, long startMicros, long durationMicros, Integer width, Integer height,
+                                         Double frameRate, PaletteOptions paletteOptions) throws IOException {
+        List<String> command = new ArrayList<>(Arrays.asList(ffmpegPath(), "-nostdin", "-v", "error",
+                "-ss", toSeconds(startMicros), "-t", toSeconds(durationMicros), "-i", inputPath, "-an"));
+        addGifOutputArgs(command, null, width, height, frameRate, paletteOptions, "pipe:1");
+        try (FfMpegProcess process = FfMpegProcess.start(command)) {
+            long bytes = process.drainStdout(new DiscardChannel(), PIPE_BUFFER_SIZE);
+            process.waitForSuccess();
+            return bytes;
+        }
+    }
+
+    /**
+     * 输出不超过 maxBytes 的 GIF：先用 {@link SizeBudgetPlanner} 并发试转几个短片段估算每秒字节数，
+     * 在分辨率和帧率的候选组合里选出画质最高且估算不超限的一组，再完整转换一次
+     *
+     * @param width          宽度上限，为 null 时使用原视频宽度
+     * @param height         高度上限
+     * @param frameRate      帧率上限，为 null 时使用原视频帧率
+     * @param paletteOptions 调色板参数，为 null 时使用普通模式
+     * @return 选中的参数和估算大小
+     */
+    public static SizeBudgetPlan convertToGifWithinSize(String inputPath, String outputPath, long maxBytes, Integer width,
+                                                        Integer height, Double frameRate, PaletteOptions paletteOptions) throws IOException {
+        SizeBudgetPlan plan = new SizeBudgetPlanner(maxBytes).plan(inputPath, width, height, frameRate, paletteOptions);
+        if (paletteOptions != null) {
+            convertToGif(inputPath, outputPath, plan.getWidth(), plan.getHeight(), plan.getFrameRate(), paletteOptions);
+        } else {
+            convertToGif(inputPath, outputPath, plan.getWidth(), plan.getHeight(), plan.getFrameRate());
+        }
+        long actual = new File(outputPath).length();
+        if (actual > maxBytes) {
+            LOGGER.warn("{} is {} bytes, over the budget of {} bytes (estimated {})", outputPath, actual, maxBytes, plan.getEstimatedBytes());
+        }
+        return plan;
+    }
+
+    /**
+     * {@link #convertToGif(ReadableByteChannel, WritableByteChannel, Integer, Integer, Double, PaletteOptions)} 的流版本
+     */
+    public static void convertToGif(InputStream input, OutputStream output, Integer width, Integer height,
+                                    Double frameRate, PaletteOptions paletteOptions) throws IOException {
+        convertToGif(Channels.newChannel(input), Channels.newChannel(output), width, height, frameRate, paletteOptions);
+        output.flush();
+    }
+
+    // 构建调色板滤镜图，先降帧率再缩放，减少缩放的帧数
+    public static String buildPaletteFilterGraph(Integer width, Integer height, Double frameRate, PaletteOptions paletteOptions) {
+        return "[0:v]" + framePrefix(width, height, frameRate, paletteOptions) + "split[frames][stats];[stats]"
+                + paletteGenFilter(paletteOptions) + "[palette];[frames][palette]" + paletteUseFilter(paletteOptions);
+    }
+
+    // 调色板统计和输出共用的 fps、scale、mpdecimate，每一项以逗号结尾，没有时为空串
+    private static String framePrefix(Integer width, Integer height, Double frameRate, PaletteOptions paletteOptions) {
+        StringBuilder filter = new StringBuilder();
+        if (frameRate != null) {
+            filter.append("fps=").append(frameRate).append(',');
+        }
+        if (width != null && height != null) {
+            filter.append("scale=").append(width).append(':').append(height).append(":flags=lanczos,");
+        }
+        if (paletteOptions.isDropDuplicateFrames()) {
+            // 放在 split 之前，重复帧既不参与调色板统计也不输出
+            filter.append("mpdecimate,");
+        }
+        return filter.toString();
+    }
+
+    private static String paletteGenFilter(PaletteOptions paletteOptions) {
+        StringBuilder filter = new StringBuilder();
+        PaletteOptions.StatsMode statsMode = paletteOptions.getStatsMode();
+        if (paletteOptions.getStatsWindowSeconds() != null && statsMode != PaletteOptions.StatsMode.SINGLE) {
+            filter.append("trim=duration=").append(paletteOptions.getStatsWindowSeconds()).append(',');
+        }
+        return filter.append("palettegen=max_colors=").append(paletteOptions.getMaxColors())
+                .append(":stats_mode=").append(statsMode.filterValue()).toString();
+    }
+
+    private static String paletteUseFilter(PaletteOptions paletteOptions) {
+        StringBuilder filter = new StringBuilder("paletteuse=dither=").append(paletteOptions.getDither().filterValue());
+        if (paletteOptions.getStatsMode() == PaletteOptions.StatsMode.SINGLE) {
+            filter.append(":new=1");
+        } else if (paletteOptions.getStatsMode() == PaletteOptions.StatsMode.DIFF) {
+            filter.append(":diff_mode=rectangle");
+        }
+        return filter.toString();
+    }
+
+    /**
+     * 把时间轴切成 segments 段并发转换，再按字节拼接成一个 GIF（{@link GifStitcher}），适合多分钟的长视频。
+     * 先用与 {@link #convertToGif(String, String, Integer, Integer, Double, PaletteOptions)} 相同的统计参数生成一个共用的调色板，
+     * 各段都用它和相同的 paletteuse 参数输出，拼接时不需要重新编码。调色板统计只解码一遍，
+     * 耗时主要在各段的 paletteuse 和 GIF 编码（ffmpeg 里都是单线程），分段后这部分并行。
+     * 开启转换结果缓存时同样经过缓存；整个任务作为一个 {@link JobTracker} 统计，进度为各段之和。
+     * {@link PaletteOptions.StatsMode#SINGLE} 每帧一个调色板、不能共用，按普通调色板模式整段转换
+     *
+     * @param paletteOptions 调色板参数，为 null 时使用默认值
+     * @param segments       分段数，过短的视频会自动减少段数
+     */
+    public static void convertToGifSegmented(String inputPath, String outputPath, Integer width, Integer height, Double frameRate,
+                                             PaletteOptions paletteOptions, int segments) throws IOException {
+        PaletteOptions options = paletteOptions == null ? new PaletteOptions() : paletteOptions;
+        if (options.getStatsMode() == PaletteOptions.StatsMode.SINGLE) {
+            convertToGif(inputPath, outputPath, width, height, frameRate, options);
+            return;
+        }
+        ConversionCache cache = conversionCache;
+        if (cache != null) {
+            cache.convert(Paths.get(inputPath), Paths.get(outputPath),
+                    "segmented|" + segments + "|" + buildPaletteFilterGraph(width, height, frameRate, options),
+                    temp -> runSegmentedJob(inputPath, temp.toString(), width, height, frameRate, options, segments));
+        } else {
+            runSegmentedJob(inputPath, outputPath, width, height, frameRate, options, segments);
+        }
+    }
+
+    private static void runSegmentedJob(String inputPath, String outputPath, Integer width, Integer height, Double frameRate,
+                                        PaletteOptions options, int segments) throws IOException {
+        long durationMicros = readVideoInfo(inputPath).getDurationMicros();
+        int segmentCount = (int) Math.min(segments, durationMicros / MIN_SEGMENT_MICROS);
+        if (segmentCount < 2) {
+            runPaletteJob(inputPath, outputPath, buildPaletteFilterGraph(width, height, frameRate, options));
+            return;
+        }
+        JobTracker tracker = ConversionMetrics.get().startJob(inputPath);
+        boolean success = false;
+        Path workDir = Files.createTempDirectory("gif-segments");
+        ExecutorService pool = Executors.newFixedThreadPool(segmentCount);
+        try {
+            String prefix = framePrefix(width, height, frameRate, options);
+            Path palette = workDir.resolve("palette.png");
+            runFfmpeg(Arrays.asList(ffmpegPath(), "-y", "-nostdin", "-v", "error", "-i", inputPath,
+                    "-an", "-vf", prefix + paletteGenFilter(options), palette.toString()));
+            String filter = "[0:v]" + prefix + "null[frames];[frames][1:v]" + paletteUseFilter(options);
+            SegmentProgress progress = new SegmentProgress(tracker, segmentCount);
+            List<Path> parts = new ArrayList<>(segmentCount);
+            List<Future<?>> futures = new ArrayList<>(segmentCount);
+            for (int i = 0; i < segmentCount; i++) {
+                long start = durationMicros * i / segmentCount;
+                long end = durationMicros * (i + 1) / segmentCount;
+                Path part = workDir.resolve("part-" + i + ".gif");
+                parts.add(part);
+                // 最后一段不限时长，避免时长取整丢掉结尾的帧
+                List<String> command = new ArrayList<>(Arrays.asList(ffmpegPath(), "-y", "-nostdin", "-v", "error",
+                        "-ss", toSeconds(start)));
+                if (i < segmentCount - 1) {
+                    command.addAll(Arrays.asList("-t", toSeconds(end - start)));
+                }
+                command.addAll(Arrays.asList("-i", inputPath, "-i", palette.toString(), "-an",
+                        "-filter_complex", filter, "-f", "gif", part.toString()));
+                int index = i;
+                futures.add(pool.submit(() -> {
+                    try (FfMpegProcess process = FfMpegProcess.start(command, p -> progress.update(index, p))) {
+                        tracker.attach(process.getProcess());
+                        process.waitForSuccess();
                     }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while converting segments", ie);
+                } catch (ExecutionException ee) {
+                    throw new IOException("Failed to convert segment: " + ee.getCause().getMessage(), ee.getCause());
                 }
+            }
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputPath), 1 << 16)) {
+                new GifStitcher().stitch(parts, out);
+            }
+            success = true;
+        } finally {
+            pool.shutdownNow();
+            deleteRecursively(workDir);
+            File output = new File(outputPath);
+            tracker.finish(success, output.isFile() ? output.length() : -1);
+        }
+    }
+
+    /**
+     * 汇总各段的最新进度：帧数、输出时长、字节数、解码帧率和速度相加后交给整个任务的 tracker
+     */
+    private static final class SegmentProgress {
+        private final JobTracker tracker;
+        private final Progress[] latest;
 
+        SegmentProgress(JobTracker tracker, int segments) {
+            this.tracker = tracker;
+            this.latest = new Progress[segments];
+        }
+
+        // 各段在自己的 stderr 线程上回调，加锁保证交给 tracker 的汇总不会倒退
+        synchronized void update(int segment, Progress progress) {
+            latest[segment] = progress;
+            Progress total = new Progress();
+            double fps = 0;
+            for (Progress p : latest) {
+                if (p != null) {
+                    total.frame += p.frame;
+                    total.out_time_ns += p.out_time_ns;
+                    total.total_size += p.total_size;
+                    total.speed += p.speed;
+                    fps += p.fps == null ? 0 : p.fps.doubleValue();
+                }
             }
+            total.fps = Fraction.getFraction(fps);
+            tracker.progress(total);
         }
-        throw new IllegalArgumentException("can not read video info");
-    }
-
-//    public static void extractFfpmgExe(String jarPath) throws IOException {
-//        File jarFile = new File(jarPath);
-//        String destDir = jarFile.getParent();
-//        ZipInputStream zipIn = new ZipInputStream(Files.newInputStream(jarFile.toPath()));
-//        ZipEntry entry = zipIn.getNextEntry();
-//        while (entry != null) {
-//            if (entry.getName().equals("ffmpeg.exe")) {
-//                File destFile = new File(destDir, "ffmpeg.exe");
-//                try (BufferedOutputStream bos = new BufferedOutputStream(Files.newOutputStream(destFile.toPath()))) {
-//                    byte[] bytesIn = new byte[4096];
-//                    int read = 0;
-//                    while ((read = zipIn.read(bytesIn)) != -1) {
-//                        bos.write(bytesIn, 0, read);
-//                    }
-//                }
-//                break;
-//            }
-//            zipIn.closeEntry();
-//            entry = zipIn.getNextEntry();
-//        }
-//    }
-
-    public static void extractFfpmgExeFromZip(String zipFilePath) throws IOException {
-        File zipFile = new File(zipFilePath);
-        String destDir = zipFile.getParent();
-        try (ZipInputStream zipIn = new ZipInputStream(new FileInputStream(zipFile))) {
-            ZipEntry entry = zipIn.getNextEntry();
-
-            // 遍历 ZIP 文件内的所有条目
-            while (entry != null) {
-                if (entry.getName().equals("ffmpeg.exe")) {
-                    // 找到匹配的文件，提取它
-                    File destFile = new File(destDir, entry.getName());
-                    extractFile(zipIn, destFile);
-                    break;
+    }
+
+    private static void runFfmpeg(List<String> command) throws IOException {
+        try (FfMpegProcess process = FfMpegProcess.start(command)) {
+            process.waitForSuccess();
+        }
+    }
+
+    private static String toSeconds(long micros) {
+        return String.format(Locale.ROOT, "%.6f", micros / 1_000_000.0);
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException ioe) {
+            LOGGER.warn("Can not clean temp dir {}: {}", dir, ioe.getMessage());
+        }
+    }
+
+    /**
+     * ffmpeg 只负责解码，GIF 由 Java 端 {@link ParallelGifEncoder} 多线程编码
+     *
+     * @param quantizer 调色板量化，为 null 时每帧用中位切分生成局部调色板
+     * @param threads   编码线程数
+     */
+    public static void convertToGifInJava(String inputPath, String outputPath, Integer width, Integer height, Double frameRate,
+                                          FrameQuantizer quantizer, int threads) throws IOException {
+        convertToGifInJava(inputPath, outputPath, width, height, frameRate, quantizer, threads, false);
+    }
+
+    /**
+     * @param deltaFrames 每帧只编码相对上一帧变化的矩形，适合录屏等大部分画面静止的视频
+     */
+    public static void convertToGifInJava(String inputPath, String outputPath, Integer width, Integer height, Double frameRate,
+                                          FrameQuantizer quantizer, int threads, boolean deltaFrames) throws IOException {
+        convertToGifInJava(inputPath, outputPath, width, height, frameRate,
+                new EncoderOptions().setQuantizer(quantizer).setThreads(threads).setDeltaFrames(deltaFrames));
+    }
+
+    /**
+     * 与 ffmpeg 编码一样先写临时文件，成功后再改名到 outputPath，失败时不留下不完整的 GIF。
+     * 开启转换结果缓存时经过缓存；指定了自定义量化器时无法用参数标识结果，不经过缓存
+     *
+     * @param options 编码参数；未指定量化器时使用中位切分（逐帧或第一帧生成的全局调色板），差分帧时最多 255 色，留一个透明色
+     * @see ParallelGifEncoder
+     * @see DuplicateFrameFilter
+     */
+    public static void convertToGifInJava(String inputPath, String outputPath, Integer width, Integer height, Double frameRate,
+                                          EncoderOptions options) throws IOException {
+        ConversionCache cache = conversionCache;
+        if (cache != null && options.getQuantizer() == null) {
+            String key = "java|" + width + "|" + height + "|" + frameRate + "|" + options.isDeltaFrames() + "|"
+                    + options.getDuplicateThreshold() + "|" + options.getDither() + "|" + options.isGlobalPalette();
+            cache.convert(Paths.get(inputPath), Paths.get(outputPath), key,
+                    temp -> runJavaJob(inputPath, temp.toString(), width, height, frameRate, options));
+        } else {
+            writeThenMove(Paths.get(outputPath), temp -> runJavaJob(inputPath, temp.toString(), width, height, frameRate, options));
+        }
+    }
+
+    /**
+     * 在 output 旁边的临时文件里生成结果，成功后改名替换 output，失败时删除临时文件
+     */
+    private static void writeThenMove(Path output, ConversionCache.Converter converter) throws IOException {
+        Path temp = output.resolveSibling(output.getFileName() + ".tmp-" + UUID.randomUUID());
+        try {
+            converter.convert(temp);
+            try {
+                Files.move(temp, output, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void runJavaJob(String inputPath, String outputPath, Integer width, Integer height, Double frameRate,
+                                   EncoderOptions options) throws IOException {
+        if (width == null || height == null || frameRate == null) {
+            VideoInfo videoInfo = readVideoInfo(inputPath);
+            if (width == null || height == null) {
+                width = videoInfo.getWidth();
+                height = videoInfo.getHeight();
+            }
+            if (frameRate == null) {
+                frameRate = videoInfo.getFrameRate();
+            }
+        }
+        boolean deltaFrames = options.isDeltaFrames();
+        int maxColors = deltaFrames ? 255 : 256;
+        DuplicateFrameFilter duplicateFilter = options.getDuplicateThreshold() == null ? null
+                : new DuplicateFrameFilter(width, height, options.getDuplicateThreshold());
+        long dropped = 0;
+        JobTracker tracker = ConversionMetrics.get().startJob(inputPath);
+        boolean success = false;
+        try (FfMpegProcess decoder = startRawVideoDecode(inputPath, width, height, frameRate)) {
+            tracker.attach(decoder.getProcess());
+            RawFrameReader reader = new RawFrameReader(new BufferedInputStream(decoder.getInputStream(), 1 << 16), width, height);
+            FrameQuantizer quantizer = options.getQuantizer();
+            // 全局调色板要写在文件头里，先读出第一帧生成调色板，再创建编码器
+            int[] firstFrame = null;
+            if (quantizer == null && options.isGlobalPalette()) {
+                firstFrame = new int[width * height];
+                if (reader.read(firstFrame)) {
+                    quantizer = FixedPaletteQuantizer.fromSample(firstFrame, firstFrame.length, maxColors,
+                            options.getDither(), options.getThreads());
+                } else {
+                    firstFrame = null;
                 }
-                zipIn.closeEntry();
-                entry = zipIn.getNextEntry();
             }
+            if (quantizer == null) {
+                quantizer = new MedianCutQuantizer(maxColors, options.getDither(), options.getThreads());
+            }
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputPath), 1 << 16);
+                 ParallelGifEncoder encoder = new ParallelGifEncoder(out, width, height, quantizer, options.getThreads(), deltaFrames)) {
+                FrameTiming timing = new FrameTiming(frameRate);
+                EncodeProgress progress = new EncodeProgress(tracker, frameRate);
+                while (true) {
+                    int[] frame = encoder.frameBuffer();
+                    if (firstFrame != null) {
+                        System.arraycopy(firstFrame, 0, frame, 0, firstFrame.length);
+                        firstFrame = null;
+                    } else if (!reader.read(frame)) {
+                        break;
+                    }
+                    progress.frameRead();
+                    int delayCs = timing.nextDelay();
+                    // 重复帧不提交，缓冲留给下一帧复用，显示时长并入上一个保留帧
+                    if (duplicateFilter != null && duplicateFilter.isDuplicate(frame) && encoder.extendLastFrame(delayCs)) {
+                        dropped++;
+                        continue;
+                    }
+                    encoder.submitFrame(delayCs);
+                }
+                encoder.finish();
+                progress.report();
+            }
+            decoder.waitForSuccess();
+            success = true;
+        } finally {
+            File output = new File(outputPath);
+            tracker.finish(success, output.isFile() ? output.length() : -1);
+        }
+        if (dropped > 0) {
+            LOGGER.debug("Dropped {} near-duplicate frames of {}", dropped, inputPath);
         }
     }
 
-    private static void extractFile(ZipInputStream zipIn, File destFile) throws IOException {
-        try (BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(destFile))) {
-            byte[] bytesIn = new byte[4096];
-            int read;
-            while ((read = zipIn.read(bytesIn)) != -1) {
-                bos.write(bytesIn, 0, read);
+    /**
+     * Java 编码没有 ffmpeg 的 -progress 输出，按读到的帧数自己生成进度，约每秒视频报告一次，结束时再报告一次
+     */
+    private static final class EncodeProgress {
+        private final JobTracker tracker;
+        private final double frameRate;
+        private final long interval;
+        private final long startNanos = System.nanoTime();
+        private long frames;
+
+        EncodeProgress(JobTracker tracker, double frameRate) {
+            this.tracker = tracker;
+            this.frameRate = frameRate;
+            this.interval = Math.max(1, Math.round(frameRate));
+        }
+
+        void frameRead() {
+            if (++frames % interval == 0) {
+                report();
+            }
+        }
+
+        void report() {
+            if (frames == 0) {
+                return;
             }
+            double elapsedSeconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+            double videoSeconds = frames / frameRate;
+            Progress progress = new Progress();
+            progress.frame = frames;
+            progress.fps = Fraction.getFraction(frames / elapsedSeconds);
+            progress.out_time_ns = (long) (videoSeconds * 1e9);
+            progress.speed = (float) (videoSeconds / elapsedSeconds);
+            progress.status = Progress.Status.CONTINUE;
+            tracker.progress(progress);
         }
     }
 
-    public static void extractFfmpegExeFromJar(String jarFilePath) throws IOException {
-        File jarFile = new File(jarFilePath);
+    /**
+     * 预览用：-ss 放在 -i 前快速定位，加 -noaccurate_seek 和 -skip_frame nokey 后只解码 atMicros 之前最近的一个关键帧，
+     * 缩放到很小的尺寸输出一帧 rgb24，通常几十毫秒内完成
+     */
+    public static FfMpegProcess startKeyframeDecode(String inputPath, long atMicros, int width, int height) throws IOException {
+        return FfMpegProcess.start(Arrays.asList(ffmpegPath(), "-nostdin", "-v", "error", "-skip_frame", "nokey",
+                "-noaccurate_seek", "-ss", toSeconds(atMicros), "-i", inputPath, "-an", "-frames:v", "1",
+                "-vf", "scale=" + width + ":" + height + ":flags=fast_bilinear", "-f", "rawvideo", "-pix_fmt", "rgb24", "pipe:1"));
+    }
 
-        String destDir = jarFile.getParent();
-        try (ZipInputStream jarZipIn = new ZipInputStream(Files.newInputStream(jarFile.toPath()))) {
-            ZipEntry entry = jarZipIn.getNextEntry();
-            while (entry != null) {
-                if (entry.getName().equals("ffmpeg.zip")) {
-                    File tempZipFile = File.createTempFile("ffmpeg", ".zip");
-                    try (FileOutputStream out = new FileOutputStream(tempZipFile)) {
-                        byte[] buffer = new byte[4096];
-                        int length;
-                        while ((length = jarZipIn.read(buffer)) > 0) {
-                            out.write(buffer, 0, length);
-                        }
-                    }
-                    try (ZipInputStream ffmpegZipIn = new ZipInputStream(Files.newInputStream(tempZipFile.toPath()))) {
-                        ZipEntry ffmpegEntry = ffmpegZipIn.getNextEntry();
-
-                        // 假设 ffmpeg.zip 内只有一个文件，直接提取它
-                        if (ffmpegEntry != null && ffmpegEntry.getName().equals("ffmpeg.exe")) {
-                            File destFile = new File(destDir, ffmpegEntry.getName());
-                            extractFile(ffmpegZipIn, destFile);
-                        }
-                        ffmpegZipIn.closeEntry();
-                    } finally {
-                        tempZipFile.delete(); // 删除临时文件
+    /**
+     * 胶片条用：一个进程按 count/时长 的帧率均匀抽出 count 张缩略图，第 i 张对应 i * durationMicros / count，
+     * 以 rgb24 原始帧写到 stdout。间隔超过 {@link #KEYFRAME_ONLY_INTERVAL_MICROS} 时只解码关键帧，
+     * 每张取最近的关键帧，长视频不必解码全部帧
+     */
+    public static FfMpegProcess startThumbnailDecode(String inputPath, int count, long durationMicros, int width, int height) throws IOException {
+        List<String> command = new ArrayList<>(Arrays.asList(ffmpegPath(), "-nostdin", "-v", "error"));
+        if (durationMicros / count >= KEYFRAME_ONLY_INTERVAL_MICROS) {
+            command.addAll(Arrays.asList("-skip_frame", "nokey"));
+        }
+        command.addAll(Arrays.asList("-i", inputPath, "-an",
+                "-vf", "fps=" + count + "/" + toSeconds(durationMicros) + ",scale=" + width + ":" + height + ":flags=fast_bilinear",
+                "-frames:v", Integer.toString(count), "-f", "rawvideo", "-pix_fmt", "rgb24", "pipe:1"));
+        return FfMpegProcess.start(command);
+    }
+
+    /**
+     * 启动 ffmpeg 把视频解码成 rgb24 原始帧输出到 stdout，帧尺寸固定为 width x height
+     */
+    public static FfMpegProcess startRawVideoDecode(String inputPath, int width, int height, Double frameRate) throws IOException {
+        List<String> command = new ArrayList<>(Arrays.asList(ffmpegPath(), "-nostdin", "-v", "error", "-i", inputPath, "-an"));
+        StringBuilder filter = new StringBuilder();
+        if (frameRate != null) {
+            filter.append("fps=").append(frameRate).append(',');
+        }
+        filter.append("scale=").append(width).append(':').append(height).append(":flags=lanczos");
+        command.addAll(Arrays.asList("-vf", filter.toString(), "-f", "rawvideo", "-pix_fmt", "rgb24", "pipe:1"));
+        return FfMpegProcess.start(command);
+    }
+
+    // 读取视频参数，同一文件未变化时直接返回缓存结果
+    public static VideoInfo readVideoInfo(String videoPath) throws IOException {
+        return VIDEO_INFO_CACHE.get(Paths.get(videoPath), FfMpegUtils::probeVideoInfo);
+    }
+
+    private static VideoInfo probeVideoInfo(Path videoPath) throws IOException {
+        // 先尝试直接解析 MP4/MOV，不支持的容器再交给 ffmpeg
+        VideoInfo videoInfo = Mp4MetadataReader.read(videoPath);
+        if (videoInfo != null) {
+            return videoInfo;
+        }
+        return probeWithFfmpeg(videoPath.toString());
+    }
+
+    private static VideoInfo probeWithFfmpeg(String videoPath) throws IOException {
+        // 构建 ffmpeg 命令
+        // 只读文件头，不需要线程预算，但和其他 ffmpeg 一样占用进程名额
+        FfMpegGovernor.Lease lease = FfMpegGovernor.shared().acquire();
+        Process process;
+        try {
+            ProcessBuilder processBuilder = new ProcessBuilder(ffmpegPath(), "-nostdin", "-hide_banner", "-i", videoPath);
+            processBuilder.redirectErrorStream(true);
+            process = processBuilder.start();
+        } catch (IOException | RuntimeException e) {
+            lease.close();
+            throw e;
+        }
+        // 读取 ffmpeg 的 stderr（ffmpeg 把视频信息写在 stderr），读到结尾再退出，避免子进程阻塞在写管道上
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            long durationMicros = 0;
+            VideoInfo videoInfo = null;
+            while ((line = reader.readLine()) != null) {
+                if (videoInfo != null) {
+                    continue;
+                }
+                // 时长在 Video 行之前输出，如 "Duration: 00:01:23.45"
+                Matcher durationMatcher = DURATION_PATTERN.matcher(line);
+                if (durationMatcher.find()) {
+                    durationMicros = (Long.parseLong(durationMatcher.group(1)) * 3600 + Long.parseLong(durationMatcher.group(2)) * 60) * 1_000_000L
+                            + Math.round(Double.parseDouble(durationMatcher.group(3)) * 1_000_000);
+                }
+                if (line.contains("Video:")) {
+                    // 查找分辨率和帧率
+                    Matcher resolutionMatcher = RESOLUTION_PATTERN.matcher(line);
+                    Matcher frameRateMatcher = FRAME_RATE_PATTERN.matcher(line);
+                    if (resolutionMatcher.find() && frameRateMatcher.find()) {
+                        int width = Integer.parseInt(resolutionMatcher.group(1));
+                        int height = Integer.parseInt(resolutionMatcher.group(2));
+                        double frameRate = Double.parseDouble(frameRateMatcher.group(1));
+                        videoInfo = new VideoInfo(width, height, frameRate, durationMicros);
                     }
-                    break;
                 }
-                jarZipIn.closeEntry();
-                entry = jarZipIn.getNextEntry();
             }
+            if (videoInfo == null) {
+                throw new IllegalArgumentException("can not read video info");
+            }
+            return videoInfo;
+        } finally {
+            process.destroy();
+            lease.close();
+        }
+    }
+
+    // 只计数不保存的输出
+    private static class DiscardChannel implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
         }
     }
 }
@@ -0,0 +1,17 @@
+package org.jugo.utils;
+
+public class HexUtils {
+    private HexUtils() {
+    }
+
+    /**
+     * 字节数组转小写十六进制字符串，用于摘要、令牌等
+     */
+    public static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit(b >> 4 & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
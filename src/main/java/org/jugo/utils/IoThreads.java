@@ -0,0 +1,91 @@
+package org.jugo.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 子进程管道读写、HTTP 连接等阻塞 I/O 使用的线程。
+ * 运行在 Java 21 及以上时通过反射使用虚拟线程，阻塞在管道上不占用平台线程；更早的版本退回守护平台线程。
+ * 系统属性 gifparser.virtualThreads=false 可以关闭虚拟线程
+ */
+public final class IoThreads {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IoThreads.class);
+    public static final String VIRTUAL_THREADS_PROPERTY = "gifparser.virtualThreads";
+
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_START;
+    private static final Method NEW_VIRTUAL_EXECUTOR;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderStart = null;
+        Method newVirtualExecutor = null;
+        if (!"false".equalsIgnoreCase(System.getProperty(VIRTUAL_THREADS_PROPERTY))) {
+            try {
+                ofVirtual = Thread.class.getMethod("ofVirtual");
+                Class<?> builder = Class.forName("java.lang.Thread$Builder");
+                builderName = builder.getMethod("name", String.class);
+                builderStart = builder.getMethod("start", Runnable.class);
+                newVirtualExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            } catch (ReflectiveOperationException e) {
+                ofVirtual = null;
+            }
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_START = builderStart;
+        NEW_VIRTUAL_EXECUTOR = newVirtualExecutor;
+        LOGGER.debug("I/O threads: {}", OF_VIRTUAL != null ? "virtual" : "platform");
+    }
+
+    private IoThreads() {
+    }
+
+    public static boolean isVirtual() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * 启动一个 I/O 线程，平台线程时为守护线程
+     */
+    public static Thread start(String name, Runnable task) {
+        if (OF_VIRTUAL != null) {
+            try {
+                Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name);
+                return (Thread) BUILDER_START.invoke(builder, task);
+            } catch (ReflectiveOperationException e) {
+                LOGGER.debug("Can not start virtual thread: {}", e.getMessage());
+            }
+        }
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * 每个任务一个线程的执行器，虚拟线程不可用时为守护线程的缓存线程池
+     */
+    public static ExecutorService newExecutor(String namePrefix) {
+        if (NEW_VIRTUAL_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                LOGGER.debug("Can not create virtual thread executor: {}", e.getMessage());
+            }
+        }
+        AtomicInteger index = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, namePrefix + "-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,348 @@
+package org.jugo.utils;
+
+import org.jugo.model.KeyframeIndex;
+import org.jugo.model.VideoInfo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 不启动进程直接解析 MP4/MOV（ISO-BMFF）的视频参数。
+ * 顶层 box 用定位读取逐个跳过，只把 moov 映射进内存，
+ * 然后沿 moov/trak/mdia 找到视频轨，从 stsd、mdhd、stts 读出宽高、时长和帧数，
+ * 或从 stss、stts、ctts 读出关键帧索引
+ */
+public class Mp4MetadataReader {
+    private static final int TYPE_FTYP = fourCc("ftyp");
+    private static final int TYPE_MOOV = fourCc("moov");
+    private static final int TYPE_TRAK = fourCc("trak");
+    private static final int TYPE_TKHD = fourCc("tkhd");
+    private static final int TYPE_MDIA = fourCc("mdia");
+    private static final int TYPE_MDHD = fourCc("mdhd");
+    private static final int TYPE_HDLR = fourCc("hdlr");
+    private static final int TYPE_MINF = fourCc("minf");
+    private static final int TYPE_STBL = fourCc("stbl");
+    private static final int TYPE_STSD = fourCc("stsd");
+    private static final int TYPE_STTS = fourCc("stts");
+    private static final int TYPE_STSS = fourCc("stss");
+    private static final int TYPE_CTTS = fourCc("ctts");
+    private static final int TYPE_EDTS = fourCc("edts");
+    private static final int TYPE_ELST = fourCc("elst");
+    private static final int HANDLER_VIDE = fourCc("vide");
+    // moov 超过这个大小时不再映射，交给 ffmpeg 处理
+    private static final long MAX_MOOV_SIZE = 256L * 1024 * 1024;
+
+    private Mp4MetadataReader() {
+    }
+
+    /**
+     * @return 视频参数；不是 ISO-BMFF、没有视频轨或是分片 MP4 时返回 null
+     */
+    public static VideoInfo read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer moov = mapMoov(channel);
+            return moov == null ? null : parseMoov(moov);
+        } catch (RuntimeException re) {
+            // 文件结构损坏导致越界等问题时交给 ffmpeg
+            return null;
+        }
+    }
+
+    /**
+     * 从视频轨的 stss（同步样本）和 stts（样本时长）算出每个关键帧的显示时间，
+     * 有 ctts 时加上合成时间偏移，有编辑列表时减去起始的 media_time，与 ffmpeg 的时间轴一致
+     *
+     * @return 关键帧索引；不是 ISO-BMFF、没有视频轨或是分片 MP4 时返回 null
+     */
+    public static KeyframeIndex readKeyframeIndex(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer moov = mapMoov(channel);
+            if (moov == null) {
+                return null;
+            }
+            moov.order(ByteOrder.BIG_ENDIAN);
+            int pos = 0;
+            int end = moov.limit();
+            while ((pos = findBox(moov, pos, end, TYPE_TRAK)) >= 0) {
+                int trakEnd = pos + moov.getInt(pos);
+                KeyframeIndex index = parseKeyframes(moov, pos + 8, trakEnd);
+                if (index != null) {
+                    return index;
+                }
+                pos = trakEnd;
+            }
+            return null;
+        } catch (RuntimeException re) {
+            return null;
+        }
+    }
+
+    // 逐个跳过顶层 box，只把 moov 的内容映射进内存，找不到或结构不对时返回 null
+    private static ByteBuffer mapMoov(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(16);
+        long offset = 0;
+        boolean first = true;
+        while (offset + 8 <= fileSize) {
+            header.clear();
+            readFully(channel, header, offset);
+            header.flip();
+            long size = header.getInt() & 0xffffffffL;
+            int type = header.getInt();
+            int headerSize = 8;
+            if (size == 1) {
+                size = header.getLong();
+                headerSize = 16;
+            } else if (size == 0) {
+                size = fileSize - offset;
+            }
+            if (first && type != TYPE_FTYP && type != TYPE_MOOV) {
+                return null;
+            }
+            first = false;
+            if (size < headerSize || offset + size > fileSize) {
+                return null;
+            }
+            if (type == TYPE_MOOV) {
+                if (size > MAX_MOOV_SIZE) {
+                    return null;
+                }
+                return channel.map(FileChannel.MapMode.READ_ONLY, offset + headerSize, size - headerSize);
+            }
+            offset += size;
+        }
+        return null;
+    }
+
+    private static VideoInfo parseMoov(ByteBuffer moov) {
+        moov.order(ByteOrder.BIG_ENDIAN);
+        int pos = 0;
+        int end = moov.limit();
+        while ((pos = findBox(moov, pos, end, TYPE_TRAK)) >= 0) {
+            int trakEnd = pos + moov.getInt(pos);
+            VideoInfo info = parseVideoTrak(moov, pos + 8, trakEnd);
+            if (info != null) {
+                return info;
+            }
+            pos = trakEnd;
+        }
+        return null;
+    }
+
+    private static VideoInfo parseVideoTrak(ByteBuffer buf, int start, int end) {
+        int mdia = findVideoMdia(buf, start, end);
+        if (mdia < 0) {
+            return null;
+        }
+        int mdiaEnd = mdia + buf.getInt(mdia);
+        int mdhd = findBox(buf, mdia + 8, mdiaEnd, TYPE_MDHD);
+        if (mdhd < 0) {
+            return null;
+        }
+        long timescale;
+        long duration;
+        if (buf.get(mdhd + 8) == 1) {
+            timescale = buf.getInt(mdhd + 28) & 0xffffffffL;
+            duration = buf.getLong(mdhd + 32);
+        } else {
+            timescale = buf.getInt(mdhd + 20) & 0xffffffffL;
+            duration = buf.getInt(mdhd + 24) & 0xffffffffL;
+        }
+        int stbl = findStbl(buf, mdia);
+        if (timescale == 0 || stbl < 0) {
+            return null;
+        }
+        int stblEnd = stbl + buf.getInt(stbl);
+        int width = 0;
+        int height = 0;
+        int stsd = findBox(buf, stbl + 8, stblEnd, TYPE_STSD);
+        // stsd: header(8) version/flags(4) entry_count(4)，视觉样本条目的宽高在条目起始 +32 处
+        if (stsd >= 0 && buf.getInt(stsd + 12) > 0) {
+            int entry = stsd + 16;
+            width = buf.getShort(entry + 32) & 0xffff;
+            height = buf.getShort(entry + 34) & 0xffff;
+        }
+        if (width == 0 || height == 0) {
+            int tkhd = findBox(buf, start, end, TYPE_TKHD);
+            if (tkhd >= 0) {
+                // tkhd 末尾是 16.16 定点的宽高
+                int tkhdEnd = tkhd + buf.getInt(tkhd);
+                width = buf.getInt(tkhdEnd - 8) >>> 16;
+                height = buf.getInt(tkhdEnd - 4) >>> 16;
+            }
+        }
+        int stts = findBox(buf, stbl + 8, stblEnd, TYPE_STTS);
+        if (stts < 0 || width == 0 || height == 0) {
+            return null;
+        }
+        int entryCount = buf.getInt(stts + 12);
+        long frameCount = 0;
+        long totalDelta = 0;
+        for (int i = 0, p = stts + 16; i < entryCount; i++, p += 8) {
+            long count = buf.getInt(p) & 0xffffffffL;
+            frameCount += count;
+            totalDelta += count * (buf.getInt(p + 4) & 0xffffffffL);
+        }
+        if (frameCount == 0 || totalDelta == 0) {
+            return null; // 分片 MP4 的样本表在 moof 里
+        }
+        double frameRate = Math.round(frameCount * timescale * 100.0 / totalDelta) / 100.0;
+        long durationMicros = (duration > 0 ? duration : totalDelta) * 1_000_000L / timescale;
+        return new VideoInfo(width, height, frameRate, durationMicros, frameCount);
+    }
+
+    private static KeyframeIndex parseKeyframes(ByteBuffer buf, int start, int end) {
+        int mdia = findVideoMdia(buf, start, end);
+        if (mdia < 0) {
+            return null;
+        }
+        int mdhd = findBox(buf, mdia + 8, mdia + buf.getInt(mdia), TYPE_MDHD);
+        int stbl = findStbl(buf, mdia);
+        if (mdhd < 0 || stbl < 0) {
+            return null;
+        }
+        long timescale = buf.getInt(mdhd + (buf.get(mdhd + 8) == 1 ? 28 : 20)) & 0xffffffffL;
+        int stblEnd = stbl + buf.getInt(stbl);
+        int stts = findBox(buf, stbl + 8, stblEnd, TYPE_STTS);
+        if (timescale == 0 || stts < 0) {
+            return null;
+        }
+        int sttsCount = buf.getInt(stts + 12);
+        long sampleCount = 0;
+        long totalDelta = 0;
+        for (int i = 0, p = stts + 16; i < sttsCount; i++, p += 8) {
+            long count = buf.getInt(p) & 0xffffffffL;
+            sampleCount += count;
+            totalDelta += count * (buf.getInt(p + 4) & 0xffffffffL);
+        }
+        if (sampleCount == 0 || sampleCount > Integer.MAX_VALUE) {
+            return null; // 分片 MP4 的样本表在 moof 里
+        }
+        // stss: header(8) version/flags(4) entry_count(4) 然后是从 1 开始的样本序号；没有 stss 时每个样本都是关键帧
+        int stss = findBox(buf, stbl + 8, stblEnd, TYPE_STSS);
+        int keyCount = stss < 0 ? (int) sampleCount : buf.getInt(stss + 12);
+        long[] micros = new long[keyCount];
+        int ctts = findBox(buf, stbl + 8, stblEnd, TYPE_CTTS);
+        boolean signedOffsets = ctts >= 0 && buf.get(ctts + 8) == 1;
+        int cttsCount = ctts < 0 ? 0 : buf.getInt(ctts + 12);
+        long mediaStart = editMediaTime(buf, start, end);
+        // stts、ctts 都是 (样本数, 值) 的游程，按样本序号递增同时推进
+        int sttsEntry = 0;
+        long sttsLeft = sttsCount > 0 ? buf.getInt(stts + 16) & 0xffffffffL : 0;
+        long sampleDelta = sttsCount > 0 ? buf.getInt(stts + 20) & 0xffffffffL : 0;
+        int cttsEntry = 0;
+        long cttsLeft = cttsCount > 0 ? buf.getInt(ctts + 16) & 0xffffffffL : 0;
+        long cttsSample = 1;
+        long decodeTime = 0;
+        long sample = 1;
+        for (int k = 0; k < keyCount; k++) {
+            long target = stss < 0 ? k + 1 : buf.getInt(stss + 16 + k * 4) & 0xffffffffL;
+            while (sample < target) {
+                // 跳过整段游程，长视频不用逐个样本累加
+                long step = Math.min(target - sample, sttsLeft);
+                decodeTime += step * sampleDelta;
+                sttsLeft -= step;
+                sample += step;
+                while (sttsLeft == 0 && ++sttsEntry < sttsCount) {
+                    sttsLeft = buf.getInt(stts + 16 + sttsEntry * 8) & 0xffffffffL;
+                    sampleDelta = buf.getInt(stts + 20 + sttsEntry * 8) & 0xffffffffL;
+                }
+                if (sttsLeft == 0 && sample < target) {
+                    return null;
+                }
+            }
+            long offset = 0;
+            if (cttsCount > 0) {
+                while (cttsSample < target && cttsEntry < cttsCount) {
+                    long step = Math.min(target - cttsSample, cttsLeft);
+                    cttsLeft -= step;
+                    cttsSample += step;
+                    while (cttsLeft == 0 && ++cttsEntry < cttsCount) {
+                        cttsLeft = buf.getInt(ctts + 16 + cttsEntry * 8) & 0xffffffffL;
+                    }
+                }
+                if (cttsEntry < cttsCount) {
+                    int raw = buf.getInt(ctts + 20 + cttsEntry * 8);
+                    offset = signedOffsets ? raw : raw & 0xffffffffL;
+                }
+            }
+            micros[k] = Math.max(0, decodeTime + offset - mediaStart) * 1_000_000L / timescale;
+        }
+        Arrays.sort(micros);
+        return new KeyframeIndex(micros, totalDelta * 1_000_000L / timescale);
+    }
+
+    /**
+     * 编辑列表中第一个非空编辑的 media_time（媒体时间刻度），没有时为 0
+     */
+    private static long editMediaTime(ByteBuffer buf, int start, int end) {
+        int edts = findBox(buf, start, end, TYPE_EDTS);
+        int elst = edts < 0 ? -1 : findBox(buf, edts + 8, edts + buf.getInt(edts), TYPE_ELST);
+        if (elst < 0) {
+            return 0;
+        }
+        boolean version1 = buf.get(elst + 8) == 1;
+        int count = buf.getInt(elst + 12);
+        int entrySize = version1 ? 20 : 12;
+        for (int i = 0, p = elst + 16; i < count; i++, p += entrySize) {
+            long mediaTime = version1 ? buf.getLong(p + 8) : buf.getInt(p + 4);
+            if (mediaTime >= 0) {
+                return mediaTime;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * hdlr 为 vide 时返回该轨 mdia 的位置，否则返回 -1
+     */
+    private static int findVideoMdia(ByteBuffer buf, int start, int end) {
+        int mdia = findBox(buf, start, end, TYPE_MDIA);
+        if (mdia < 0) {
+            return -1;
+        }
+        int hdlr = findBox(buf, mdia + 8, mdia + buf.getInt(mdia), TYPE_HDLR);
+        // hdlr: header(8) version/flags(4) pre_defined(4) handler_type(4)
+        return hdlr >= 0 && buf.getInt(hdlr + 16) == HANDLER_VIDE ? mdia : -1;
+    }
+
+    private static int findStbl(ByteBuffer buf, int mdia) {
+        int minf = findBox(buf, mdia + 8, mdia + buf.getInt(mdia), TYPE_MINF);
+        return minf < 0 ? -1 : findBox(buf, minf + 8, minf + buf.getInt(minf), TYPE_STBL);
+    }
+
+    /**
+     * 在 [start, end) 的同级 box 中查找 type，返回 box 起始位置，找不到返回 -1
+     */
+    private static int findBox(ByteBuffer buf, int start, int end, int type) {
+        int pos = start;
+        while (pos + 8 <= end) {
+            int size = buf.getInt(pos);
+            if (size < 8 || pos + size > end) {
+                return -1;
+            }
+            if (buf.getInt(pos + 4) == type) {
+                return pos;
+            }
+            pos += size;
+        }
+        return -1;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+    }
+
+    private static int fourCc(String type) {
+        return type.charAt(0) << 24 | type.charAt(1) << 16 | type.charAt(2) << 8 | type.charAt(3);
+    }
+}
@@ -0,0 +1,210 @@
+package org.jugo.utils;
+
+import org.jugo.model.PaletteOptions;
+import org.jugo.model.SizeBudgetPlan;
+import org.jugo.model.VideoInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * 按文件大小上限选择分辨率和帧率。
+ * 在视频中均匀取几个短片段，用候选参数并发试转并统计字节数，按时长比例推算整段大小；
+ * 候选按 宽×高×帧率 从大到小排列，二分查找估算不超过上限的第一个，每一步只试转一个候选
+ */
+public class SizeBudgetPlanner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SizeBudgetPlanner.class);
+    private static final double[] SCALES = {1.0, 0.85, 0.7, 0.6, 0.5, 0.42, 0.35, 0.28, 0.22};
+    private static final double[] FRAME_RATES = {24, 20, 15, 12, 10, 8, 6};
+    private static final int MIN_WIDTH = 48;
+
+    private final long maxBytes;
+    private int samples = 4;
+    private long sampleMicros = 1_500_000L;
+    // 片段各自带一个完整首帧和调色板，估算本身偏大；再留一点余量应对片段之外的内容差异
+    private double safetyFactor = 0.92;
+
+    public SizeBudgetPlanner(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 试转的片段数，同时也是并发的 ffmpeg 进程数
+     */
+    public SizeBudgetPlanner setSamples(int samples) {
+        if (samples < 1) {
+            throw new IllegalArgumentException("samples must be positive: " + samples);
+        }
+        this.samples = samples;
+        return this;
+    }
+
+    public SizeBudgetPlanner setSampleMicros(long sampleMicros) {
+        if (sampleMicros <= 0) {
+            throw new IllegalArgumentException("sampleMicros must be positive: " + sampleMicros);
+        }
+        this.sampleMicros = sampleMicros;
+        return this;
+    }
+
+    /**
+     * 估算值乘以该系数后不超过上限才算合适，取值 (0, 1]
+     */
+    public SizeBudgetPlanner setSafetyFactor(double safetyFactor) {
+        if (safetyFactor <= 0 || safetyFactor > 1) {
+            throw new IllegalArgumentException("safetyFactor must be in (0, 1]: " + safetyFactor);
+        }
+        this.safetyFactor = safetyFactor;
+        return this;
+    }
+
+    /**
+     * @param width     宽度上限，为 null 时使用原视频宽度
+     * @param height    高度上限，需与 width 同时指定
+     * @param frameRate 帧率上限，为 null 时使用原视频帧率
+     */
+    public SizeBudgetPlan plan(String inputPath, Integer width, Integer height, Double frameRate,
+                               PaletteOptions paletteOptions) throws IOException {
+        VideoInfo info = FfMpegUtils.readVideoInfo(inputPath);
+        long durationMicros = info.getDurationMicros();
+        if (durationMicros <= 0) {
+            throw new IOException("Can not plan a size budget without the video duration: " + inputPath);
+        }
+        int baseWidth = width != null && height != null ? width : info.getWidth();
+        int baseHeight = width != null && height != null ? height : info.getHeight();
+        double baseFrameRate = frameRate != null ? frameRate : info.getFrameRate();
+        List<Candidate> candidates = candidates(baseWidth, baseHeight, baseFrameRate);
+        // 视频太短时只取一个覆盖全片的片段，估算即为实际大小
+        boolean whole = durationMicros <= sampleMicros * samples;
+        long[] offsets = whole ? new long[]{0} : sampleOffsets(durationMicros);
+        long length = whole ? durationMicros : sampleMicros;
+        long budget = (long) (maxBytes * safetyFactor);
+
+        long[] estimates = new long[candidates.size()];
+        int probes = 0;
+        ExecutorService pool = IoThreads.newExecutor("size-probe");
+        try {
+            // 先试原参数，大多数短视频不需要降级；否则二分找估算不超过 budget 的第一个（画质最高的）候选
+            estimates[0] = estimate(pool, inputPath, candidates.get(0), offsets, length, durationMicros, paletteOptions);
+            probes += offsets.length;
+            int low = estimates[0] <= budget ? 0 : 1;
+            int high = estimates[0] <= budget ? 0 : candidates.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                estimates[mid] = estimate(pool, inputPath, candidates.get(mid), offsets, length, durationMicros, paletteOptions);
+                probes += offsets.length;
+                LOGGER.debug("{}: {} -> ~{} bytes", inputPath, candidates.get(mid), estimates[mid]);
+                if (estimates[mid] <= budget) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            boolean within = low < candidates.size();
+            int chosen = within ? low : candidates.size() - 1;
+            Candidate candidate = candidates.get(chosen);
+            SizeBudgetPlan plan = new SizeBudgetPlan(candidate.width, candidate.height, candidate.frameRate,
+                    estimates[chosen], within, probes);
+            if (within) {
+                LOGGER.info("{}: chose {} for a budget of {} bytes after {} probes", inputPath, plan, maxBytes, probes);
+            } else {
+                LOGGER.warn("{}: even {} is estimated over the budget of {} bytes", inputPath, plan, maxBytes);
+            }
+            return plan;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // 同一候选的所有片段并发试转
+    private static long estimate(ExecutorService pool, String inputPath, Candidate candidate, long[] offsets, long length,
+                                 long durationMicros, PaletteOptions paletteOptions) throws IOException {
+        List<Future<Long>> futures = new ArrayList<>(offsets.length);
+        for (long offset : offsets) {
+            futures.add(pool.submit(() -> FfMpegUtils.measureGifExcerpt(inputPath, offset, length,
+                    candidate.width, candidate.height, candidate.frameRate, paletteOptions)));
+        }
+        long bytes = 0;
+        for (Future<Long> future : futures) {
+            try {
+                bytes += future.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while probing " + inputPath, ie);
+            } catch (ExecutionException ee) {
+                throw new IOException("Failed to probe " + inputPath + ": " + ee.getCause().getMessage(), ee.getCause());
+            }
+        }
+        double sampledMicros = (double) length * offsets.length;
+        return (long) Math.ceil(bytes * (durationMicros / sampledMicros));
+    }
+
+    // 各片段中心均匀分布在整段视频上
+    private long[] sampleOffsets(long durationMicros) {
+        long[] offsets = new long[samples];
+        for (int i = 0; i < samples; i++) {
+            long center = durationMicros * (2L * i + 1) / (2L * samples);
+            offsets[i] = Math.max(0, Math.min(durationMicros - sampleMicros, center - sampleMicros / 2));
+        }
+        return offsets;
+    }
+
+    private static List<Candidate> candidates(int baseWidth, int baseHeight, double baseFrameRate) {
+        List<Double> frameRates = new ArrayList<>();
+        frameRates.add(baseFrameRate);
+        for (double frameRate : FRAME_RATES) {
+            if (frameRate < baseFrameRate) {
+                frameRates.add(frameRate);
+            }
+        }
+        List<Candidate> candidates = new ArrayList<>();
+        for (double scale : SCALES) {
+            int w = even(baseWidth * scale);
+            if (scale < 1.0 && w < MIN_WIDTH) {
+                break;
+            }
+            int h = even(baseHeight * scale);
+            for (double frameRate : frameRates) {
+                candidates.add(new Candidate(w, h, frameRate));
+            }
+        }
+        candidates.sort(Comparator.comparingDouble(Candidate::cost).reversed());
+        return candidates;
+    }
+
+    private static int even(double value) {
+        return Math.max(2, (int) Math.round(value / 2) * 2);
+    }
+
+    private static class Candidate {
+        final int width;
+        final int height;
+        final double frameRate;
+
+        Candidate(int width, int height, double frameRate) {
+            this.width = width;
+            this.height = height;
+            this.frameRate = frameRate;
+        }
+
+        // GIF 大小大致与每秒像素数成正比
+        double cost() {
+            return (double) width * height * frameRate;
+        }
+
+        @Override
+        public String toString() {
+            return width + "x" + height + "@" + frameRate;
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package org.jugo.utils;
+
+import org.jugo.model.VideoInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 视频参数缓存，以规范路径、文件大小、修改时间（可选再加首尾内容校验）判断是否命中。
+ * 内存中是有上限的 LRU，磁盘上是追加写的记录文件，重启后加载，记录过多时压缩重写。
+ * 多个进程（界面、批量转换、常驻服务）可能共用同一个记录文件，加载、追加和压缩都先取得旁边 .lock 文件的排他锁，
+ * 加载时和追加后记录数超过上限两倍时压缩；
+ * 压缩会改名替换记录文件，所以每次追加都重新打开，不长期持有写入流
+ */
+public class VideoInfoCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VideoInfoCache.class);
+    private static final int FILE_MAGIC = 0x47505649; // "GPVI"
+    private static final int FILE_VERSION = 1;
+    private static final int HASH_SAMPLE_BYTES = 64 * 1024;
+    // FileLock 在同一个 JVM 内重叠加锁会抛异常，进程内先用这个锁串行
+    private static final Object PROCESS_LOCK = new Object();
+    private static boolean lockedInProcess;
+
+    public interface Loader {
+        VideoInfo load(Path path) throws IOException;
+    }
+
+    private final int maxEntries;
+    private final boolean verifyContent;
+    private final Path storeFile;
+    private final Path lockFile;
+    private final LinkedHashMap<String, CachedInfo> entries;
+    private int storedRecords;
+    private boolean loaded;
+
+    /**
+     * @param maxEntries    内存中最多保留的条目数
+     * @param verifyContent 为 true 时额外校验文件首尾 64KB 的 CRC，防止大小和时间都没变的原地修改
+     * @param storeFile     磁盘记录文件，为 null 时只缓存在内存
+     */
+    public VideoInfoCache(int maxEntries, boolean verifyContent, Path storeFile) {
+        this.maxEntries = maxEntries;
+        this.verifyContent = verifyContent;
+        this.storeFile = storeFile;
+        this.lockFile = storeFile == null ? null : storeFile.resolveSibling(storeFile.getFileName() + ".lock");
+        this.entries = new LinkedHashMap<String, CachedInfo>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedInfo> eldest) {
+                return size() > VideoInfoCache.this.maxEntries;
+            }
+        };
+    }
+
+    public VideoInfo get(Path path, Loader loader) throws IOException {
+        Path realPath = path.toRealPath();
+        String key = realPath.toString();
+        BasicFileAttributes attributes = Files.readAttributes(realPath, BasicFileAttributes.class);
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        long hash = verifyContent ? contentHash(realPath, size) : 0;
+        synchronized (this) {
+            ensureLoaded();
+            CachedInfo entry = entries.get(key);
+            if (entry != null && entry.size == size && entry.modified == modified && entry.hash == hash) {
+                return entry.videoInfo;
+            }
+        }
+        VideoInfo videoInfo = loader.load(realPath);
+        CachedInfo entry = new CachedInfo(size, modified, hash, videoInfo);
+        synchronized (this) {
+            entries.put(key, entry);
+            append(key, entry);
+        }
+        return videoInfo;
+    }
+
+    public synchronized void clear() throws IOException {
+        entries.clear();
+        if (storeFile != null) {
+            FileLockHandle lock = lockStore();
+            try {
+                Files.deleteIfExists(storeFile);
+            } finally {
+                lock.close();
+            }
+        }
+        storedRecords = 0;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (storeFile == null || !Files.isRegularFile(storeFile)) {
+            return;
+        }
+        try {
+            FileLockHandle lock = lockStore();
+            try {
+                storedRecords = readRecords(entries);
+                if (storedRecords > maxEntries * 2 || storedRecords > entries.size() * 2) {
+                    compact();
+                }
+            } finally {
+                lock.close();
+            }
+        } catch (IOException ioe) {
+            LOGGER.warn("Can not read video info cache {}: {}", storeFile, ioe.getMessage());
+        }
+    }
+
+    /**
+     * 按文件中的顺序读入 target，后面的记录覆盖前面的。调用方持有文件锁
+     *
+     * @return 读到的记录数
+     */
+    private int readRecords(Map<String, CachedInfo> target) throws IOException {
+        if (!Files.isRegularFile(storeFile)) {
+            return 0;
+        }
+        int records = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(storeFile)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                LOGGER.info("Ignoring incompatible video info cache {}", storeFile);
+                Files.delete(storeFile);
+                return 0;
+            }
+            while (true) {
+                String key;
+                try {
+                    key = in.readUTF();
+                } catch (EOFException eof) {
+                    break;
+                }
+                CachedInfo entry = new CachedInfo(in.readLong(), in.readLong(), in.readLong(),
+                        new VideoInfo(in.readInt(), in.readInt(), in.readDouble(), in.readLong(), in.readLong()));
+                target.put(key, entry);
+                records++;
+            }
+        } catch (EOFException eof) {
+            // 末尾记录可能因进程中断不完整，已读到的部分仍然有效
+            LOGGER.debug("Video info cache truncated: {}", eof.getMessage());
+        }
+        return records;
+    }
+
+    private void append(String key, CachedInfo entry) {
+        if (storeFile == null) {
+            return;
+        }
+        // 先整条序列化，加锁后一次写入，不会和其他进程的记录交错
+        ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+        try {
+            FileLockHandle lock = lockStore();
+            try {
+                boolean fresh = !Files.exists(storeFile) || Files.size(storeFile) == 0;
+                DataOutputStream out = new DataOutputStream(record);
+                if (fresh) {
+                    out.writeInt(FILE_MAGIC);
+                    out.writeInt(FILE_VERSION);
+                    storedRecords = 0;
+                }
+                writeRecord(out, key, entry);
+                try (FileChannel channel = FileChannel.open(storeFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND)) {
+                    ByteBuffer buffer = ByteBuffer.wrap(record.toByteArray());
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+                // 常驻进程不会再经过 ensureLoaded，追加过多时在这里压缩，记录文件不会无限增长
+                if (++storedRecords > maxEntries * 2) {
+                    compact();
+                }
+            } finally {
+                lock.close();
+            }
+        } catch (IOException ioe) {
+            LOGGER.warn("Can not write video info cache {}: {}", storeFile, ioe.getMessage());
+        }
+    }
+
+    /**
+     * 重新读入文件（包括其他进程追加的记录），与内存中的条目合并后保留最近的 maxEntries 条，写临时文件后替换。
+     * 调用方持有文件锁
+     */
+    private void compact() {
+        Map<String, CachedInfo> merged = new LinkedHashMap<>();
+        try {
+            readRecords(merged);
+        } catch (IOException ioe) {
+            LOGGER.debug("Can not re-read video info cache before compaction: {}", ioe.getMessage());
+        }
+        for (Map.Entry<String, CachedInfo> e : entries.entrySet()) {
+            merged.remove(e.getKey());
+            merged.put(e.getKey(), e.getValue());
+        }
+        int skip = Math.max(0, merged.size() - maxEntries);
+        Path temp = storeFile.resolveSibling(storeFile.getFileName() + ".tmp");
+        int written = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            for (Map.Entry<String, CachedInfo> e : merged.entrySet()) {
+                if (skip > 0) {
+                    skip--;
+                    continue;
+                }
+                writeRecord(out, e.getKey(), e.getValue());
+                written++;
+            }
+        } catch (IOException ioe) {
+            LOGGER.warn("Can not compact video info cache {}: {}", storeFile, ioe.getMessage());
+            return;
+        }
+        try {
+            Files.move(temp, storeFile, StandardCopyOption.REPLACE_EXISTING);
+            storedRecords = written;
+        } catch (IOException ioe) {
+            LOGGER.warn("Can not replace video info cache {}: {}", storeFile, ioe.getMessage());
+        }
+    }
+
+    private FileLockHandle lockStore() throws IOException {
+        Files.createDirectories(lockFile.getParent());
+        return new FileLockHandle(lockFile);
+    }
+
+    /**
+     * 进程内锁加上 .lock 文件的排他锁，关闭时按相反顺序释放
+     */
+    private static final class FileLockHandle implements Closeable {
+        private final FileChannel channel;
+        private final FileLock lock;
+
+        FileLockHandle(Path lockFile) throws IOException {
+            synchronized (PROCESS_LOCK) {
+                while (lockedInProcess) {
+                    try {
+                        PROCESS_LOCK.wait();
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for video info cache lock");
+                    }
+                }
+                lockedInProcess = true;
+            }
+            FileChannel opened = null;
+            try {
+                opened = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                this.lock = opened.lock();
+                this.channel = opened;
+            } catch (IOException | RuntimeException e) {
+                if (opened != null) {
+                    opened.close();
+                }
+                releaseInProcess();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                lock.release();
+                channel.close();
+            } finally {
+                releaseInProcess();
+            }
+        }
+
+        private static void releaseInProcess() {
+            synchronized (PROCESS_LOCK) {
+                lockedInProcess = false;
+                PROCESS_LOCK.notifyAll();
+            }
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, String key, CachedInfo entry) throws IOException {
+        VideoInfo info = entry.videoInfo;
+        out.writeUTF(key);
+        out.writeLong(entry.size);
+        out.writeLong(entry.modified);
+        out.writeLong(entry.hash);
+        out.writeInt(info.getWidth());
+        out.writeInt(info.getHeight());
+        out.writeDouble(info.getFrameRate());
+        out.writeLong(info.getDurationMicros());
+        out.writeLong(info.getFrameCount());
+    }
+
+    private static long contentHash(Path path, long size) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(HASH_SAMPLE_BYTES);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            updateCrc(channel, 0, buffer, crc);
+            if (size > HASH_SAMPLE_BYTES) {
+                buffer.clear();
+                updateCrc(channel, Math.max(HASH_SAMPLE_BYTES, size - HASH_SAMPLE_BYTES), buffer, crc);
+            }
+        }
+        return crc.getValue() | 1L << 32; // 与未校验时的 0 区分
+    }
+
+    private static void updateCrc(FileChannel channel, long position, ByteBuffer buffer, CRC32 crc) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                break;
+            }
+        }
+        crc.update(buffer.array(), 0, buffer.position());
+    }
+
+    private static class CachedInfo {
+        final long size;
+        final long modified;
+        final long hash;
+        final VideoInfo videoInfo;
+
+        CachedInfo(long size, long modified, long hash, VideoInfo videoInfo) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.videoInfo = videoInfo;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.jugo.batch;
+
+import org.jugo.model.BatchResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchConverterTest {
+    private static final Path OUT = Paths.get("/out");
+
+    @Test
+    void uniqueInputsDropExtension() {
+        List<BatchConverter.Task> tasks = BatchConverter.planTasks(
+                Arrays.asList(Paths.get("/videos/a.mp4"), Paths.get("/videos/b.mov")),
+                Arrays.asList(Paths.get("/videos"), Paths.get("/videos")));
+        assertEquals(Paths.get("/videos/a.gif"), tasks.get(0).output);
+        assertEquals(Paths.get("/videos/b.gif"), tasks.get(1).output);
+        assertNull(tasks.get(0).conflict);
+        assertNull(tasks.get(1).conflict);
+    }
+
+    @Test
+    void sameBaseNameKeepsExtension() {
+        List<BatchConverter.Task> tasks = BatchConverter.planTasks(
+                Arrays.asList(Paths.get("/videos/clip.mp4"), Paths.get("/videos/clip.mov"), Paths.get("/videos/other.mp4")),
+                Collections.nCopies(3, Paths.get("/videos")));
+        assertEquals(Paths.get("/videos/clip.mp4.gif"), tasks.get(0).output);
+        assertEquals(Paths.get("/videos/clip.mov.gif"), tasks.get(1).output);
+        assertEquals(Paths.get("/videos/other.gif"), tasks.get(2).output);
+        tasks.forEach(task -> assertNull(task.conflict));
+    }
+
+    @Test
+    void sameNameFromDifferentDirectoriesIntoOneOutputDir() {
+        Path first = Paths.get("/a/clip.mp4");
+        List<BatchConverter.Task> tasks = BatchConverter.planTasks(
+                Arrays.asList(first, Paths.get("/b/clip.mp4"), Paths.get("/b/clip.mov")),
+                Collections.nCopies(3, OUT));
+        assertEquals(OUT.resolve("clip.mp4.gif"), tasks.get(0).output);
+        assertNull(tasks.get(0).conflict);
+        // 保留扩展名后仍然重名，只转换第一个
+        assertEquals(OUT.resolve("clip.mp4.gif"), tasks.get(1).output);
+        assertNotNull(tasks.get(1).conflict);
+        assertEquals("Output collides with " + first, tasks.get(1).conflict);
+        assertEquals(OUT.resolve("clip.mov.gif"), tasks.get(2).output);
+        assertNull(tasks.get(2).conflict);
+    }
+
+    @Test
+    void collisionIgnoresCase() {
+        List<BatchConverter.Task> tasks = BatchConverter.planTasks(
+                Arrays.asList(Paths.get("/v/Clip.mp4"), Paths.get("/v/clip.MOV")),
+                Collections.nCopies(2, Paths.get("/v")));
+        assertEquals(Paths.get("/v/Clip.mp4.gif"), tasks.get(0).output);
+        assertEquals(Paths.get("/v/clip.MOV.gif"), tasks.get(1).output);
+    }
+
+    @Test
+    void conflictingTaskFailsWithoutConverting(@TempDir Path outputDir) {
+        Path input = outputDir.resolve("missing/clip.mp4");
+        List<BatchResult> results = new BatchConverter(1, null, null, null)
+                .convertFiles(Arrays.asList(input, input), outputDir);
+        assertEquals(outputDir.resolve("clip.mp4.gif"), results.get(0).getOutputPath());
+        assertEquals(BatchResult.Status.FAILED, results.get(1).getStatus());
+        assertEquals("Output collides with " + input, results.get(1).getMessage());
+    }
+
+    @Test
+    void rejectsConflictingModesRegardlessOfOrder() {
+        List<Path> none = Collections.emptyList();
+        assertThrows(IllegalArgumentException.class,
+                () -> new BatchConverter(1, null, null, null).setTimeRange(1_000_000, 0).setMaxBytes(1 << 20).convertFiles(none, OUT));
+        assertThrows(IllegalArgumentException.class,
+                () -> new BatchConverter(1, null, null, null).setMaxBytes(1 << 20).setTimeRange(0, 2_000_000).convertFiles(none, OUT));
+        assertThrows(IllegalArgumentException.class,
+                () -> new BatchConverter(1, null, null, null).setSegments(4).setTimeRange(0, 2_000_000).convertFiles(none, OUT));
+        assertThrows(IllegalArgumentException.class,
+                () -> new BatchConverter(1, null, null, null).setMaxBytes(1 << 20).setSegments(4).convertFiles(none, OUT));
+        assertTrue(new BatchConverter(1, null, null, null).setSegments(4).convertFiles(none, OUT).isEmpty());
+        assertTrue(new BatchConverter(1, null, null, null).setTimeRange(0, 2_000_000).convertFiles(none, OUT).isEmpty());
+    }
+}
@@ -0,0 +1,196 @@
+package org.jugo.gif;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 差分帧编码后用 ImageIO 逐帧解码，按"保留"处置方式叠加，叠加后的画面必须与输入逐像素相同
+ */
+class DeltaFrameEncodingTest {
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 30;
+    // 每个通道取 5 位格子的中心值，中位切分求平均后仍是原值，量化不引入误差
+    private static final int[] COLORS = {0x040404, 0xfc0404, 0x04fc04, 0x0404fc, 0xfcfcfc, 0x848404};
+
+    @Test
+    void unchangedFrameIsOneTransparentPixel() throws IOException {
+        int[] base = pattern(0);
+        List<int[]> frames = Arrays.asList(base, base.clone(), base.clone());
+
+        Decoded decoded = encodeAndDecode(frames, new FixedPaletteQuantizer(COLORS), 2);
+
+        assertFrames(frames, decoded);
+        assertArrayEquals(new int[]{0, 0, WIDTH, HEIGHT}, decoded.bounds.get(0));
+        assertArrayEquals(new int[]{0, 0, 1, 1}, decoded.bounds.get(1));
+        assertArrayEquals(new int[]{0, 0, 1, 1}, decoded.bounds.get(2));
+    }
+
+    @Test
+    void changedRectangleIsCropped() throws IOException {
+        int[] base = pattern(0);
+        int[] changed = base.clone();
+        fillRect(changed, 5, 7, 10, 4, COLORS[5]);
+        int[] corner = changed.clone();
+        corner[(HEIGHT - 1) * WIDTH + WIDTH - 1] = COLORS[1];
+
+        List<int[]> frames = Arrays.asList(base, changed, corner);
+        Decoded decoded = encodeAndDecode(frames, new FixedPaletteQuantizer(COLORS), 2);
+
+        assertFrames(frames, decoded);
+        int[] rect = decoded.bounds.get(1);
+        // 包围盒至少覆盖改动区域，不超过整帧
+        assertTrue(rect[0] <= 5 && rect[1] <= 7 && rect[0] + rect[2] >= 15 && rect[1] + rect[3] >= 11);
+        assertTrue(rect[2] < WIDTH && rect[3] < HEIGHT);
+        assertArrayEquals(new int[]{WIDTH - 1, HEIGHT - 1, 1, 1}, decoded.bounds.get(2));
+    }
+
+    @Test
+    void fullChangeCoversWholeFrame() throws IOException {
+        List<int[]> frames = Arrays.asList(pattern(0), pattern(1), pattern(2));
+
+        Decoded decoded = encodeAndDecode(frames, new FixedPaletteQuantizer(COLORS), 2);
+
+        assertFrames(frames, decoded);
+        assertArrayEquals(new int[]{0, 0, WIDTH, HEIGHT}, decoded.bounds.get(1));
+        assertArrayEquals(new int[]{0, 0, WIDTH, HEIGHT}, decoded.bounds.get(2));
+    }
+
+    @Test
+    void localPalettesReserveTransparentIndex() throws IOException {
+        List<int[]> frames = randomEdits(20, 11);
+
+        assertFrames(frames, encodeAndDecode(frames, new MedianCutQuantizer(255), 3));
+    }
+
+    @Test
+    void manyFramesThroughRecycledSlots() throws IOException {
+        // 帧数远多于槽位，检查在途帧的上一帧槽位不会被提前复用
+        List<int[]> frames = randomEdits(60, 12);
+        for (int threads = 1; threads <= 4; threads++) {
+            assertFrames(frames, encodeAndDecode(frames, new FixedPaletteQuantizer(COLORS), threads));
+        }
+    }
+
+    // 每帧在上一帧基础上随机改几个矩形，中间夹着不变和整帧变化的帧
+    private static List<int[]> randomEdits(int count, long seed) {
+        Random random = new Random(seed);
+        List<int[]> frames = new ArrayList<>();
+        int[] current = pattern(0);
+        frames.add(current);
+        for (int i = 1; i < count; i++) {
+            current = current.clone();
+            if (i % 7 == 0) {
+                current = pattern(i);
+            } else if (i % 5 != 0) {
+                for (int r = random.nextInt(3) + 1; r > 0; r--) {
+                    int x = random.nextInt(WIDTH);
+                    int y = random.nextInt(HEIGHT);
+                    fillRect(current, x, y, 1 + random.nextInt(WIDTH - x), 1 + random.nextInt(HEIGHT - y),
+                            COLORS[random.nextInt(COLORS.length)]);
+                }
+            }
+            frames.add(current);
+        }
+        return frames;
+    }
+
+    private static int[] pattern(int seed) {
+        int[] rgb = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                rgb[y * WIDTH + x] = COLORS[(x / 4 + y / 3 + seed) % COLORS.length];
+            }
+        }
+        return rgb;
+    }
+
+    private static void fillRect(int[] rgb, int left, int top, int width, int height, int color) {
+        for (int y = top; y < top + height; y++) {
+            Arrays.fill(rgb, y * WIDTH + left, y * WIDTH + left + width, color);
+        }
+    }
+
+    private static Decoded encodeAndDecode(List<int[]> frames, FrameQuantizer quantizer, int threads) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ParallelGifEncoder encoder = new ParallelGifEncoder(out, WIDTH, HEIGHT, quantizer, threads, true)) {
+            for (int[] frame : frames) {
+                System.arraycopy(frame, 0, encoder.frameBuffer(), 0, frame.length);
+                encoder.submitFrame(4);
+            }
+            encoder.finish();
+        }
+        return decode(out.toByteArray());
+    }
+
+    private static Decoded decode(byte[] gif) throws IOException {
+        Decoded decoded = new Decoded();
+        ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(gif))) {
+            reader.setInput(in);
+            int[] canvas = new int[WIDTH * HEIGHT];
+            int count = reader.getNumImages(true);
+            for (int i = 0; i < count; i++) {
+                int[] rect = imageDescriptor(reader, i);
+                BufferedImage image = reader.read(i);
+                for (int y = 0; y < rect[3]; y++) {
+                    for (int x = 0; x < rect[2]; x++) {
+                        int argb = image.getRGB(x, y);
+                        // 透明像素保留上一帧的内容
+                        if (argb >>> 24 != 0) {
+                            canvas[(rect[1] + y) * WIDTH + rect[0] + x] = argb & 0xffffff;
+                        }
+                    }
+                }
+                decoded.frames.add(canvas.clone());
+                decoded.bounds.add(rect);
+            }
+        } finally {
+            reader.dispose();
+        }
+        return decoded;
+    }
+
+    private static int[] imageDescriptor(ImageReader reader, int index) throws IOException {
+        Node root = reader.getImageMetadata(index).getAsTree("javax_imageio_gif_image_1.0");
+        for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeName().equals("ImageDescriptor")) {
+                NamedNodeMap attributes = node.getAttributes();
+                return new int[]{
+                        Integer.parseInt(attributes.getNamedItem("imageLeftPosition").getNodeValue()),
+                        Integer.parseInt(attributes.getNamedItem("imageTopPosition").getNodeValue()),
+                        Integer.parseInt(attributes.getNamedItem("imageWidth").getNodeValue()),
+                        Integer.parseInt(attributes.getNamedItem("imageHeight").getNodeValue())};
+            }
+        }
+        throw new IOException("No image descriptor for frame " + index);
+    }
+
+    private static void assertFrames(List<int[]> expected, Decoded decoded) {
+        assertEquals(expected.size(), decoded.frames.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), decoded.frames.get(i), "frame " + i);
+        }
+    }
+
+    private static class Decoded {
+        final List<int[]> frames = new ArrayList<>();
+        final List<int[]> bounds = new ArrayList<>();
+    }
+}
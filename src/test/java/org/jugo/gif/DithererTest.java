@@ -0,0 +1,89 @@
+package org.jugo.gif;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DithererTest {
+    // 大于并行阈值（65536 像素），宽度不是进度步长的整数倍
+    private static final int WIDTH = 333;
+    private static final int HEIGHT = 241;
+
+    @Test
+    void parallelOutputMatchesSerialForEveryMode() {
+        int[] rgb = image(WIDTH, HEIGHT, 1);
+        PaletteLookup lookup = new PaletteLookup(MedianCutQuantizer.buildPalette(rgb, rgb.length, 16));
+        for (Ditherer.Mode mode : Ditherer.Mode.values()) {
+            byte[] serial = map(mode, lookup, rgb, WIDTH, HEIGHT, 1);
+            for (int threads : new int[]{2, 3, 4, 8}) {
+                assertArrayEquals(serial, map(mode, lookup, rgb, WIDTH, HEIGHT, threads), mode + " with " + threads + " threads");
+            }
+        }
+    }
+
+    @Test
+    void repeatedParallelRunsAreStable() {
+        int[] rgb = image(WIDTH, HEIGHT, 2);
+        PaletteLookup lookup = new PaletteLookup(MedianCutQuantizer.buildPalette(rgb, rgb.length, 8));
+        for (Ditherer.Mode mode : new Ditherer.Mode[]{Ditherer.Mode.FLOYD_STEINBERG, Ditherer.Mode.SIERRA}) {
+            byte[] serial = map(mode, lookup, rgb, WIDTH, HEIGHT, 1);
+            for (int run = 0; run < 10; run++) {
+                assertArrayEquals(serial, map(mode, lookup, rgb, WIDTH, HEIGHT, 4), mode + " run " + run);
+            }
+        }
+    }
+
+    @Test
+    void reusedBuffersDoNotLeakErrorsBetweenFrames() {
+        // 同一线程先处理大帧再处理小帧，循环缓冲里残留的误差不能影响结果
+        int[] large = image(WIDTH, HEIGHT, 3);
+        int[] small = image(300, 220, 4);
+        PaletteLookup lookup = new PaletteLookup(MedianCutQuantizer.buildPalette(small, small.length, 16));
+        byte[] expected = map(Ditherer.Mode.SIERRA, lookup, small, 300, 220, 1);
+
+        map(Ditherer.Mode.SIERRA, lookup, large, WIDTH, HEIGHT, 4);
+        assertArrayEquals(expected, map(Ditherer.Mode.SIERRA, lookup, small, 300, 220, 4));
+        map(Ditherer.Mode.SIERRA, lookup, large, WIDTH, HEIGHT, 1);
+        assertArrayEquals(expected, map(Ditherer.Mode.SIERRA, lookup, small, 300, 220, 1));
+    }
+
+    @Test
+    void diffusionChangesIndicesWithinPalette() {
+        int[] rgb = image(WIDTH, HEIGHT, 5);
+        int[] palette = MedianCutQuantizer.buildPalette(rgb, rgb.length, 4);
+        PaletteLookup lookup = new PaletteLookup(palette);
+        byte[] plain = map(Ditherer.Mode.NONE, lookup, rgb, WIDTH, HEIGHT, 1);
+        byte[] dithered = map(Ditherer.Mode.FLOYD_STEINBERG, lookup, rgb, WIDTH, HEIGHT, 4);
+
+        assertFalse(Arrays.equals(plain, dithered));
+        for (byte index : dithered) {
+            assertTrue((index & 0xff) < palette.length);
+        }
+    }
+
+    private static byte[] map(Ditherer.Mode mode, PaletteLookup lookup, int[] rgb, int width, int height, int threads) {
+        byte[] indices = new byte[width * height];
+        Ditherer.map(mode, lookup, rgb, width, height, indices, threads);
+        return indices;
+    }
+
+    // 渐变加噪声，颜色足够多，调色板很小时误差扩散明显
+    private static int[] image(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int[] rgb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = Math.min(255, x * 255 / width + random.nextInt(16));
+                int g = Math.min(255, y * 255 / height + random.nextInt(16));
+                int b = (x + y) * 255 / (width + height);
+                rgb[y * width + x] = r << 16 | g << 8 | b;
+            }
+        }
+        return rgb;
+    }
+}
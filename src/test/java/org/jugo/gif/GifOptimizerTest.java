@@ -0,0 +1,240 @@
+package org.jugo.gif;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GifOptimizerTest {
+    private static final int WIDTH = 24;
+    private static final int HEIGHT = 16;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void losslessRoundTripIsPixelIdentical() throws IOException {
+        // 重复的颜色和大量未使用的颜色都应被去掉
+        int[] palette = new int[256];
+        palette[0] = 0x102030;
+        palette[1] = 0xff8000;
+        palette[2] = 0x102030;
+        palette[3] = 0x00ff00;
+        palette[200] = 0x0000ff;
+        Random random = new Random(1);
+        List<byte[]> frames = new ArrayList<>();
+        for (int f = 0; f < 3; f++) {
+            byte[] pixels = new byte[WIDTH * HEIGHT];
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = (byte) new int[]{0, 1, 2, 3, 200}[random.nextInt(5)];
+            }
+            frames.add(pixels);
+        }
+        Path input = writeGif("in.gif", palette, -1, frames);
+        Path output = dir.resolve("out.gif");
+
+        long size = new GifOptimizer(2).optimize(input, output);
+
+        assertEquals(Files.size(output), size);
+        assertTrue(size < Files.size(input));
+        assertEquals(4, readHeader(output).getGlobalPalette().length);
+        List<int[]> before = decodeArgb(input);
+        List<int[]> after = decodeArgb(output);
+        assertEquals(before.size(), after.size());
+        for (int i = 0; i < before.size(); i++) {
+            assertArrayEquals(before.get(i), after.get(i), "frame " + i);
+        }
+    }
+
+    @Test
+    void transparentIndexStaysDistinctFromSameColoredOpaqueIndex() throws IOException {
+        // 索引 0 和 1 都是黑色，1 是透明色，不能合并成同一个索引
+        int[] palette = {0x000000, 0x000000, 0xffffff, 0xff0000};
+        byte[] pixels = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) (i % 3 == 0 ? 1 : i % 3 == 1 ? 0 : 2);
+        }
+        List<byte[]> frames = new ArrayList<>();
+        frames.add(pixels);
+        Path input = writeGif("in.gif", palette, 1, frames);
+        Path output = dir.resolve("out.gif");
+
+        new GifOptimizer(1).optimize(input, output);
+
+        int[] argb = decodeArgb(output).get(0);
+        assertArrayEquals(decodeArgb(input).get(0), argb);
+        for (int i = 0; i < argb.length; i++) {
+            if (i % 3 == 0) {
+                assertEquals(0, argb[i] >>> 24, "pixel " + i + " should be transparent");
+            } else if (i % 3 == 1) {
+                assertEquals(0xff000000, argb[i], "pixel " + i + " should be opaque black");
+            }
+        }
+        GifReader.Frame frame = readFrames(output).get(0);
+        assertTrue(frame.getTransparentIndex() >= 0);
+    }
+
+    @Test
+    void lossyOutputStaysWithinTolerance() throws IOException {
+        int tolerance = 12;
+        // 相邻颜色相差 4，有损压缩有足够的替换候选
+        int[] palette = new int[64];
+        for (int i = 0; i < palette.length; i++) {
+            int v = i * 4;
+            palette[i] = v << 16 | v << 8 | (255 - v);
+        }
+        Random random = new Random(2);
+        List<byte[]> frames = new ArrayList<>();
+        for (int f = 0; f < 2; f++) {
+            byte[] pixels = new byte[WIDTH * HEIGHT];
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    pixels[y * WIDTH + x] = (byte) Math.min(63, Math.max(1, x * 2 + random.nextInt(5) - 2));
+                }
+            }
+            // 索引 0 作为透明色，有损替换不能动它
+            for (int i = 0; i < pixels.length; i += 7) {
+                pixels[i] = 0;
+            }
+            frames.add(pixels);
+        }
+        Path input = writeGif("in.gif", palette, 0, frames);
+        Path lossless = dir.resolve("lossless.gif");
+        Path lossy = dir.resolve("lossy.gif");
+
+        new GifOptimizer(2).optimize(input, lossless);
+        new GifOptimizer(2).setLossyTolerance(tolerance).optimize(input, lossy);
+
+        assertTrue(Files.size(lossy) < Files.size(lossless));
+        List<int[]> before = decodeArgb(input);
+        List<int[]> after = decodeArgb(lossy);
+        for (int f = 0; f < before.size(); f++) {
+            for (int i = 0; i < before.get(f).length; i++) {
+                int expected = before.get(f)[i];
+                int actual = after.get(f)[i];
+                assertEquals(expected >>> 24, actual >>> 24, "alpha of pixel " + i);
+                if (expected >>> 24 != 0) {
+                    for (int shift = 0; shift <= 16; shift += 8) {
+                        int error = Math.abs((expected >> shift & 0xff) - (actual >> shift & 0xff));
+                        assertTrue(error <= tolerance, "pixel " + i + " off by " + error);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void truncatedFramePaddingStaysInsideColorTable() throws IOException {
+        // 全局颜色表的索引 0 没有被任何像素用到，背景色也不是 0，截断帧补齐时用的 0 也必须映射到新颜色表里
+        int[] palette = {0x000000, 0x111111, 0xff0000, 0x00ff00};
+        byte[] pixels = new byte[WIDTH * HEIGHT];
+        Random random = new Random(3);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) (2 + random.nextInt(2));
+        }
+        ByteSink lzw = new ByteSink(1024);
+        new LzwEncoder().encode(pixels, pixels.length, 2, lzw);
+        // 只保留前一半码流：最小码长、一个子块、结束符
+        int keep = (lzw.size() - 3) / 2;
+        ByteSink truncated = new ByteSink(keep + 3);
+        truncated.write(lzw.array()[0]);
+        truncated.write(keep);
+        truncated.write(lzw.array(), 2, keep);
+        truncated.write(0);
+        Path input = dir.resolve("truncated.gif");
+        try (OutputStream out = Files.newOutputStream(input)) {
+            GifWriter writer = new GifWriter(out);
+            writer.writeLogicalScreen(WIDTH, HEIGHT, palette, 2, 0);
+            writer.writeFrame(0, 0, WIDTH, HEIGHT, 10, GifWriter.DISPOSAL_UNSPECIFIED, -1, null, truncated);
+            writer.writeTrailer();
+        }
+        Path output = dir.resolve("out.gif");
+
+        new GifOptimizer(1).optimize(input, output);
+
+        int colors = readHeader(output).getGlobalPalette().length;
+        GifReader.Frame frame = readFrames(output).get(0);
+        byte[] decoded = new byte[WIDTH * HEIGHT];
+        assertEquals(decoded.length, new LzwDecoder().decode(frame.getData(), frame.getMinCodeSize(), decoded, decoded.length));
+        int padding = 0;
+        for (byte index : decoded) {
+            assertTrue((index & 0xff) < colors, "index " + (index & 0xff) + " outside " + colors + " colors");
+            if ((index & 0xff) != (decoded[0] & 0xff)) {
+                padding++;
+            }
+        }
+        assertNotEquals(0, padding);
+    }
+
+    private Path writeGif(String name, int[] palette, int transparentIndex, List<byte[]> frames) throws IOException {
+        Path path = dir.resolve(name);
+        try (OutputStream out = Files.newOutputStream(path)) {
+            GifWriter writer = new GifWriter(out);
+            writer.writeHeader(WIDTH, HEIGHT, palette, 0);
+            LzwEncoder encoder = new LzwEncoder();
+            ByteSink sink = new ByteSink(1024);
+            for (byte[] pixels : frames) {
+                sink.reset();
+                encoder.encode(pixels, pixels.length, GifWriter.colorDepth(palette.length), sink);
+                writer.writeFrame(0, 0, WIDTH, HEIGHT, 10, GifWriter.DISPOSAL_UNSPECIFIED, transparentIndex, null, sink);
+            }
+            writer.writeTrailer();
+        }
+        return path;
+    }
+
+    private static GifReader.Header readHeader(Path gif) throws IOException {
+        return new GifReader(new ByteArrayInputStream(Files.readAllBytes(gif))).readHeader();
+    }
+
+    private static List<GifReader.Frame> readFrames(Path gif) throws IOException {
+        GifReader reader = new GifReader(new ByteArrayInputStream(Files.readAllBytes(gif)));
+        reader.readHeader();
+        List<GifReader.Frame> frames = new ArrayList<>();
+        GifReader.Frame frame;
+        while ((frame = reader.nextFrame()) != null) {
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    // 每帧都是整幅画面，逐帧比较 ARGB 即可，透明像素的 alpha 为 0
+    private static List<int[]> decodeArgb(Path gif) throws IOException {
+        List<int[]> frames = new ArrayList<>();
+        ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(Files.readAllBytes(gif)))) {
+            reader.setInput(in);
+            int count = reader.getNumImages(true);
+            for (int i = 0; i < count; i++) {
+                BufferedImage image = reader.read(i);
+                int[] argb = image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+                for (int p = 0; p < argb.length; p++) {
+                    // 透明像素只比较 alpha
+                    if (argb[p] >>> 24 == 0) {
+                        argb[p] = 0;
+                    }
+                }
+                frames.add(argb);
+            }
+        } finally {
+            reader.dispose();
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,167 @@
+package org.jugo.gif;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GifStitcherTest {
+    private static final int WIDTH = 4;
+    private static final int HEIGHT = 3;
+    private static final int[] PALETTE = {0x000000, 0xff0000, 0x00ff00, 0x0000ff};
+    private static final int[] OTHER_PALETTE = {0xffffff, 0x808080, 0x123456, 0xabcdef};
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void keepsFramesDelaysAndPixelsInOrder() throws IOException {
+        byte[][] pixels = {frame(0), frame(1), frame(2)};
+        Path first = writeGif("a.gif", PALETTE, new int[]{10, 20}, pixels[0], pixels[1]);
+        Path second = writeGif("b.gif", PALETTE, new int[]{30}, pixels[2]);
+
+        List<GifReader.Frame> frames = new ArrayList<>();
+        GifReader.Header header = read(stitch(first, second), frames);
+
+        assertEquals(WIDTH, header.getWidth());
+        assertEquals(HEIGHT, header.getHeight());
+        assertArrayEquals(PALETTE, header.getGlobalPalette());
+        assertEquals(3, frames.size());
+        int[] delays = {10, 20, 30};
+        LzwDecoder decoder = new LzwDecoder();
+        for (int i = 0; i < frames.size(); i++) {
+            GifReader.Frame frame = frames.get(i);
+            assertEquals(delays[i], frame.getDelayCs());
+            assertNull(frame.getLocalPalette());
+            byte[] decoded = new byte[WIDTH * HEIGHT];
+            assertEquals(decoded.length, decoder.decode(frame.getData(), frame.getMinCodeSize(), decoded, decoded.length));
+            assertArrayEquals(pixels[i], decoded);
+        }
+    }
+
+    @Test
+    void writesExactlyOneLoopExtension() throws IOException {
+        Path first = writeGif("a.gif", PALETTE, new int[]{10}, frame(0));
+        Path second = writeGif("b.gif", PALETTE, new int[]{10}, frame(1));
+        Path third = writeGif("c.gif", PALETTE, new int[]{10}, frame(2));
+
+        List<GifReader.Frame> frames = new ArrayList<>();
+        read(stitch(first, second, third), frames);
+
+        int loops = 0;
+        for (GifReader.Frame frame : frames) {
+            for (byte[] extension : frame.getExtensions()) {
+                if (new String(extension, StandardCharsets.ISO_8859_1).contains("NETSCAPE2.0")) {
+                    loops++;
+                }
+            }
+        }
+        assertEquals(1, loops);
+        assertEquals(3, frames.size());
+    }
+
+    @Test
+    void differentGlobalTableBecomesLocalTable() throws IOException {
+        Path first = writeGif("a.gif", PALETTE, new int[]{10}, frame(0));
+        Path second = writeGif("b.gif", OTHER_PALETTE, new int[]{10, 10}, frame(1), frame(2));
+
+        List<GifReader.Frame> frames = new ArrayList<>();
+        GifReader.Header header = read(stitch(first, second), frames);
+
+        assertArrayEquals(PALETTE, header.getGlobalPalette());
+        assertNull(frames.get(0).getLocalPalette());
+        assertArrayEquals(OTHER_PALETTE, frames.get(1).getLocalPalette());
+        assertArrayEquals(OTHER_PALETTE, frames.get(2).getLocalPalette());
+    }
+
+    @Test
+    void outputIsReadableByImageIo() throws IOException {
+        Path first = writeGif("a.gif", PALETTE, new int[]{10, 10}, frame(0), frame(1));
+        Path second = writeGif("b.gif", OTHER_PALETTE, new int[]{10}, frame(2));
+
+        ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(stitch(first, second)))) {
+            reader.setInput(in);
+            assertEquals(3, reader.getNumImages(true));
+            assertEquals(OTHER_PALETTE[frame(2)[0]] & 0xffffff, reader.read(2).getRGB(0, 0) & 0xffffff);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    @Test
+    void rejectsNonGifPart() throws IOException {
+        Path first = writeGif("a.gif", PALETTE, new int[]{10}, frame(0));
+        Path text = Files.write(dir.resolve("b.gif"), "not a gif at all".getBytes(StandardCharsets.US_ASCII));
+
+        assertThrows(IOException.class, () -> stitch(first, text));
+    }
+
+    @Test
+    void rejectsEmptyPartList() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new GifStitcher().stitch(Collections.emptyList(), new ByteArrayOutputStream()));
+    }
+
+    // 每帧的像素互不相同，便于按顺序比对
+    private static byte[] frame(int seed) {
+        byte[] pixels = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) ((i + seed) % PALETTE.length);
+        }
+        return pixels;
+    }
+
+    private Path writeGif(String name, int[] palette, int[] delays, byte[]... frames) throws IOException {
+        Path path = dir.resolve(name);
+        try (OutputStream out = Files.newOutputStream(path)) {
+            GifWriter writer = new GifWriter(out);
+            writer.writeHeader(WIDTH, HEIGHT, palette, 0);
+            LzwEncoder encoder = new LzwEncoder();
+            ByteSink sink = new ByteSink(256);
+            for (int i = 0; i < frames.length; i++) {
+                sink.reset();
+                encoder.encode(frames[i], frames[i].length, GifWriter.colorDepth(palette.length), sink);
+                writer.writeFrame(0, 0, WIDTH, HEIGHT, delays[i], GifWriter.DISPOSAL_NONE, -1, null, sink);
+            }
+            writer.writeTrailer();
+        }
+        return path;
+    }
+
+    private static byte[] stitch(Path... parts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new GifStitcher().stitch(Arrays.asList(parts), out);
+        return out.toByteArray();
+    }
+
+    private static GifReader.Header read(byte[] gif, List<GifReader.Frame> frames) throws IOException {
+        GifReader reader = new GifReader(new ByteArrayInputStream(gif));
+        GifReader.Header header = reader.readHeader();
+        GifReader.Frame frame;
+        while ((frame = reader.nextFrame()) != null) {
+            frames.add(frame);
+        }
+        assertTrue(reader.getTrailingExtensions().isEmpty());
+        return header;
+    }
+}
@@ -0,0 +1,108 @@
+package org.jugo.gif;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LzwCodecTest {
+    private final LzwEncoder encoder = new LzwEncoder();
+    private final LzwDecoder decoder = new LzwDecoder();
+
+    @Test
+    void randomPixelsFillAndResetTheCodeTable() {
+        // 远超 4096 个码，编码过程中码表会多次清空
+        byte[] pixels = new byte[200_000];
+        new Random(1).nextBytes(pixels);
+        assertRoundTrip(pixels, 8);
+    }
+
+    @Test
+    void longSingleColorRun() {
+        assertRoundTrip(new byte[300_000], 8);
+    }
+
+    @Test
+    void repeatingPattern() {
+        byte[] pixels = new byte[64 * 1024];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) (i % 37 * 7);
+        }
+        assertRoundTrip(pixels, 8);
+    }
+
+    @Test
+    void twoColorPaletteUsesMinimumCodeSizeTwo() {
+        byte[] pixels = new byte[10_000];
+        Random random = new Random(2);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) random.nextInt(2);
+        }
+        ByteSink sink = new ByteSink(1024);
+        encoder.encode(pixels, pixels.length, 1, sink);
+        assertEquals(2, sink.array()[0]);
+        assertRoundTrip(pixels, 1);
+    }
+
+    @Test
+    void singlePixel() {
+        assertRoundTrip(new byte[]{5}, 4);
+    }
+
+    @Test
+    void encodesOnlyTheGivenLength() {
+        byte[] pixels = new byte[1000];
+        new Random(3).nextBytes(pixels);
+        ByteSink sink = new ByteSink(1024);
+        encoder.encode(pixels, 600, 8, sink);
+        byte[] decoded = new byte[1000];
+        assertEquals(600, decoder.decode(payload(sink), 8, decoded, 1000));
+        for (int i = 0; i < 600; i++) {
+            assertEquals(pixels[i], decoded[i]);
+        }
+    }
+
+    @Test
+    void encoderInstanceIsReusable() {
+        byte[] first = new byte[50_000];
+        byte[] second = new byte[50_000];
+        new Random(4).nextBytes(first);
+        for (int i = 0; i < second.length; i++) {
+            second[i] = (byte) (i / 100);
+        }
+        assertRoundTrip(first, 8);
+        assertRoundTrip(second, 8);
+        assertRoundTrip(first, 8);
+    }
+
+    private void assertRoundTrip(byte[] pixels, int colorDepth) {
+        ByteSink sink = new ByteSink(1024);
+        encoder.encode(pixels, pixels.length, colorDepth, sink);
+        byte[] data = sink.array();
+        // 最后是块结束符
+        assertEquals(0, data[sink.size() - 1]);
+        byte[] decoded = new byte[pixels.length];
+        int count = decoder.decode(payload(sink), data[0], decoded, pixels.length);
+        assertEquals(pixels.length, count);
+        assertArrayEquals(pixels, decoded);
+    }
+
+    // 去掉最小码长和子块长度，得到连续的码流
+    private static byte[] payload(ByteSink sink) {
+        byte[] data = sink.array();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int pos = 1;
+        int size;
+        while ((size = data[pos++] & 0xff) != 0) {
+            assertTrue(pos + size <= sink.size(), "sub-block overruns the output");
+            out.write(data, pos, size);
+            pos += size;
+        }
+        assertEquals(sink.size(), pos);
+        return out.toByteArray();
+    }
+}
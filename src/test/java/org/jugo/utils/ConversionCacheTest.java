@@ -0,0 +1,152 @@
+package org.jugo.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversionCacheTest {
+    private static final int ENTRY_BYTES = 1000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void hitCopiesCachedResult() throws IOException {
+        ConversionCache cache = new ConversionCache(dir.resolve("store"), 1 << 20);
+        Path input = write("a.mp4", "video");
+        CountingConverter converter = new CountingConverter('x');
+
+        assertFalse(cache.convert(input, dir.resolve("1.gif"), "p", converter));
+        assertTrue(cache.convert(input, dir.resolve("2.gif"), "p", converter));
+        assertEquals(1, converter.calls);
+        assertArrayEquals(Files.readAllBytes(dir.resolve("1.gif")), Files.readAllBytes(dir.resolve("2.gif")));
+
+        // 输出是副本，改写输出不影响缓存条目
+        Files.write(dir.resolve("2.gif"), new byte[]{1, 2, 3});
+        assertTrue(cache.convert(input, dir.resolve("3.gif"), "p", converter));
+        assertEquals(ENTRY_BYTES, Files.size(dir.resolve("3.gif")));
+    }
+
+    @Test
+    void keyCoversParametersAndInputContent() throws IOException {
+        ConversionCache cache = new ConversionCache(dir.resolve("store"), 1 << 20);
+        Path input = write("a.mp4", "video");
+        CountingConverter converter = new CountingConverter('x');
+
+        cache.convert(input, dir.resolve("out.gif"), "fps=10", converter);
+        assertFalse(cache.convert(input, dir.resolve("out.gif"), "fps=15", converter));
+        // 同样内容的另一个文件也命中
+        assertTrue(cache.convert(write("copy.mp4", "video"), dir.resolve("out.gif"), "fps=10", converter));
+        write("a.mp4", "edited video");
+        assertFalse(cache.convert(input, dir.resolve("out.gif"), "fps=10", converter));
+        assertEquals(3, converter.calls);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedAboveByteCap() throws IOException {
+        Path store = dir.resolve("store");
+        ConversionCache cache = new ConversionCache(store, ENTRY_BYTES * 5 / 2);
+        Path a = write("a.mp4", "a");
+        Path b = write("b.mp4", "b");
+        Path c = write("c.mp4", "c");
+        CountingConverter converter = new CountingConverter('x');
+        Path output = dir.resolve("out.gif");
+
+        // 修改时间是淘汰依据，显式拉开，避免同一毫秒内写入
+        cache.convert(a, output, "p", converter);
+        age(store, 30_000);
+        cache.convert(b, output, "p", converter);
+        age(store, 20_000);
+        assertTrue(cache.convert(a, output, "p", converter)); // a 变成最近使用
+        cache.convert(c, output, "p", converter);
+
+        assertEquals(2, entries(store).size());
+        assertTrue(storedBytes(store) <= ENTRY_BYTES * 5 / 2);
+        assertEquals(3, converter.calls);
+        assertTrue(cache.convert(a, output, "p", converter));
+        assertTrue(cache.convert(c, output, "p", converter));
+        assertFalse(cache.convert(b, output, "p", converter));
+        assertEquals(4, converter.calls);
+        assertEquals(2, entries(store).size());
+    }
+
+    @Test
+    void failedConversionPublishesNothing() throws IOException {
+        Path store = dir.resolve("store");
+        ConversionCache cache = new ConversionCache(store, 1 << 20);
+        Path input = write("a.mp4", "video");
+
+        assertThrows(IOException.class, () -> cache.convert(input, dir.resolve("out.gif"), "p", output -> {
+            Files.write(output, new byte[10]);
+            throw new IOException("ffmpeg failed");
+        }));
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(store)) {
+            assertFalse(stream.iterator().hasNext());
+        }
+        assertFalse(Files.exists(dir.resolve("out.gif")));
+        assertFalse(cache.convert(input, dir.resolve("out.gif"), "p", new CountingConverter('y')));
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(dir.resolve(name), content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    // 把已有条目的修改时间往前推，新写入的条目保持当前时间
+    private static void age(Path store, long millis) throws IOException {
+        for (Path entry : entries(store)) {
+            FileTime modified = Files.getLastModifiedTime(entry);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(modified.toMillis() - millis));
+        }
+    }
+
+    private static Set<Path> entries(Path store) throws IOException {
+        Set<Path> entries = new HashSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(store, "*.gif")) {
+            for (Path entry : stream) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    private static long storedBytes(Path store) throws IOException {
+        long total = 0;
+        for (Path entry : entries(store)) {
+            total += Files.size(entry);
+        }
+        return total;
+    }
+
+    private static class CountingConverter implements ConversionCache.Converter {
+        private final byte fill;
+        int calls;
+
+        CountingConverter(char fill) {
+            this.fill = (byte) fill;
+        }
+
+        @Override
+        public void convert(Path output) throws IOException {
+            calls++;
+            byte[] bytes = new byte[ENTRY_BYTES];
+            Arrays.fill(bytes, fill);
+            Files.write(output, bytes);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.jugo.utils;
+
+import org.jugo.model.KeyframeIndex;
+import org.jugo.model.VideoInfo;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * testVideoFile.mp4：1280x720，29.97 fps，98 帧，顶层依次为 ftyp、moov、mdat，
+ * 关键帧为第 1、44、91 个样本，ctts 为带负偏移的 version 1，没有编辑列表
+ */
+class Mp4MetadataReaderTest {
+    private static final long DURATION_MICROS = 3_269_936;
+    private static byte[] ftyp;
+    private static byte[] moov;
+    private static byte[] mdat;
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    static void splitBoxes() throws Exception {
+        byte[] video = Files.readAllBytes(testVideo());
+        ByteBuffer buffer = ByteBuffer.wrap(video);
+        int pos = 0;
+        while (pos < video.length) {
+            int size = buffer.getInt(pos);
+            String type = new String(video, pos + 4, 4, StandardCharsets.US_ASCII);
+            byte[] box = Arrays.copyOfRange(video, pos, pos + size);
+            if (type.equals("ftyp")) {
+                ftyp = box;
+            } else if (type.equals("moov")) {
+                moov = box;
+            } else if (type.equals("mdat")) {
+                mdat = box;
+            }
+            pos += size;
+        }
+        assertNotNull(ftyp);
+        assertNotNull(moov);
+        assertNotNull(mdat);
+    }
+
+    @Test
+    void readsVideoTrackParameters() throws Exception {
+        assertTestVideo(Mp4MetadataReader.read(testVideo()));
+    }
+
+    @Test
+    void keyframeIndexFollowsPresentationTime() throws Exception {
+        KeyframeIndex index = Mp4MetadataReader.readKeyframeIndex(testVideo());
+
+        assertNotNull(index);
+        assertEquals(3, index.size());
+        assertEquals(DURATION_MICROS, index.getDurationMicros());
+        assertEquals(0, index.floor(0));
+        assertEquals(0, index.floor(1_434_767));
+        assertEquals(1_434_768, index.floor(1_434_768));
+        assertEquals(1_434_768, index.floor(2_000_000));
+        assertEquals(3_003_003, index.floor(3_100_000));
+        assertEquals(3_003_003, index.floor(60_000_000));
+    }
+
+    @Test
+    void findsMoovAfterMediaData() throws IOException {
+        Path file = write("moov-last.mp4", ftyp, mdat, moov);
+
+        assertTestVideo(Mp4MetadataReader.read(file));
+        assertEquals(3, Mp4MetadataReader.readKeyframeIndex(file).size());
+    }
+
+    @Test
+    void skipsBoxWithLargeSize() throws IOException {
+        // size 为 1 时真实大小在类型之后的 64 位字段里
+        ByteBuffer largeMdat = ByteBuffer.allocate(mdat.length + 8);
+        largeMdat.putInt(1).put(mdat, 4, 4).putLong(mdat.length + 8).put(mdat, 8, mdat.length - 8);
+        Path file = write("large-mdat.mp4", ftyp, largeMdat.array(), moov);
+
+        assertTestVideo(Mp4MetadataReader.read(file));
+    }
+
+    @Test
+    void truncatedMoovFallsBackToFfmpeg() throws IOException {
+        Path file = write("truncated.mp4", ftyp, Arrays.copyOf(moov, moov.length / 2));
+
+        assertNull(Mp4MetadataReader.read(file));
+        assertNull(Mp4MetadataReader.readKeyframeIndex(file));
+    }
+
+    @Test
+    void otherContainersAreNotParsed() throws IOException {
+        Path file = write("video.avi", "RIFF\0\0\0\0AVI LIST".getBytes(StandardCharsets.US_ASCII));
+
+        assertNull(Mp4MetadataReader.read(file));
+        assertNull(Mp4MetadataReader.readKeyframeIndex(file));
+    }
+
+    private static void assertTestVideo(VideoInfo info) {
+        assertNotNull(info);
+        assertEquals(1280, info.getWidth());
+        assertEquals(720, info.getHeight());
+        assertEquals(29.97, info.getFrameRate(), 0.01);
+        assertEquals(DURATION_MICROS, info.getDurationMicros());
+        assertEquals(98, info.getFrameCount());
+    }
+
+    private Path write(String name, byte[]... boxes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] box : boxes) {
+            out.write(box);
+        }
+        return Files.write(dir.resolve(name), out.toByteArray());
+    }
+
+    private static Path testVideo() throws Exception {
+        return Paths.get(Mp4MetadataReaderTest.class.getResource("/testVideoFile.mp4").toURI());
+    }
+}
@@ -0,0 +1,148 @@
+package org.jugo.utils;
+
+import org.jugo.model.VideoInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VideoInfoCacheTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void reloadsWhenSizeOrModifiedTimeChanges() throws IOException {
+        Path video = write("a.mp4", "first");
+        CountingLoader loader = new CountingLoader();
+        VideoInfoCache cache = new VideoInfoCache(16, false, dir.resolve("store.bin"));
+
+        cache.get(video, loader);
+        cache.get(video, loader);
+        assertEquals(1, loader.loads);
+
+        FileTime modified = Files.getLastModifiedTime(video);
+        Files.setLastModifiedTime(video, FileTime.fromMillis(modified.toMillis() + 10_000));
+        cache.get(video, loader);
+        assertEquals(2, loader.loads);
+
+        // 大小变化，修改时间改回原值
+        modified = Files.getLastModifiedTime(video);
+        Files.write(video, "-more".getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+        Files.setLastModifiedTime(video, modified);
+        VideoInfo info = cache.get(video, loader);
+        assertEquals(3, loader.loads);
+        assertEquals(3, info.getWidth());
+    }
+
+    @Test
+    void contentCheckCatchesInPlaceEdit() throws IOException {
+        Path video = write("a.mp4", "aaaa");
+        FileTime modified = Files.getLastModifiedTime(video);
+        CountingLoader loader = new CountingLoader();
+        VideoInfoCache plain = new VideoInfoCache(16, false, null);
+        VideoInfoCache verified = new VideoInfoCache(16, true, null);
+        plain.get(video, loader);
+        verified.get(video, loader);
+
+        // 大小和修改时间都不变，只有内容校验能发现
+        Files.write(video, "bbbb".getBytes(StandardCharsets.US_ASCII));
+        Files.setLastModifiedTime(video, modified);
+        plain.get(video, loader);
+        assertEquals(2, loader.loads);
+        verified.get(video, loader);
+        assertEquals(3, loader.loads);
+    }
+
+    @Test
+    void newInstanceReadsStoredEntries() throws IOException {
+        Path store = dir.resolve("cache").resolve("store.bin");
+        Path video = write("a.mp4", "video");
+        new VideoInfoCache(16, true, store).get(video, path -> new VideoInfo(1280, 720, 29.97, 3_269_936, 98));
+
+        // 相当于进程重启：新实例从记录文件加载，不再调用 loader
+        CountingLoader loader = new CountingLoader();
+        VideoInfo info = new VideoInfoCache(16, true, store).get(video, loader);
+
+        assertEquals(0, loader.loads);
+        assertEquals(1280, info.getWidth());
+        assertEquals(720, info.getHeight());
+        assertEquals(29.97, info.getFrameRate(), 1e-9);
+        assertEquals(3_269_936, info.getDurationMicros());
+        assertEquals(98, info.getFrameCount());
+    }
+
+    @Test
+    void clearDropsStoredEntries() throws IOException {
+        Path store = dir.resolve("store.bin");
+        Path video = write("a.mp4", "video");
+        CountingLoader loader = new CountingLoader();
+        VideoInfoCache cache = new VideoInfoCache(16, false, store);
+        cache.get(video, loader);
+
+        cache.clear();
+        cache.get(video, loader);
+        assertEquals(2, loader.loads);
+
+        cache.clear();
+        new VideoInfoCache(16, false, store).get(video, loader);
+        assertEquals(3, loader.loads);
+    }
+
+    @Test
+    void appendsCompactStoreWhileRunning() throws IOException {
+        int maxEntries = 3;
+        Path store = dir.resolve("store.bin");
+        List<Path> videos = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            videos.add(write(String.format("video-%02d.mp4", i), "video " + i));
+        }
+        CountingLoader loader = new CountingLoader();
+        VideoInfoCache cache = new VideoInfoCache(maxEntries, false, store);
+        for (Path video : videos) {
+            cache.get(video, loader);
+        }
+        assertEquals(20, loader.loads);
+
+        // 文件名等长，每条记录大小相同；同一实例一直追加，记录数也不超过上限两倍
+        long records = (Files.size(store) - 8) / recordSize(videos.get(0));
+        assertTrue(records <= maxEntries * 2, records + " records stored");
+        assertEquals(0, (Files.size(store) - 8) % recordSize(videos.get(0)));
+
+        // 最近的 maxEntries 条一定还在
+        CountingLoader reloaded = new CountingLoader();
+        VideoInfoCache restarted = new VideoInfoCache(maxEntries, false, store);
+        for (Path video : videos.subList(videos.size() - maxEntries, videos.size())) {
+            restarted.get(video, reloaded);
+        }
+        assertEquals(0, reloaded.loads);
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(dir.resolve(name), content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    // 键（UTF 编码）、大小、修改时间、校验值、宽、高、帧率、时长、帧数
+    private static long recordSize(Path video) throws IOException {
+        return 2 + video.toRealPath().toString().getBytes(StandardCharsets.UTF_8).length + 8 * 3 + 4 * 2 + 8 * 3;
+    }
+
+    private static class CountingLoader implements VideoInfoCache.Loader {
+        int loads;
+
+        @Override
+        public VideoInfo load(Path path) {
+            loads++;
+            return new VideoInfo(loads, 1, 25, 1_000_000, 25);
+        }
+    }
+}